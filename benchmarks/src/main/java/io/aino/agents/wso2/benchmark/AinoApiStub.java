@@ -0,0 +1,146 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.aino.agents.wso2.mediator.metrics.LatencyHistogram;
+
+/**
+ * In-process stand-in for the saveLogArray endpoint of the Aino.io API.
+ *
+ * Counts the received transactions by flow id and records the delay from the transaction
+ * timestamp to the moment the transaction was received.
+ */
+public class AinoApiStub {
+
+    public static final String PATH = "/api/1.0/saveLogArray";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern FLOW_ID = Pattern.compile("\"flowId\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern TIMESTAMP = Pattern.compile("\"timestamp\"\\s*:\\s*(\\d+)");
+
+    private final HttpServer server;
+    private final Set<String> flowIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final LatencyHistogram delays = new LatencyHistogram();
+
+    /**
+     * Starts the stub on a free port of the loopback interface.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public AinoApiStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    receive(exchange);
+                    exchange.sendResponseHeaders(202, -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Returns the address to configure as the Aino.io API address.
+     *
+     * @return endpoint URL
+     */
+    public String getUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    public long getReceivedCount() {
+        return flowIds.size();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Returns the delays from the transaction timestamps to their arrival, in nanoseconds.
+     * The timestamps have millisecond precision.
+     *
+     * @return delay histogram
+     */
+    public LatencyHistogram getDelays() {
+        return delays;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        long receivedMillis = System.currentTimeMillis();
+        requests.incrementAndGet();
+
+        InputStream body = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            body = new GZIPInputStream(body);
+        }
+        String json = new String(readFully(body), UTF_8);
+
+        Matcher flowId = FLOW_ID.matcher(json);
+        while (flowId.find()) {
+            if (!flowIds.add(flowId.group(1))) {
+                duplicates.incrementAndGet();
+            }
+        }
+        Matcher timestamp = TIMESTAMP.matcher(json);
+        while (timestamp.find()) {
+            long delayMillis = Math.max(0, receivedMillis - Long.parseLong(timestamp.group(1)));
+            delays.record(delayMillis * 1000000L);
+        }
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link MediateBenchmark} with 1 to 64 threads and the GC profiler, so that
+ * both ops/s and allocated bytes per operation are reported.
+ *
+ * Other JMH command line options, e.g. -p payloadBytes=1024 or -rf json, are passed through.
+ * Logging is disabled in the forks, so the cost of log appenders is not measured.
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(MediateBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .jvmArgsAppend("-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
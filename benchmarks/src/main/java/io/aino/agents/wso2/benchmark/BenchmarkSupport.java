@@ -0,0 +1,283 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.impl.builder.StAXOMBuilder;
+import org.apache.axiom.om.xpath.AXIOMXPath;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axis2.context.MessageContext;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.config.xml.MediatorFactory;
+import org.apache.synapse.config.xml.XMLConfigConstants;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.jaxen.JaxenException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+import io.aino.agents.core.config.AgentConfig;
+import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Helpers shared by the benchmarks: mediators built from the unit test configurations
+ * and mocked message contexts carrying payloads of a given size.
+ */
+public final class BenchmarkSupport {
+
+    public static final String AINO_CONFIG = "/conf/ainoLogMediatorConfig.xml";
+    public static final String AXIS2_CONFIG = "/conf/axis2.xml";
+
+    private BenchmarkSupport() {}
+
+    /**
+     * Creates a mediator factory from the unit test configuration files.
+     *
+     * @return mediator factory
+     */
+    public static AinoMediatorFactory createFactory() {
+        return createFactory(AINO_CONFIG);
+    }
+
+    /**
+     * Creates a mediator factory from a Aino.io configuration on the classpath.
+     *
+     * @param ainoConfig classpath resource of ainoLogMediatorConfig.xml
+     * @return mediator factory
+     */
+    public static AinoMediatorFactory createFactory(String ainoConfig) {
+        return createFactory(getResource(ainoConfig));
+    }
+
+    /**
+     * Creates a mediator factory from a Aino.io configuration stream.
+     *
+     * @param ainoConfig contents of ainoLogMediatorConfig.xml
+     * @return mediator factory
+     */
+    public static AinoMediatorFactory createFactory(InputStream ainoConfig) {
+        return new AinoMediatorFactory(ainoConfig, getResource(AXIS2_CONFIG));
+    }
+
+    /**
+     * Creates the mediator of the first element with the given name in a configuration resource.
+     *
+     * @param factory mediator factory
+     * @param resource classpath resource of a proxy or sequence
+     * @param localName local name of the mediator element, e.g. ainoLog or log
+     * @return mediator
+     * @throws Exception if the resource cannot be read
+     */
+    public static Mediator createMediator(MediatorFactory factory, String resource, String localName) throws Exception {
+        OMElement root = new StAXOMBuilder(getResource(resource)).getDocumentElement();
+        return factory.createMediator(getElements(root, localName).get(0), null);
+    }
+
+    /**
+     * Replaces the agent of the mediator with one that accepts transactions without sending them,
+     * so that the benchmark measures the mediator and not the network.
+     *
+     * @param mediator mediator
+     */
+    public static void useDiscardingAgent(AinoMediator mediator) {
+        final AgentConfig config = mediator.ainoAgent.getAgentConfig();
+        Agent agent = mock(Agent.class, withSettings().stubOnly());
+        when(agent.getAgentConfig()).thenReturn(config);
+        when(agent.isEnabled()).thenReturn(true);
+        when(agent.newTransaction()).thenAnswer(new Answer<Transaction>() {
+            @Override
+            public Transaction answer(InvocationOnMock invocation) {
+                return new Transaction(config);
+            }
+        });
+        mediator.ainoAgent = agent;
+    }
+
+    /**
+     * Creates a message context with a SOAP envelope of about the given size.
+     * The body holds the order elements the unit test configurations refer to, padded with items.
+     * The mock does not record invocations, so it can be used for millions of operations.
+     *
+     * @param payloadBytes approximate size of the envelope in bytes
+     * @return message context
+     * @throws Exception if the envelope cannot be created
+     */
+    public static Axis2MessageContext createContext(int payloadBytes) throws Exception {
+        MessageContext axisCtx = mock(MessageContext.class, withSettings().stubOnly());
+        Axis2MessageContext synapseCtx = mock(Axis2MessageContext.class, withSettings().stubOnly());
+        SOAPEnvelope envelope = createEnvelope(payloadBytes);
+        when(synapseCtx.getAxis2MessageContext()).thenReturn(axisCtx);
+        when(synapseCtx.getEnvelope()).thenReturn(envelope);
+        when(axisCtx.getEnvelope()).thenReturn(envelope);
+        when(axisCtx.getProperty(MessageContext.TRANSPORT_HEADERS)).thenReturn(new HashMap<String, String>());
+        when(axisCtx.getMessageID()).thenReturn("urn:uuid:benchmark");
+        return synapseCtx;
+    }
+
+    /**
+     * Creates a SOAP envelope of about the given size.
+     *
+     * @param payloadBytes approximate size of the envelope in bytes
+     * @return envelope
+     */
+    public static SOAPEnvelope createEnvelope(int payloadBytes) {
+        SOAPFactory soapFactory = OMAbstractFactory.getSOAP11Factory();
+        OMFactory omFactory = OMAbstractFactory.getOMFactory();
+        SOAPEnvelope envelope = soapFactory.getDefaultEnvelope();
+
+        OMElement order = omFactory.createOMElement("order", null);
+        addText(omFactory, order, "orderId", "1001");
+        addText(omFactory, order, "customerId", "2002");
+        addText(omFactory, order, "operation", "update");
+        addText(omFactory, order, "payloadtype", "subInterface01");
+        addText(omFactory, order, "from", "app01");
+        addText(omFactory, order, "to", "app02");
+        addText(omFactory, order, "multiids", "dataType01=1,2,3||dataType02=4");
+        addText(omFactory, order, "status", "success");
+
+        // Every item is about 64 bytes when serialized.
+        OMElement items = omFactory.createOMElement("items", null);
+        for (int size = 400; size < payloadBytes; size += 64) {
+            addText(omFactory, items, "item", "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMN");
+        }
+        order.addChild(items);
+        envelope.getBody().addChild(order);
+        return envelope;
+    }
+
+    private static void addText(OMFactory factory, OMElement parent, String name, String text) {
+        OMElement element = factory.createOMElement(name, null);
+        element.setText(text);
+        parent.addChild(element);
+    }
+
+    /**
+     * Generates the ainoLog elements of synthetic artifacts, as the ESB reads them when deploying CApps.
+     * Every element is a copy of the first ainoLog element of the configuration resource, placed in a
+     * proxy service or sequence of its own, so that every mediator has a distinct location.
+     *
+     * @param resource classpath resource of a proxy or sequence holding an ainoLog element
+     * @param count number of artifacts
+     * @return ainoLog elements, one per artifact
+     * @throws Exception if the resource cannot be read
+     */
+    public static List<OMElement> createArtifacts(String resource, int count) throws Exception {
+        OMElement ainoLog = getElements(new StAXOMBuilder(getResource(resource)).getDocumentElement(), "ainoLog").get(0);
+        String ainoLogXml = ainoLog.toString();
+
+        StringBuilder sb = new StringBuilder(64 + count * (ainoLogXml.length() + 128));
+        sb.append("<definitions xmlns=\"").append(XMLConfigConstants.SYNAPSE_NAMESPACE).append("\">\n");
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                sb.append("<proxy name=\"SyntheticProxy").append(i).append("\"><target><inSequence>\n");
+                sb.append(ainoLogXml);
+                sb.append("\n</inSequence></target></proxy>\n");
+            } else {
+                sb.append("<sequence name=\"SyntheticSequence").append(i).append("\">\n");
+                sb.append(ainoLogXml);
+                sb.append("\n</sequence>\n");
+            }
+        }
+        sb.append("</definitions>");
+
+        OMElement definitions = new StAXOMBuilder(new ByteArrayInputStream(sb.toString().getBytes("UTF-8"))).getDocumentElement();
+        definitions.build();
+        return getElements(definitions, "ainoLog");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<OMElement> getElements(OMElement root, String localName) throws JaxenException {
+        AXIOMXPath xPath = new AXIOMXPath("//syn:" + localName);
+        xPath.addNamespace("syn", XMLConfigConstants.SYNAPSE_NAMESPACE);
+        return (List<OMElement>) xPath.evaluate(root);
+    }
+
+    /**
+     * Parses key=value command line options.
+     *
+     * @param args command line arguments
+     * @return options by key
+     */
+    public static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Options must be given as key=value: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Returns an option or its default value.
+     *
+     * @param options options by key
+     * @param name option key
+     * @param defaultValue value used if the option is not given
+     * @return option value
+     */
+    public static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Returns the used heap after a few garbage collections.
+     *
+     * @return used heap in bytes
+     * @throws InterruptedException if interrupted while waiting for the collections
+     */
+    public static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Opens a classpath resource.
+     *
+     * @param resource resource path
+     * @return resource stream
+     */
+    public static InputStream getResource(String resource) {
+        InputStream stream = BenchmarkSupport.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new IllegalArgumentException("Resource not found: " + resource);
+        }
+        return stream;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.synapse.Mediator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+import io.aino.agents.wso2.mediator.serializer.AinoMediatorSerializer;
+
+/**
+ * Deployment cost of ainoLog mediators: creating and serializing the mediators of
+ * {@code count} synthetic proxy services and sequences, as the ESB does at startup.
+ *
+ * Every operation handles all {@code count} mediators, so the score divided by {@code count} is
+ * the cost of one element. Run it with {@code -prof gc} to get the allocated bytes per operation.
+ * {@link DeploymentTest} reports the same per element, including the retained heap.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog")
+@State(Scope.Benchmark)
+public class DeploymentBenchmark {
+
+    @Param({"10", "1000", "10000", "50000"})
+    public int count;
+
+    @Param({"/validAinoConfigAllElements.xml"})
+    public String config;
+
+    private AinoMediatorFactory factory;
+    private AinoMediatorSerializer serializer;
+    private List<OMElement> elements;
+    private List<Mediator> mediators;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        factory = BenchmarkSupport.createFactory();
+        serializer = new AinoMediatorSerializer();
+        elements = BenchmarkSupport.createArtifacts(config, count);
+        mediators = createMediators();
+    }
+
+    private List<Mediator> createMediators() {
+        List<Mediator> result = new ArrayList<Mediator>(elements.size());
+        for (OMElement element : elements) {
+            result.add(factory.createMediator(element, null));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Mediator> create() {
+        return createMediators();
+    }
+
+    @Benchmark
+    public void serialize(Blackhole blackhole) {
+        for (Mediator mediator : mediators) {
+            blackhole.consume(serializer.serializeMediator(null, mediator));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.synapse.Mediator;
+
+import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+import io.aino.agents.wso2.mediator.serializer.AinoMediatorSerializer;
+
+import static io.aino.agents.wso2.benchmark.BenchmarkSupport.option;
+import static io.aino.agents.wso2.benchmark.BenchmarkSupport.parseOptions;
+import static io.aino.agents.wso2.benchmark.BenchmarkSupport.usedHeapAfterGc;
+
+/**
+ * Startup cost of mass mediator deployment: creates and serializes the ainoLog mediators of
+ * synthetic proxy services and sequences and reports, per mediator count, the total time,
+ * the time and allocated bytes per mediator and the heap retained by the mediators.
+ *
+ * Options are given as key=value arguments:
+ * <ul>
+ *     <li>counts: comma separated mediator counts, default 10,100,1000,10000,50000</li>
+ *     <li>config: mediator configuration resource, default /validAinoConfigAllElements.xml</li>
+ *     <li>maxCreateMicros, maxSerializeMicros and maxRetainedBytes: exit with status 1 if creating or
+ *     serializing one mediator of the largest count takes longer or one mediator retains more heap, default no limit</li>
+ * </ul>
+ */
+public class DeploymentTest {
+
+    private static final int WARMUP_COUNT = 2000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String config = option(options, "config", "/validAinoConfigAllElements.xml");
+        double maxCreateMicros = Double.parseDouble(option(options, "maxCreateMicros", "0"));
+        double maxSerializeMicros = Double.parseDouble(option(options, "maxSerializeMicros", "0"));
+        double maxRetainedBytes = Double.parseDouble(option(options, "maxRetainedBytes", "0"));
+
+        AinoMediatorFactory factory = BenchmarkSupport.createFactory();
+        AinoMediatorSerializer serializer = new AinoMediatorSerializer();
+
+        // Loads the classes and compiles the hot paths, so that the small counts are not dominated by them.
+        serialize(serializer, create(factory, BenchmarkSupport.createArtifacts(config, WARMUP_COUNT)));
+
+        System.out.println(String.format("%8s %12s %14s %16s %14s %16s %16s",
+                "count", "create ms", "create us/el", "create bytes/el", "serialize ms", "serialize us/el", "retained bytes/el"));
+        Result last = null;
+        for (String count : option(options, "counts", "10,100,1000,10000,50000").split(",")) {
+            last = measure(factory, serializer, config, Integer.parseInt(count.trim()));
+            System.out.println(String.format("%8d %12.1f %14.1f %16.0f %14.1f %16.1f %16.0f",
+                    last.count, last.createNanos / 1e6, last.createNanos / 1e3 / last.count,
+                    (double) last.createBytes / last.count, last.serializeNanos / 1e6,
+                    last.serializeNanos / 1e3 / last.count, (double) last.retainedBytes / last.count));
+        }
+
+        boolean passed = last == null
+                || (withinLimit(last.createNanos / 1e3 / last.count, maxCreateMicros)
+                && withinLimit(last.serializeNanos / 1e3 / last.count, maxSerializeMicros)
+                && withinLimit((double) last.retainedBytes / last.count, maxRetainedBytes));
+        System.out.println(passed ? "PASSED" : "FAILED (maxCreateMicros " + maxCreateMicros + ", maxSerializeMicros "
+                + maxSerializeMicros + ", maxRetainedBytes " + maxRetainedBytes + ")");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static Result measure(AinoMediatorFactory factory, AinoMediatorSerializer serializer, String config,
+                                  int count) throws Exception {
+        List<OMElement> elements = BenchmarkSupport.createArtifacts(config, count);
+        Result result = new Result(count);
+
+        long heapBefore = usedHeapAfterGc();
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        List<Mediator> mediators = create(factory, elements);
+        result.createNanos = System.nanoTime() - start;
+        result.createBytes = allocatedBytes() - bytesBefore;
+        result.retainedBytes = Math.max(0, usedHeapAfterGc() - heapBefore);
+
+        start = System.nanoTime();
+        serialize(serializer, mediators);
+        result.serializeNanos = System.nanoTime() - start;
+
+        // Keeps the mediators reachable until the retained heap has been measured.
+        if (mediators.size() != count) {
+            throw new IllegalStateException("Created " + mediators.size() + " mediators instead of " + count);
+        }
+        return result;
+    }
+
+    private static List<Mediator> create(AinoMediatorFactory factory, List<OMElement> elements) {
+        List<Mediator> mediators = new ArrayList<Mediator>(elements.size());
+        for (OMElement element : elements) {
+            mediators.add(factory.createMediator(element, null));
+        }
+        return mediators;
+    }
+
+    private static int serialize(AinoMediatorSerializer serializer, List<Mediator> mediators) {
+        int children = 0;
+        for (Mediator mediator : mediators) {
+            if (serializer.serializeMediator(null, mediator).getFirstElement() != null) {
+                children++;
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or 0 if the JVM does not report them.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static boolean withinLimit(double value, double limit) {
+        return limit <= 0 || value <= limit;
+    }
+
+    private static class Result {
+        private final int count;
+        private long createNanos;
+        private long createBytes;
+        private long serializeNanos;
+        private long retainedBytes;
+
+        Result(int count) {
+            this.count = count;
+        }
+    }
+}
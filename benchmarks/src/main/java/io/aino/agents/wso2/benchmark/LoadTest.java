@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+import io.aino.agents.wso2.mediator.metrics.LatencyHistogram;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics;
+
+import static io.aino.agents.wso2.benchmark.BenchmarkSupport.option;
+import static io.aino.agents.wso2.benchmark.BenchmarkSupport.parseOptions;
+import static io.aino.agents.wso2.benchmark.BenchmarkSupport.usedHeapAfterGc;
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.AINO_FLOW_ID_PROPERTY_NAME;
+
+/**
+ * End-to-end load test: concurrent threads mediate messages through a factory built mediator with
+ * a real agent, which sends the transactions to an in-process {@link AinoApiStub}. Runs offline.
+ *
+ * Options are given as key=value arguments:
+ * <ul>
+ *     <li>threads: number of mediating threads, default 16</li>
+ *     <li>seconds: duration of the load, default 30</li>
+ *     <li>payloadBytes: size of the messages, default 1024</li>
+ *     <li>config: mediator configuration resource, default /validAinoConfigAllElements.xml</li>
+ *     <li>sendInterval and sizeThreshold: send settings of the agent, default 1000 and 100</li>
+ *     <li>drainSeconds: how long to wait for the agent to deliver the rest, default 60</li>
+ *     <li>minTps and maxDropped: exit with status 1 if delivered transactions/s is lower or more
+ *     transactions were dropped, defaults 0 and 0</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int threads = Integer.parseInt(option(options, "threads", "16"));
+        int seconds = Integer.parseInt(option(options, "seconds", "30"));
+        int payloadBytes = Integer.parseInt(option(options, "payloadBytes", "1024"));
+        String config = option(options, "config", "/validAinoConfigAllElements.xml");
+        int drainSeconds = Integer.parseInt(option(options, "drainSeconds", "60"));
+        double minTps = Double.parseDouble(option(options, "minTps", "0"));
+        long maxDropped = Long.parseLong(option(options, "maxDropped", "0"));
+
+        AinoApiStub stub = new AinoApiStub();
+        String ainoConfig = createAinoConfig(stub.getUri(), option(options, "sendInterval", "1000"),
+                option(options, "sizeThreshold", "100"));
+        AinoMediatorFactory factory = BenchmarkSupport.createFactory(new ByteArrayInputStream(ainoConfig.getBytes(UTF_8)));
+        AinoMediator mediator = (AinoMediator) BenchmarkSupport.createMediator(factory, config, "ainoLog");
+
+        long heapBefore = usedHeapAfterGc();
+        long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong sent = new AtomicLong();
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Worker(i, mediator, BenchmarkSupport.createContext(payloadBytes), deadline, sent),
+                    "aino-load-test-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long loadEnd = System.nanoTime();
+
+        long drainDeadline = loadEnd + TimeUnit.SECONDS.toNanos(drainSeconds);
+        while (stub.getReceivedCount() < sent.get() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(100);
+        }
+        long end = System.nanoTime();
+        long heapAfter = usedHeapAfterGc();
+        stub.stop();
+
+        long received = stub.getReceivedCount();
+        long dropped = sent.get() - received;
+        double mediatedTps = sent.get() / seconds(loadEnd - start);
+        double deliveredTps = received / seconds(end - start);
+        LatencyHistogram delays = stub.getDelays();
+        LatencyHistogram mediate = mediator.getExecutionPlan().getMetrics().getLatency(MediatorMetrics.Phase.MEDIATE);
+
+        System.out.println("threads:             " + threads + ", payload " + payloadBytes + " bytes, " + config);
+        System.out.println("mediated:            " + sent.get() + " (" + format(mediatedTps) + " tx/s)");
+        System.out.println("delivered:           " + received + " (" + format(deliveredTps) + " tx/s) in "
+                + stub.getRequestCount() + " requests");
+        System.out.println("dropped:             " + dropped + ", duplicates " + stub.getDuplicateCount());
+        System.out.println("mediate latency:     p50 " + micros(mediate.getPercentile(0.5)) + " us, p99 "
+                + micros(mediate.getPercentile(0.99)) + " us, p999 " + micros(mediate.getPercentile(0.999)) + " us");
+        System.out.println("end-to-end delay:    p50 " + millis(delays.getPercentile(0.5)) + " ms, p99 "
+                + millis(delays.getPercentile(0.99)) + " ms, p999 " + millis(delays.getPercentile(0.999)) + " ms");
+        System.out.println("heap growth:         " + format((heapAfter - heapBefore) / (1024.0 * 1024.0)) + " MB");
+
+        boolean passed = dropped <= maxDropped && deliveredTps >= minTps;
+        System.out.println(passed ? "PASSED" : "FAILED (minTps " + minTps + ", maxDropped " + maxDropped + ")");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Returns the unit test Aino.io configuration pointed to the stub.
+     */
+    private static String createAinoConfig(String uri, String sendInterval, String sizeThreshold) throws IOException {
+        Scanner scanner = new Scanner(BenchmarkSupport.getResource(BenchmarkSupport.AINO_CONFIG), "UTF-8").useDelimiter("\\A");
+        String config = scanner.next();
+        scanner.close();
+        return config.replaceFirst("uri=\"[^\"]*\"", "uri=\"" + uri + "\"")
+                .replaceFirst("<send [^>]*/>", "<send interval=\"" + sendInterval + "\" sizeThreshold=\"" + sizeThreshold + "\"/>");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String micros(long nanos) {
+        return format(nanos / 1e3);
+    }
+
+    private static String millis(long nanos) {
+        return format(nanos / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    private static class Worker implements Runnable {
+        private final String flowIdPrefix;
+        private final AinoMediator mediator;
+        private final Axis2MessageContext context;
+        private final Map<String, String> headers;
+        private final long deadline;
+        private final AtomicLong sent;
+
+        @SuppressWarnings("unchecked")
+        Worker(int index, AinoMediator mediator, Axis2MessageContext context, long deadline, AtomicLong sent) {
+            this.flowIdPrefix = "load-" + index + "-";
+            this.mediator = mediator;
+            this.context = context;
+            this.headers = (Map<String, String>) context.getAxis2MessageContext()
+                    .getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+            this.deadline = deadline;
+            this.sent = sent;
+        }
+
+        @Override
+        public void run() {
+            long count = 0;
+            while (System.nanoTime() < deadline) {
+                // Every message is its own flow, so the stub can count them.
+                headers.put(AINO_FLOW_ID_PROPERTY_NAME, flowIdPrefix + count++);
+                mediator.mediate(context);
+                sent.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.synapse.Mediator;
+import org.apache.synapse.config.xml.LogMediatorFactory;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+
+/**
+ * Throughput of {@link AinoMediator#mediate} with the unit test configurations,
+ * compared to a plain Synapse log mediator logging about the same fields.
+ *
+ * The number of threads is given with the JMH -t option, {@link BenchmarkRunner} runs
+ * the benchmark with 1 to 64 threads and the GC profiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediateBenchmark {
+
+    /**
+     * Mediators shared by all benchmark threads, like in the ESB.
+     */
+    @State(Scope.Benchmark)
+    public static class Mediators {
+
+        @Param({
+                "/validAinoConfigAllElements.xml",
+                "/validAinoConfigAllElementsAndProperties.xml",
+                "/validAinoConfigAllElementsDynamicOperation.xml",
+                "/validAinoConfigAllElementsDynamicMultiids.xml",
+                "/validAinoConfigAllElementsDynamicFomApplicatioAndDynamicToApplication.xml"
+        })
+        public String config;
+
+        AinoMediator ainoMediator;
+        Mediator logMediator;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            AinoMediatorFactory factory = BenchmarkSupport.createFactory();
+            ainoMediator = (AinoMediator) BenchmarkSupport.createMediator(factory, config, "ainoLog");
+            BenchmarkSupport.useDiscardingAgent(ainoMediator);
+            logMediator = BenchmarkSupport.createMediator(new LogMediatorFactory(), "/logMediatorBaseline.xml", "log");
+        }
+    }
+
+    /**
+     * Message of each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Message {
+
+        @Param({"1024", "102400", "10485760"})
+        public int payloadBytes;
+
+        Axis2MessageContext context;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            context = BenchmarkSupport.createContext(payloadBytes);
+        }
+    }
+
+    @Benchmark
+    public boolean ainoLog(Mediators mediators, Message message) {
+        return mediators.ainoMediator.mediate(message.context);
+    }
+
+    @Benchmark
+    public boolean logMediatorBaseline(Mediators mediators, Message message) {
+        return mediators.logMediator.mediate(message.context);
+    }
+}
@@ -19,42 +19,49 @@ package io.aino.agents.wso2.mediator;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
-import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.MediatorProperty;
 import org.apache.synapse.util.xpath.SynapseXPath;
-import org.jaxen.JaxenException;
 
 import io.aino.agents.core.Agent;
 import io.aino.agents.core.Transaction;
 import io.aino.agents.core.config.InvalidAgentConfigException;
+import io.aino.agents.wso2.mediator.buffer.TransactionBuffer;
+import io.aino.agents.wso2.mediator.config.KeyRegistry;
+import io.aino.agents.wso2.mediator.config.KeyRegistry.KeyType;
+import io.aino.agents.wso2.mediator.log.EsbLogLine;
+import io.aino.agents.wso2.mediator.log.EsbLogger;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics.Phase;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetricsRegistry;
+import io.aino.agents.wso2.mediator.plan.ExecutionPlan;
+import io.aino.agents.wso2.mediator.plan.MessageSnapshot;
+import io.aino.agents.wso2.mediator.plan.TransactionBudget;
+import io.aino.agents.wso2.mediator.sink.TransactionSink;
+import io.aino.agents.wso2.mediator.util.AsyncMediationExecutor;
 import io.aino.agents.wso2.mediator.util.Enum;
 import io.aino.agents.wso2.mediator.util.Id;
-import io.aino.agents.wso2.mediator.util.IdPropertyBuilder;
 import io.aino.agents.wso2.mediator.util.MediatorLocation;
+import io.aino.agents.wso2.mediator.util.PayloadDigest;
 
 import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.*;
 
-import org.apache.axiom.om.OMAttribute;
-import org.apache.axiom.om.OMElement;
-import org.apache.axiom.om.OMText;
-
 /**
  * Aino.io WSO2 ESB mediator.
  */
-public class AinoMediator extends AbstractMediator {
+public class AinoMediator extends AbstractMediator implements ManagedLifecycle {
     public static String UNKNOWN_DYNAMIC_APPLICATION = "UnKnown_App";
     public static String UNKNOWN_DYNAMIC_OPERATION = "UnKnown_Operation";
     public static String UNKNOWN_DYNAMIC_PAYLOADTYPE = "UnKnown_Payload";
     public static String UNKNOWN_DYNAMIC_IDTYPE = "UnKnown_IDType";
 
-    public Agent ainoAgent;
+    public volatile Agent ainoAgent;
 
     private String separator;
     private String operation;
@@ -72,37 +79,21 @@ public class AinoMediator extends AbstractMediator {
     private SynapseXPath dynamicStatus = null;
     private String multiids;
     private SynapseXPath dynamicMultiids = null;
+    private boolean async = false;
+    private Double sampleRate = null;
+    private double artifactSampleRate = 1.0;
+    private PayloadDigest payloadDigest;
+    private EsbLogger esbLogger = EsbLogger.getDefault();
+    private TransactionBuffer transactionBuffer;
+    private TransactionSink transactionSink;
+    private TransactionBudget transactionBudget = TransactionBudget.UNLIMITED;
 
     private final MediatorLocation mediatorLocation;
 
     private List<MediatorProperty> customProperties;
     private final List<Id> idList = new ArrayList<Id>();
 
-
-    @SuppressWarnings("serial")
-    private class DataFieldList extends ArrayList<String> {
-
-        public DataFieldList(List<String> data) {
-            this.addAll(data);
-        }
-
-        public boolean doesNotContain(String item) {
-            return !this.contains(item);
-        }
-    }
-
-    private DataFieldList dataFields = new DataFieldList(Arrays.asList(
-            "from",
-            "to",
-            "message",
-            "status",
-            "timestamp",
-            "operation",
-            "ids",
-            "multiids",
-            "flowId",
-            "payloadType"
-    ));
+    private volatile ExecutionPlan executionPlan;
 
     /**
      * Constructor.
@@ -123,7 +114,17 @@ public class AinoMediator extends AbstractMediator {
      * @param xPath xpath of ids
      */
     public void addId(String typeKey, SynapseXPath xPath) {
-        idList.add(new Id(typeKey, xPath));
+        addId(new Id(typeKey, xPath));
+    }
+
+    /**
+     * Adds an id definition.
+     *
+     * @param id id type key, xpath and limits of the ids
+     */
+    public void addId(Id id) {
+        idList.add(id);
+        invalidateExecutionPlan();
     }
 
     /**
@@ -134,6 +135,7 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setProperties(List<MediatorProperty> properties) {
         customProperties = properties;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -147,351 +149,356 @@ public class AinoMediator extends AbstractMediator {
 
     @Override
     public boolean mediate(MessageContext context) {
+        long start = System.nanoTime();
+        MediatorMetrics metrics = null;
         try {
-            initTransportHeadersMap(context);
-
+            final ExecutionPlan plan = getExecutionPlan();
+            final Agent agent = plan.getAgent();
+            metrics = plan.getMetrics();
+            metrics.invocation();
+            final MessageSnapshot snapshot = plan.capture(context, agent);
+
+            // Nothing is sent or logged for a flow the agent does not take.
+            if (snapshot.getTransaction() == null) {
+                metrics.record(Phase.MEDIATE, System.nanoTime() - start);
+                return true;
+            }
 
-            Transaction transaction = createTransaction(context);
-            new IdPropertyBuilder(this.idList).buildToContext(context, transaction);
-            processMultiids(context, transaction);
-            processTransaction(context, transaction);
-            logToEsb(context, transaction);
+            if (async) {
+                AsyncMediationExecutor.getInstance().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        completeTransaction(plan, snapshot, agent);
+                    }
+                });
+            } else {
+                completeTransaction(plan, snapshot, agent);
+            }
         } catch (Exception e) {
             log.error("Error occurred while trying to log to aino.io!", e);
+            if (metrics != null) {
+                metrics.error();
+            }
         }
 
-        return true;
-    }
-
-    private void logToEsb(MessageContext context, Transaction transaction) {
-        StringBuilder sb = new StringBuilder();
-
-        for (MediatorProperty prop : customProperties) {
-            sb.append(prop.getName()).append(" = ").append(prop.getValue());
-            sb.append(this.separator);
-        }
-
-        if(transaction != null) {
-            appendNormalFieldsToLogMessage(transaction, sb);
-            appendIdsToLogMessage(transaction, sb);
+        if (metrics != null) {
+            metrics.record(Phase.MEDIATE, System.nanoTime() - start);
         }
-
-        log.info(sb.toString());
+        return true;
     }
 
-    private void appendIdsToLogMessage(Transaction transaction, StringBuilder sb) {
-        sb.append("ids = [");
-        for(String idName : transaction.getIds().keySet()) {
-            sb.append(idName).append(": [");
-            List<String> ids = transaction.getIds().get(idName);
-            sb.append(StringUtils.join(ids, ",")).append("],");
-        }
-        sb.append("]");
-    }
-
-    private void appendNormalFieldsToLogMessage(Transaction transaction, StringBuilder sb) {
-        appendNameAndValueToLogMessage("operation",ainoAgent.getAgentConfig().getOperations().getEntry(transaction.getOperationKey()), sb);
-        appendNameAndValueToLogMessage("flowId", transaction.getFlowId(), sb);
-        appendNameAndValueToLogMessage("message", transaction.getMessage(), sb);
-        appendNameAndValueToLogMessage("status", transaction.getStatus(), sb);
-        appendNameAndValueToLogMessage("payloadType", ainoAgent.getAgentConfig().getPayloadTypes().getEntry(transaction.getPayloadTypeKey()), sb);
-        appendNameAndValueToLogMessage("from", ainoAgent.getAgentConfig().getApplications().getEntry(transaction.getFromKey()), sb);
-        appendNameAndValueToLogMessage("to", ainoAgent.getAgentConfig().getApplications().getEntry(transaction.getToKey()), sb);
-        appendNameAndValueToLogMessage("ainoTimestamp", String.valueOf(transaction.getTimestamp()), sb);
-    }
-
-    private void appendNameAndValueToLogMessage(String name, String value, StringBuilder sb) {
-        sb.append(name)
-                .append(" = ")
-                .append(value)
-                .append(this.separator);
-    }
-
-
-    private void processMultiids(MessageContext context, Transaction transaction) {
-        String multiidsValues = null;    
-        // If PayloadType is given as dynamic expression. Process it here. 
-        if (this.getDynamicMultiids() != null) {
-            multiidsValues = processDynamicMultiids(context);
-        } else {
-            // Static value was used 
-            multiidsValues = this.multiids;
-        } 
-
-        if (multiidsValues != null) {
-            //Sample whole multiidsValues: some_other_id=value1,value2||some_other_id2=xxx 
-            String[] multiids = multiidsValues.split("\\|\\|");
-            // Adfter split first item in list is : some_other_id=value1,value2
-            for (String idTypeAndValues : multiids) {
-                String[] idTypeAndValuesArray = idTypeAndValues.split("=");
-                // Split to two parts the type: some_other_id and the value:value1,value2
-                if (idTypeAndValuesArray.length == 2) {
-                    String idType = idTypeAndValuesArray[0];
-                    if (!ainoAgent.getAgentConfig().getIdTypes().entryExists(idType)) {
-                        StringBuilder sb = new StringBuilder("An invalid id type key has been given to a AinoMediator ");
-                        sb.append(idType).append(" element, using Unknown as id type");
-                        log.warn(sb.toString());
-                        idType = UNKNOWN_DYNAMIC_IDTYPE;
-                        if (!ainoAgent.getAgentConfig().getIdTypes().entryExists(idType)) { 
-                            // Add the unknown id type to the list of id types, if it is not already there.
-                            ainoAgent.getAgentConfig().getIdTypes().addEntry(idType, idType);
-                        } 
-                    }
-
-                    String idValues = idTypeAndValuesArray[1];
-                    String[] idValuesArray = idValues.split(",");
-                    // If there are multiple values separated by comma (value1,value2), put those to separate array
-                    List<String> idValuesAsArray = new ArrayList<String>();  
-                    for (String idValue : idValuesArray) {
-                        idValuesAsArray.add(idValue);
-                    }
-            
-                    // Add the some_other_id and its values (value1,value2) to transaction
-                    transaction.addIdsByTypeKey(idType, idValuesAsArray);
+    /**
+     * Completes the transaction, hands it to the sink or the agent and logs it to ESB log.
+     * In asynchronous mode this is run on a worker thread.
+     *
+     * @param plan execution plan the snapshot was captured with
+     * @param snapshot values captured from the message context
+     * @param agent aino agent
+     */
+    private void completeTransaction(ExecutionPlan plan, MessageSnapshot snapshot, Agent agent) {
+        MediatorMetrics metrics = plan.getMetrics();
+        try {
+            Transaction transaction = plan.complete(snapshot, agent);
+
+            long start = System.nanoTime();
+            if (transaction != null) {
+                TransactionSink sink = this.transactionSink;
+                TransactionBuffer buffer = this.transactionBuffer;
+                if (sink != null) {
+                    sink.send(transaction);
+                } else if (buffer != null) {
+                    buffer.add(transaction, agent, snapshot.getMetadataNames(), snapshot.getMetadataValues());
+                } else {
+                    agent.addTransaction(transaction);
                 }
+                long end = System.nanoTime();
+                metrics.record(Phase.ADD_TRANSACTION, end - start);
+                start = end;
             }
-        }
-    }
-
-    private void processTransaction(MessageContext context, Transaction transaction) {
-        if(transaction == null) { return; }
-
-        // Dynamic operation handling. If Dynamic operation is given. it will override any other style of giving the operation name           
-        // The static value of operation handlig is doen prio of this by validateOrSetAinoOperationName. So we only check do we need to override it 
-        if (this.getDynamicOperation() != null) {
-            transaction.setOperationKey(processDynamicOperation(context));
-        }  
-
-        // If PayloadType is given as dynamic expression. Process it here. 
-        if (this.getDynamicPayloadType() != null) {
-            transaction.setPayloadTypeKey(processDynamicPayloadType(context));
-        } else {
-            // Static value was used 
-            transaction.setPayloadTypeKey(this.payloadType);
-        } 
-
-        // status atribute handling moved to here since it can be dynamically defined          
-        if (this.getDynamicStatus() != null) {
-            transaction.setStatus(processDynamicStatus(context));
-        } else {
-            // Static status attribute was used 
-            transaction.setStatus(this.status == null ? "" : this.status.toString());
-        }
-
-        // If message is given as dynamic expression. Process it here. 
-        if (this.getDynamicMessage() != null) {
-            transaction.setMessage(processDynamicMessage(context));
-        } else {
-            // Static value attribute was used 
-            transaction.setMessage(this.message);
-        }
-
-        // From and to applications movoved to here since those can be dynamically defined          
-        if (this.getDynamicFromApplication() != null) {
-            transaction.setFromKey(processDynamicApplication(Enum.ApplicationDirection.FROM, context));
-        } else {
-            // Static value attribute was used 
-            transaction.setFromKey(this.fromApplication);
-        }
-        if (this.getDynamicToApplication() != null) {
-            transaction.setToKey(processDynamicApplication(Enum.ApplicationDirection.TO, context));
-        } else {
-            // Static value attribute was used 
-            transaction.setToKey(this.toApplication);
-        }
-            
-            
 
-        for (MediatorProperty property : customProperties) {
-            if (isMetadataProperty(property)) {
-                String propertyValue = property.getValue() != null ? property.getValue() : property.getEvaluatedExpression(context);
-                transaction.addMetadata(property.getName(), propertyValue);
+            if (logToEsb(transaction, plan.getKeyRegistry())) {
+                metrics.record(Phase.ESB_LOG, System.nanoTime() - start);
             }
+        } catch (Exception e) {
+            log.error("Error occurred while trying to log to aino.io!", e);
+            metrics.error();
         }
-
-        ainoAgent.addTransaction(transaction);
     }
 
-    private boolean isMetadataProperty(MediatorProperty prop) {
-        if(prop == null)
-            return false;
-
-        return this.dataFields.doesNotContain(prop.getName());
+    /**
+     * Returns the execution plan of this mediator.
+     * The plan is compiled on first use after the configuration or {@link #ainoAgent} has changed.
+     *
+     * @return execution plan
+     */
+    public ExecutionPlan getExecutionPlan() {
+        ExecutionPlan plan = this.executionPlan;
+        if (plan == null || plan.getAgent() != this.ainoAgent) {
+            plan = compileExecutionPlan();
+        }
+        return plan;
     }
 
+    /**
+     * Compiles the execution plan from the current configuration of this mediator.
+     *
+     * @return execution plan
+     */
+    public ExecutionPlan compileExecutionPlan() {
+        ExecutionPlan plan = ExecutionPlan.compile(this);
+        this.executionPlan = plan;
+        return plan;
+    }
 
-    private Transaction createTransaction(MessageContext context) {
-
-        String flowId = validateOrSetAinoFlowId(context);
-        String operationKey = validateOrSetAinoOperationName(context);
+    /**
+     * Switches this mediator to a reloaded agent. The plan holds the agent, so a call uses either the previous
+     * plan and agent or the new ones. Calls already running complete with the agent they started with.
+     *
+     * @param plan execution plan compiled for the new agent with {@link ExecutionPlan#compile(AinoMediator, Agent)}
+     */
+    public void switchAgent(ExecutionPlan plan) {
+        // A call that sees the new agent before the new plan compiles an equal plan of its own.
+        this.ainoAgent = plan.getAgent();
+        this.executionPlan = plan;
+    }
 
-        Transaction transaction = null;
-        if (ainoAgent.isEnabled()) {
-            transaction = ainoAgent.newTransaction();
+    @Override
+    public void init(SynapseEnvironment synapseEnvironment) {
+        // The execution plan is compiled on the first call.
+    }
 
-            transaction.setFlowId(flowId);
-            transaction.setOperationKey(operationKey);
+    /**
+     * Called by Synapse when the artifact of this mediator is undeployed. Unregisters the metrics of the
+     * mediator location unless another mediator at the same location still uses them.
+     */
+    @Override
+    public void destroy() {
+        MediatorMetricsRegistry.getDefault().release(mediatorLocation, this);
+    }
 
-            transaction.addMetadata("artifactName", mediatorLocation.getArtifactName());
-            transaction.addMetadata("esbServerName", esbServerName);
-            transaction.addMetadata("artifactType", mediatorLocation.getArtifactType());
-            transaction.addMetadata("artifactName", mediatorLocation.getArtifactName());
-            transaction.addMetadata("lineNumber", Integer.toString(mediatorLocation.getLineNumber()));
+    private void invalidateExecutionPlan() {
+        this.executionPlan = null;
+    }
 
-            if (status == Enum.Status.FAILURE) {
-                addErrorMetadata(context, transaction);
-            }
+    /**
+     * Logs the transaction to ESB log.
+     *
+     * @return true if the line was logged, false if ESB logging is disabled
+     */
+    private boolean logToEsb(Transaction transaction, KeyRegistry keys) {
+        EsbLogger logger = this.esbLogger;
+        if (!logger.isEnabled(log)) {
+            return false;
         }
 
-        return transaction;
-    }
+        EsbLogLine line = logger.startLine(this.separator);
 
-    private void addErrorMetadata(MessageContext context, Transaction transaction) {
-        if (context.getProperty("ERROR_CODE") != null) {
-            transaction.addMetadata("errorCode", context.getProperty("ERROR_CODE").toString());
+        for (MediatorProperty prop : customProperties) {
+            line.field(prop.getName(), prop.getValue());
         }
 
-        if (context.getProperty("ERROR_MESSAGE") != null) {
-            transaction.addMetadata("errorMessage", context.getProperty("ERROR_MESSAGE").toString());
+        if(transaction != null) {
+            appendNormalFieldsToLogMessage(transaction, keys, line);
+            line.ids(transaction.getIds());
         }
 
-        if (context.getProperty("ERROR_DETAIL") != null) {
-            transaction.addMetadata("errorDetails", context.getProperty("ERROR_DETAIL").toString());
-        }
+        logger.write(log, line);
+        return true;
+    }
 
-        if (context.getProperty("ERROR_EXCEPTION") != null) {
-            transaction.addMetadata("errorException", context.getProperty("ERROR_EXCEPTION").toString());
-        }
+    private void appendNormalFieldsToLogMessage(Transaction transaction, KeyRegistry keys, EsbLogLine line) {
+        line.field("operation", keys.getName(KeyType.OPERATION, transaction.getOperationKey()));
+        line.field("flowId", transaction.getFlowId());
+        line.field("message", transaction.getMessage());
+        line.field("status", transaction.getStatus());
+        line.field("payloadType", keys.getName(KeyType.PAYLOAD_TYPE, transaction.getPayloadTypeKey()));
+        line.field("from", keys.getName(KeyType.APPLICATION, transaction.getFromKey()));
+        line.field("to", keys.getName(KeyType.APPLICATION, transaction.getToKey()));
+        line.field("ainoTimestamp", String.valueOf(transaction.getTimestamp()));
     }
 
     /**
-     * Creates a transport headers map if one does not exist.
+     * Gets mediator location.
      *
-     * @param context
+     * @return mediator location
      */
-    private Map<String,String> initTransportHeadersMap(MessageContext context) {
-        org.apache.axis2.context.MessageContext axis2MessageContext = ((Axis2MessageContext) context).getAxis2MessageContext();
-        Map<String,String> headersMap = (Map<String, String>) axis2MessageContext.getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
-
-        if (headersMap == null) {
-            headersMap = new HashMap<String, String>();
-            context.setProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS, headersMap);
-        }
-        return headersMap;
+    public MediatorLocation getMediatorLocation() {
+        return mediatorLocation;
     }
 
-    private String validateOrSetAinoOperationName(MessageContext context) {
-        String operationKey;
-
-        if(null != operation) {
-            operationKey = operation;
-        } else {
-            operationKey = getOperationFromHeadersAndContext(context);
-        }
 
-        setPropertyToTransportHeadersMap(context, AINO_OPERATION_KEY_PROPERTY_NAME,  operationKey);
-
-        return operationKey;
+    /**
+     * Gets separator used in logging.
+     * Separator is used in between properties.
+     *
+     * @return separator
+     */
+    public String getSeparator() {
+        return separator;
     }
 
-    private String getOperationFromHeadersAndContext(MessageContext context) {
-        String ainoOperationName = getOperationNameFromTransportHeaders(context);
-
-        if (null == ainoOperationName) {
-            ainoOperationName = getOperationNameFromMessageContext(context);
+    /**
+     * Sets separator used in logging.
+     *
+     * @param separator separator
+     */
+    public void setSeparator(String separator) {
+        if (StringUtils.isEmpty(separator)) {
+            separator = ",";
         }
-
-        return ainoOperationName;
+        this.separator = separator;
     }
 
-    private String getOperationNameFromTransportHeaders(MessageContext context){
-        // This logic is in place for situations where the message is coming back from a system which doesn't return custom transport headers.
-        try {
-            Map<String, String> headersMap = getTransportHeadersMap(context);
-            return headersMap.get(AINO_OPERATION_KEY_PROPERTY_NAME);
-        } catch (ClassCastException ignored) {
-            return null;
-        }
+    /**
+     * Gets the sample rate configured to this mediator.
+     *
+     * @return share of flows logged, null if not configured to the mediator
+     */
+    public Double getSampleRate() {
+        return sampleRate;
     }
 
-    private String getOperationNameFromMessageContext(MessageContext context){
-        try {
-            String name = (String) context.getProperty(AINO_OPERATION_KEY_PROPERTY_NAME);
-            return name;
-        } catch (ClassCastException ignored) {
-            return null;
-        }
+    /**
+     * Sets the sample rate of this mediator.
+     * The rate overrides the sample rate of the artifact.
+     *
+     * @param sampleRate share of flows logged, from 0.0 to 1.0, null to use the sample rate of the artifact
+     */
+    public void setSampleRate(Double sampleRate) {
+        this.sampleRate = sampleRate;
+        invalidateExecutionPlan();
     }
 
-    private void setPropertyToTransportHeadersMap(MessageContext context, String key, String value) {
-        Map<String, String> headersMap = getTransportHeadersMap(context);
-        headersMap.put(key, value);
+    /**
+     * Gets the digest of the message payload written to the transaction metadata.
+     *
+     * @return payload digest, null if not enabled
+     */
+    public PayloadDigest getPayloadDigest() {
+        return payloadDigest;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, String> getTransportHeadersMap(MessageContext context) {
-        return initTransportHeadersMap(context);
+    /**
+     * Sets the digest of the message payload written to the transaction metadata.
+     *
+     * @param payloadDigest payload digest, null to disable
+     */
+    public void setPayloadDigest(PayloadDigest payloadDigest) {
+        this.payloadDigest = payloadDigest;
+        invalidateExecutionPlan();
     }
 
+    /**
+     * Sets the sample rate configured to the artifact of this mediator in the aino config file.
+     *
+     * @param artifactSampleRate share of flows logged, from 0.0 to 1.0
+     */
+    public void setArtifactSampleRate(double artifactSampleRate) {
+        this.artifactSampleRate = artifactSampleRate;
+        invalidateExecutionPlan();
+    }
 
-    private String validateOrSetAinoFlowId(MessageContext context) {
-        Map<String, String> headersMap = getTransportHeadersMap(context);
-
-        String flowId = headersMap.get(AINO_FLOW_ID_PROPERTY_NAME);
+    /**
+     * Gets the sample rate used by this mediator.
+     *
+     * @return sample rate of the mediator if configured, otherwise sample rate of the artifact
+     */
+    public double getEffectiveSampleRate() {
+        return sampleRate != null ? sampleRate : artifactSampleRate;
+    }
 
-        if(null == flowId){
-            flowId = getFlowIdFromMessageContext(context);
-        }
+    /**
+     * Sets the size limits of the message and metadata values of the transactions.
+     *
+     * @param transactionBudget size limits
+     */
+    public void setTransactionBudget(TransactionBudget transactionBudget) {
+        this.transactionBudget = transactionBudget;
+        invalidateExecutionPlan();
+    }
 
-        if(null == flowId){
-            flowId = ((Axis2MessageContext) context).getAxis2MessageContext().getMessageID();
-        }
+    /**
+     * Gets the size limits of the message and metadata values of the transactions.
+     *
+     * @return size limits
+     */
+    public TransactionBudget getTransactionBudget() {
+        return transactionBudget;
+    }
 
-        setPropertyToTransportHeadersMap(context, AINO_FLOW_ID_PROPERTY_NAME, flowId);
+    /**
+     * Gets the logger writing the ESB log lines of this mediator.
+     *
+     * @return ESB logger
+     */
+    public EsbLogger getEsbLogger() {
+        return esbLogger;
+    }
 
-        return flowId;
+    /**
+     * Gets the buffer the transactions of this mediator are added to.
+     *
+     * @return transaction buffer, or null if transactions are added to the agent directly
+     */
+    public TransactionBuffer getTransactionBuffer() {
+        return transactionBuffer;
     }
 
-    private String getFlowIdFromMessageContext(MessageContext context) {
-        try {
-            String flowId = (String) context.getProperty(AINO_FLOW_ID_PROPERTY_NAME);
+    /**
+     * Sets the buffer the transactions of this mediator are added to.
+     *
+     * @param transactionBuffer transaction buffer, null to add transactions to the agent directly
+     */
+    public void setTransactionBuffer(TransactionBuffer transactionBuffer) {
+        this.transactionBuffer = transactionBuffer;
+    }
 
-            return flowId;
-        } catch (ClassCastException e) {
-            return null;
-        }
+    /**
+     * Gets the sink the transactions of this mediator are sent to.
+     *
+     * @return transaction sink, or null if transactions are added to the agent
+     */
+    public TransactionSink getTransactionSink() {
+        return transactionSink;
     }
 
     /**
-     * Gets mediator location.
+     * Sets the sink the transactions of this mediator are sent to instead of the agent.
      *
-     * @return mediator location
+     * @param transactionSink transaction sink, null to add transactions to the agent or the transaction buffer
      */
-    public MediatorLocation getMediatorLocation() {
-        return mediatorLocation;
+    public void setTransactionSink(TransactionSink transactionSink) {
+        this.transactionSink = transactionSink;
     }
 
+    /**
+     * Sets the logger writing the ESB log lines of this mediator.
+     *
+     * @param esbLogger ESB logger, null for the default plain logger
+     */
+    public void setEsbLogger(EsbLogger esbLogger) {
+        this.esbLogger = esbLogger == null ? EsbLogger.getDefault() : esbLogger;
+    }
 
     /**
-     * Gets separator used in logging.
-     * Separator is used in between properties.
+     * Tells whether the transaction is built and sent asynchronously.
      *
-     * @return separator
+     * @return true if asynchronous mode is on
      */
-    public String getSeparator() {
-        return separator;
+    public boolean isAsync() {
+        return async;
     }
 
     /**
-     * Sets separator used in logging.
+     * Sets asynchronous mode.
+     * In asynchronous mode only the values of the message are read on the mediating thread,
+     * building, validating, logging and sending the transaction is done by
+     * {@link AsyncMediationExecutor}.
      *
-     * @param separator separator
+     * @param async true to turn asynchronous mode on
      */
-    public void setSeparator(String separator) {
-        if (StringUtils.isEmpty(separator)) {
-            separator = ",";
-        }
-        this.separator = separator;
+    public void setAsync(boolean async) {
+        this.async = async;
     }
 
     /**
@@ -510,55 +517,18 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setOperation(String operation) {
         this.operation = operation;
+        invalidateExecutionPlan();
     }
 
     public void setDynamicOperation(SynapseXPath xpath){
         this.dynamicOperation = xpath;
+        invalidateExecutionPlan();
     }
 
     public  SynapseXPath getDynamicOperation(){
         return this.dynamicOperation;
     }
 
-    protected String processDynamicOperation(MessageContext context){
-        SynapseXPath expression = this.dynamicOperation;
-        String operationKey = null;
-        Boolean operationKeyExist = false;
-        if (expression != null) {
-            try {
-                Object evaluationResult = expression.evaluate(context);
-                if (evaluationResult != null){
-                    operationKey = getExpressionValue(evaluationResult);
-                    if (ainoAgent.operationExists(operationKey)) {
-                        operationKeyExist = true;
-                        return operationKey;
-                    }                    
-                }
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic operation  ");
-                sb.append(" XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
-            }
-            if (operationKeyExist == false){
-                // The dynamic operation name is NOT in the configs OR the Xpath was corrupted. 
-                // So lets use UnKnown operation name
-                // NOTE we add the UnKnown application name dynamically if it does not yet exist.                          
-                String origOperationKey = operationKey;
-                operationKey = UNKNOWN_DYNAMIC_OPERATION;
-                if (!ainoAgent.operationExists(operationKey)) {
-                    ainoAgent.getAgentConfig().getOperations().addEntry(UNKNOWN_DYNAMIC_OPERATION, UNKNOWN_DYNAMIC_OPERATION);
-                }   
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic operation ");
-                sb.append(" using XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: operation does not exist in config, name of operation: ").append(origOperationKey).append(" Doing fallback and using UnKnown as operation name");
-                log.warn(sb.toString());                                     
-            }
-        }
-        return operationKey;
-    }
-
-
     /**
      * Gets message configured to this mediator.
      *
@@ -575,33 +545,18 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setMessage(String message) {
         this.message = message;
+        invalidateExecutionPlan();
     }
 
     public void setDynamicMessage(SynapseXPath xpath){
         this.dynamicMessage = xpath;
+        invalidateExecutionPlan();
     }
 
     public  SynapseXPath getDynamicMessage(){
         return this.dynamicMessage;
     }
 
-    protected String processDynamicMessage(MessageContext context){
-        if (this.dynamicMessage != null) {
-            try {
-                Object evaluationResult = dynamicMessage.evaluate(context);
-                if (evaluationResult != null){
-                    return getExpressionValue(evaluationResult);
-                }
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic message");
-                sb.append(" XPath expression: ").append(dynamicMessage.toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
-            }
-        }
-        return null;
-    }
-
     /**
      * Gets the server name of ESB.
      *
@@ -618,6 +573,7 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setEsbServerName(String esbServerName) {
         this.esbServerName = esbServerName;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -636,10 +592,11 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setFromApplication(String fromApplication) {
         this.fromApplication = fromApplication;
+        invalidateExecutionPlan();
     }
   
       /** If From is given as expression then the expression value it is set to this variable. 
-     * And actual referenced value is calculated on processDynamicApplication when needed 
+     * And actual referenced value is calculated by the execution plan when needed 
      * 
      * Example   
      *    <property name="myValue" value="theApplicationName"/>
@@ -653,6 +610,7 @@ public class AinoMediator extends AbstractMediator {
      * */
     public void setDynamicFromApplication(SynapseXPath xpath){
         this.dynamicFromApplication= xpath;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -679,10 +637,11 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setToApplication(String toApplication) {
         this.toApplication = toApplication;
+        invalidateExecutionPlan();
     }
 
     /** If To is given as expression then the expression value it is set to this variable. 
-     * And actual referenced value is calculated on processDynamicApplication when needed 
+     * And actual referenced value is calculated by the execution plan when needed 
      * 
      * Example   
      *    <property name="myValue" value="theApplicationName"/>
@@ -696,6 +655,7 @@ public class AinoMediator extends AbstractMediator {
      * */
     public void setDynamicToApplication(SynapseXPath xpath){
         this.dynamicToApplication= xpath;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -723,61 +683,6 @@ public class AinoMediator extends AbstractMediator {
         }
     }
 
-    /**
-     *  Process 'to' or 'from' application based on direction 
-     * This will calculated the outcome of the expression value set for the 'to' or 'from'  
-     * @param direction
-     * @param context
-     * @return The calculated value based on the messagecontext and expression.  OR null if value is not found
-     */
-    protected String processDynamicApplication(Enum.ApplicationDirection direction, MessageContext context){
-        SynapseXPath expression = null;
-        switch (direction) {
-            case TO:
-                expression =  this.getDynamicToApplication();
-                break;
-            case FROM:
-                expression =  this.getDynamicFromApplication();
-                break;
-        }
-        String applicationKey = null;
-        Boolean applicationKeyExist = false;
-        if (expression != null) {
-            try {
-                Object evaluationResult = expression.evaluate(context);
-                if (evaluationResult != null){
-                    applicationKey = getExpressionValue(evaluationResult);
-                    if (ainoAgent.applicationExists(applicationKey)) {
-                        applicationKeyExist = true;
-                        return applicationKey;
-                    }                    
-                }
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic Application of direction ");
-                sb.append(direction.toString());
-                sb.append(" XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
-            }
-            if (applicationKeyExist == false){
-                // The dynamic application name is NOT in the configs OR the Xpath was corrupted. 
-                // So lets use UnKnown application name
-                // NOTE we add the UnKnown application name dynamically if it does not yet exist.                          
-                String origApplicationKey = applicationKey;
-                applicationKey = UNKNOWN_DYNAMIC_APPLICATION;
-                if (!ainoAgent.applicationExists(applicationKey)) {
-                    ainoAgent.getAgentConfig().getApplications().addEntry(UNKNOWN_DYNAMIC_APPLICATION, UNKNOWN_DYNAMIC_APPLICATION);
-                }   
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic Application of direction ");
-                sb.append(direction.toString());
-                sb.append(" using XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: application does not exist in config, name of application: ").append(origApplicationKey).append(" Doing fallback and using UnKnown as application name");
-                log.warn(sb.toString());                                     
-            }
-        }
-        return applicationKey;
-    }
-
     /**
      * Set expression value of dynamic 'to' or 'from' based on direction  
      * @param direction
@@ -801,6 +706,7 @@ public class AinoMediator extends AbstractMediator {
      */
     public void setPayloadType(String payloadTypeKey) {
         this.payloadType = payloadTypeKey;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -818,52 +724,16 @@ public class AinoMediator extends AbstractMediator {
 
     public void setDynamicPayloadType(SynapseXPath xpath){
         this.dynamicPayloadType = xpath;
+        invalidateExecutionPlan();
     }
 
 
-    protected String processDynamicPayloadType(MessageContext context){
-        SynapseXPath expression = this.dynamicPayloadType;
-        String payloadTypeKey = null;
-        Boolean payloadTypeKeyExist = false;
-        if (expression != null) {
-            try {
-                Object evaluationResult = expression.evaluate(context);
-                if (evaluationResult != null){
-                    payloadTypeKey = getExpressionValue(evaluationResult);
-                    if (ainoAgent.payloadTypeExists(payloadTypeKey)) {
-                        payloadTypeKeyExist = true;
-                        return payloadTypeKey;
-                    }                    
-                }
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic payloadType  ");
-                sb.append(" XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
-            }
-            if (payloadTypeKeyExist == false){
-                // The dynamic payloadType name is NOT in the configs OR the Xpath was corrupted. 
-                // So lets use UnKnown payloadType name
-                // NOTE we add the UnKnown payloadType name dynamically if it does not yet exist.                          
-                String origPayloadTypeKey = payloadType;
-                payloadType = UNKNOWN_DYNAMIC_PAYLOADTYPE;
-                if (!ainoAgent.payloadTypeExists(payloadType)) {
-                    ainoAgent.getAgentConfig().getPayloadTypes().addEntry(payloadType, payloadType);
-                }   
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic payloadType ");
-                sb.append(" using XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: payloadType does not exist in config, name of payloadType: ").append(origPayloadTypeKey).append(" Doing fallback and using UnKnown as payloadType name");
-                log.warn(sb.toString());                                     
-            }
-        }
-        return payloadTypeKey;
-    }
-
     public String getMultiids() {
         return this.multiids;
     }
     public void setMultiids(String multiidsValue) {
         this.multiids = multiidsValue;
+        invalidateExecutionPlan();
     }
 
 
@@ -873,48 +743,10 @@ public class AinoMediator extends AbstractMediator {
 
     public void setDynamicMultiids(SynapseXPath xpath){
         this.dynamicMultiids = xpath;
+        invalidateExecutionPlan();
     }
 
 
-    protected String processDynamicMultiids(MessageContext context){
-        SynapseXPath expression = this.dynamicMultiids;
-        String multiidsKey = null;
-        Boolean multiidsKeyExist = false;
-        if (expression != null) {
-            try {
-                Object evaluationResult = expression.evaluate(context);
-                if (evaluationResult != null){
-                    multiidsKey = getExpressionValue(evaluationResult);
-                    multiidsKeyExist = true;
-//                    if (ainoAgent.MultiidsExists(payloadTypeKey)) {
-//                        payloadTypeKeyExist = true;
-//                        return payloadType;
-//                    }                    
-                }
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic Multiids  ");
-                sb.append(" XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
-            }
-            // if (multiidsKeyExist == false){
-            //     // The dynamic payloadType name is NOT in the configs OR the Xpath was corrupted. 
-            //     // So lets use UnKnown payloadType name
-            //     // NOTE we add the UnKnown payloadType name dynamically if it does not yet exist.                          
-            //     String origMultiidsKey = multiidsKey;
-            //     payloadType = UNKNOWN_DYNAMIC_PAYLOADTYPE;
-            //     if (!ainoAgent.payloadTypeExists(payloadTypeKey)) {
-            //         ainoAgent.getAgentConfig().getPayloadTypes().addEntry(payloadType, payloadType);
-            //     }   
-            //     StringBuilder sb = new StringBuilder("Error while resolving the dynamic payloadType ");
-            //     sb.append(" using XPath expression: ").append(expression.toString());
-            //     sb.append(" Exception message: payloadType does not exist in config, name of payloadType: ").append(origPayloadTypeKey).append(" Doing fallback and using UnKnown as payloadType name");
-            //     log.warn(sb.toString());                                     
-            // }
-        }
-        return multiidsKey;
-    }
-
     /**
      * Gets status.
      *
@@ -928,7 +760,7 @@ public class AinoMediator extends AbstractMediator {
     }
 
     /** If Status is given as expression then the expression value it is set to this variable. 
-     * And actual referenced value is calculated on processDynamicApplication when needed 
+     * And actual referenced value is calculated by the execution plan when needed 
      *  NOTE the actual values of status still must be success, failure OR unknonw 
      * Example   
      *    <property name="myValue" value="failure"/>
@@ -941,6 +773,7 @@ public class AinoMediator extends AbstractMediator {
      * */
     public void setDynamicStatus(SynapseXPath xpath){
         this.dynamicStatus= xpath;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -951,37 +784,6 @@ public class AinoMediator extends AbstractMediator {
         return this.dynamicStatus;
     }
 
-    protected String processDynamicStatus(MessageContext context){
-        SynapseXPath expression = this.getDynamicStatus();
-        String calculatedStatus = null;
-        Enum.Status status = null;
-        if (expression != null) {
-            try {
-                Object evaluationResult = expression.evaluate(context);
-                if (evaluationResult != null){
-                    calculatedStatus = getExpressionValue(evaluationResult);
-                    status = Enum.Status.getStatus(calculatedStatus);
-                }
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic Status  ");
-                sb.append(" XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
-            }
-            if (status == null){
-                // The dynamic status is NOT valid status OR the Xpath was corrupted. 
-                // So lets use UnKnown as status 
-                status = Enum.Status.UNKNOWN;
-                StringBuilder sb = new StringBuilder("Error while resolving the dynamic Status ");
-                sb.append(" using XPath expression: ").append(expression.toString());
-                sb.append(" Exception message: Can not calculate valid status from given value: ").append(calculatedStatus).append(" Doing fallback and using unknown as status");
-                log.warn(sb.toString());                                     
-            }
-        }
-        return status.toString();
-    }
-
-    
     /**
      * Sets status.
      * Valid values are: "success", "failure" and "unknown".
@@ -999,6 +801,7 @@ public class AinoMediator extends AbstractMediator {
         }
 
         this.status = status;
+        invalidateExecutionPlan();
     }
 
     /**
@@ -1009,47 +812,4 @@ public class AinoMediator extends AbstractMediator {
     public List<Id> getIdList() {
         return idList;
     }
-
-
-    /**
-     *  Return the data of evaluated, NOTE if the Xpath finds several values. This returns ONLY the first found value 
-     * @param evaluationResult
-     * @return
-     */
-    @SuppressWarnings("unchecked")
-    private String getExpressionValue(Object evaluationResult) {
-        List<String> transactionIdList = new ArrayList<String>();
-        if (evaluationResult instanceof List) {
-            List<String> entryList = getValuesFromList((List<Object>) evaluationResult);
-            transactionIdList.addAll(entryList);
-        } else {
-            transactionIdList.add(String.valueOf(evaluationResult));
-        }
-        if (transactionIdList.size() > 0){
-            return transactionIdList.get(0);
-        }
-        return null;
-    }
-
-    private List<String> getValuesFromList(List<Object> results) {
-        List<String> transactionIdList = new ArrayList<String>();
-        for (Object result : results) {
-            String idString = getSingleValue(result);
-            if (StringUtils.isNotEmpty(idString)) {
-                transactionIdList.add(idString);
-            }
-        }
-        return transactionIdList;
-    }
-
-    private String getSingleValue(Object result) {
-        if (result instanceof OMElement) {
-            return ((OMElement) result).getText();
-        } else if (result instanceof OMAttribute) {
-            return ((OMAttribute) result).getAttributeValue();
-        } else if (result instanceof OMText) {
-            return ((OMText) result).getText();
-        }
-        return null;
-    }
-}
\ No newline at end of file
+}
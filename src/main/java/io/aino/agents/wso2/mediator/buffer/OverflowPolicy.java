@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.buffer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What {@link TransactionBuffer} does with a transaction that does not fit in the buffer.
+ */
+public enum OverflowPolicy {
+    /** The new transaction is dropped. */
+    DROP_NEWEST("dropNewest"),
+    /** The oldest transactions are dropped to make room for the new one. */
+    DROP_OLDEST("dropOldest"),
+    /** The mediating thread waits for room, and drops the new transaction if the wait times out. */
+    BLOCK("block"),
+    /**
+     * Once the buffer is half full, whole flows are dropped with a probability growing with
+     * the fill level. If the buffer is still full, the new transaction is dropped.
+     */
+    SAMPLE("sample");
+
+    private static final Map<String, OverflowPolicy> policies = new HashMap<String, OverflowPolicy>();
+
+    static {
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            policies.put(policy.configName, policy);
+        }
+    }
+
+    private final String configName;
+
+    OverflowPolicy(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Returns the policy by its name in ainoLogMediatorConfig.xml.
+     *
+     * @param configName policy name, e.g. dropOldest
+     * @return policy, or null if there is no such policy
+     */
+    public static OverflowPolicy getPolicy(String configName) {
+        return policies.get(configName);
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    @Override
+    public String toString() {
+        return configName;
+    }
+}
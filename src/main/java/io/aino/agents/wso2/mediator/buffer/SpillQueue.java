@@ -0,0 +1,358 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.buffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent FIFO queue of byte records, used by {@link TransactionBuffer} when more transactions wait than fit in memory.
+ *
+ * Records are appended to memory-mapped segment files of a fixed size. Each record is stored as
+ * its length, its CRC32 and its bytes. The position of the reader is stored in a memory-mapped
+ * checkpoint file, so the queue continues where it was after a restart, and a segment is deleted
+ * once it has been read. The mapped pages are written to disk by the operating system, so
+ * records survive a restart or a crash of the ESB, but not necessarily a crash of the host.
+ *
+ * A directory holds one queue. The queue holds a lock on a file in the directory while it is open,
+ * so a second queue on the same directory fails to open, also in another process. Use
+ * {@link #open(File, int, long)} to get the queue already open in this JVM.
+ *
+ * The queue is meant for one writer and one reader; all methods are synchronized.
+ */
+public class SpillQueue {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+    private static final String LOCK_FILE_NAME = "lock";
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private static final Map<File, SpillQueue> OPEN_QUEUES = new HashMap<File, SpillQueue>();
+
+    private final File directory;
+    private final RandomAccessFile lockFile;
+    private final FileLock directoryLock;
+    private final int segmentBytes;
+    private final long maxBytes;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+    private final MappedByteBuffer checkpoint;
+    private final RandomAccessFile checkpointFile;
+    private int readOffset;
+    private long usedBytes;
+    private long recordCount;
+
+    /**
+     * Opens the queue in the directory, continuing from the records and checkpoint found there.
+     *
+     * @param directory directory of the segment files, created if it does not exist
+     * @param segmentBytes size of one segment file
+     * @param maxBytes maximum size of the unread records
+     * @throws IOException if the files cannot be opened
+     */
+    public SpillQueue(File directory, int segmentBytes, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spill directory " + directory);
+        }
+        this.directory = directory.getCanonicalFile();
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+
+        lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        FileLock lock;
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Spill directory " + directory + " is already in use");
+        }
+        directoryLock = lock;
+
+        checkpointFile = new RandomAccessFile(new File(directory, CHECKPOINT_FILE_NAME), "rw");
+        checkpoint = checkpointFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        long checkpointSegment = checkpoint.getLong(0);
+        int checkpointOffset = (int) checkpoint.getLong(8);
+
+        for (long id : listSegmentIds()) {
+            if (id < checkpointSegment) {
+                deleteSegmentFile(id);
+            } else {
+                segments.addLast(openSegment(id));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(openSegment(checkpointSegment));
+        }
+
+        Segment first = segments.peekFirst();
+        readOffset = first.id == checkpointSegment ? Math.min(checkpointOffset, first.writePosition) : 0;
+        for (Segment segment : segments) {
+            int start = segment == first ? readOffset : 0;
+            usedBytes += segment.writePosition - start;
+            recordCount += segment.countRecords(start);
+        }
+        writeCheckpoint();
+    }
+
+    /**
+     * Returns the queue of the directory, opening it if it is not open in this JVM yet.
+     * The size limits of a queue already open are kept.
+     *
+     * @param directory directory of the segment files, created if it does not exist
+     * @param segmentBytes size of one segment file
+     * @param maxBytes maximum size of the unread records
+     * @return queue of the directory
+     * @throws IOException if the files cannot be opened or another process uses the directory
+     */
+    public static SpillQueue open(File directory, int segmentBytes, long maxBytes) throws IOException {
+        synchronized (OPEN_QUEUES) {
+            File key = directory.getCanonicalFile();
+            SpillQueue queue = OPEN_QUEUES.get(key);
+            if (queue == null) {
+                queue = new SpillQueue(key, segmentBytes, maxBytes);
+                OPEN_QUEUES.put(key, queue);
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param record record bytes
+     * @return true if the record was stored, false if the queue is full or the record is too large
+     * @throws IOException if a new segment file cannot be created
+     */
+    public synchronized boolean offer(byte[] record) throws IOException {
+        int size = RECORD_HEADER_BYTES + record.length;
+        if (size > segmentBytes || usedBytes + size > maxBytes) {
+            return false;
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment.writePosition + size > segmentBytes) {
+            segment = openSegment(segment.id + 1);
+            segments.addLast(segment);
+        }
+        segment.write(record);
+        usedBytes += size;
+        recordCount++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the oldest record.
+     *
+     * @return oldest record, or null if the queue is empty
+     * @throws IOException if a read segment cannot be deleted
+     */
+    public synchronized byte[] poll() throws IOException {
+        while (true) {
+            Segment segment = segments.peekFirst();
+            if (readOffset < segment.writePosition) {
+                byte[] record = segment.read(readOffset);
+                int size = RECORD_HEADER_BYTES + record.length;
+                readOffset += size;
+                usedBytes -= size;
+                recordCount--;
+                writeCheckpoint();
+                return record;
+            }
+            if (segments.size() == 1) {
+                return null;
+            }
+            // The segment has been read and is not written anymore.
+            segments.removeFirst();
+            segment.close();
+            deleteSegmentFile(segment.id);
+            readOffset = 0;
+            writeCheckpoint();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    /**
+     * Returns the number of unread records.
+     *
+     * @return record count
+     */
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the size of the unread records including their headers.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Flushes the mapped files to disk, closes them and releases the directory.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    public void close() throws IOException {
+        synchronized (OPEN_QUEUES) {
+            if (OPEN_QUEUES.get(directory) == this) {
+                OPEN_QUEUES.remove(directory);
+            }
+        }
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            checkpoint.force();
+            checkpointFile.close();
+            directoryLock.release();
+            lockFile.close();
+        }
+    }
+
+    private void writeCheckpoint() {
+        checkpoint.putLong(0, segments.peekFirst().id);
+        checkpoint.putLong(8, readOffset);
+    }
+
+    private long[] listSegmentIds() {
+        String[] names = directory.list();
+        long[] ids = new long[names == null ? 0 : names.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (names[i].startsWith(SEGMENT_PREFIX) && names[i].endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    ids[count] = Long.parseLong(names[i].substring(SEGMENT_PREFIX.length(),
+                            names[i].length() - SEGMENT_SUFFIX.length()));
+                    count++;
+                } catch (NumberFormatException ignored) {
+                    // not a segment file
+                }
+            }
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        return new Segment(id, segmentFile(id), segmentBytes);
+    }
+
+    private void deleteSegmentFile(long id) throws IOException {
+        File file = segmentFile(id);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete spill segment " + file);
+        }
+    }
+
+    /**
+     * One memory-mapped segment file. The write position is recovered on open by reading
+     * the records until the first empty or corrupted one.
+     */
+    private static class Segment {
+        final long id;
+        final RandomAccessFile file;
+        final MappedByteBuffer buffer;
+        int writePosition;
+
+        Segment(long id, File path, int size) throws IOException {
+            this.id = id;
+            this.file = new RandomAccessFile(path, "rw");
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            while (isValidRecord(writePosition)) {
+                writePosition += RECORD_HEADER_BYTES + buffer.getInt(writePosition);
+            }
+        }
+
+        long countRecords(int from) {
+            long count = 0;
+            for (int position = from; position < writePosition; position += RECORD_HEADER_BYTES + buffer.getInt(position)) {
+                count++;
+            }
+            return count;
+        }
+
+        boolean isValidRecord(int position) {
+            if (position + RECORD_HEADER_BYTES > buffer.capacity()) {
+                return false;
+            }
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_BYTES + length > buffer.capacity()) {
+                return false;
+            }
+            return buffer.getInt(position + 4) == crc(bytesAt(position + RECORD_HEADER_BYTES, length));
+        }
+
+        void write(byte[] record) {
+            buffer.putInt(writePosition + 4, crc(record));
+            ByteBuffer view = buffer.duplicate();
+            view.position(writePosition + RECORD_HEADER_BYTES);
+            view.put(record);
+            // The length is written last, so a record torn by a crash is not read.
+            buffer.putInt(writePosition, record.length);
+            writePosition += RECORD_HEADER_BYTES + record.length;
+        }
+
+        byte[] read(int position) {
+            return bytesAt(position + RECORD_HEADER_BYTES, buffer.getInt(position));
+        }
+
+        byte[] bytesAt(int position, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(bytes);
+            return bytes;
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            file.close();
+        }
+
+        private static int crc(byte[] bytes) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            return (int) crc.getValue();
+        }
+    }
+}
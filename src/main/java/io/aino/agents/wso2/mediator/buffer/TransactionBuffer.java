@@ -0,0 +1,597 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.buffer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+import io.aino.agents.wso2.mediator.metrics.StripedCounter;
+import io.aino.agents.wso2.mediator.util.FlowSampler;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.METRICS_JMX_DOMAIN;
+
+/**
+ * Bounded buffer between the mediators and the agent.
+ *
+ * The buffer holds at most maxBytes of transactions, estimated from their fields. A background
+ * thread hands the buffered transactions to the agent. The queue of the agent is unbounded, so the
+ * thread hands at most maxInFlight transactions per send interval of the agent, and the rest wait
+ * here. Each transaction is handed to the agent that created it, so after a reload the previous
+ * agent still gets and sends its own transactions. When a transaction does not fit, the
+ * {@link OverflowPolicy} decides what is dropped. Counters of every outcome are exposed over JMX.
+ *
+ * With a {@link SpillQueue}, transactions waiting to be sent that do not fit in memory are written
+ * to disk, and the overflow policy only applies once the spill queue is full too. While transactions
+ * wait on disk, new transactions are spilled behind them. Spilled transactions are read back when
+ * the memory buffer is empty and the agent has room for them, so they are sent in order.
+ * On shutdown the transactions left in memory are spilled as well, to be sent after the next start.
+ */
+public class TransactionBuffer implements TransactionBufferMBean {
+    private static final Log log = LogFactory.getLog(TransactionBuffer.class);
+
+    /** Estimated size of a transaction without its strings. */
+    static final int TRANSACTION_OVERHEAD_BYTES = 256;
+    private static final int DRAIN_BATCH_SIZE = 512;
+    private static final double SAMPLING_THRESHOLD = 0.5;
+    private static final long SPILL_POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long maxBytes;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+    private volatile long usedBytes;
+
+    private final StripedCounter offered = new StripedCounter();
+    private final StripedCounter accepted = new StripedCounter();
+    private final StripedCounter delivered = new StripedCounter();
+    private final StripedCounter droppedNewest = new StripedCounter();
+    private final StripedCounter droppedOldest = new StripedCounter();
+    private final StripedCounter timedOut = new StripedCounter();
+    private final StripedCounter sampledOut = new StripedCounter();
+    private final StripedCounter spilled = new StripedCounter();
+    private final StripedCounter restored = new StripedCounter();
+
+    private volatile SpillQueue spillQueue;
+    private volatile int maxInFlight = Integer.MAX_VALUE;
+    private volatile long sendIntervalNanos;
+
+    private volatile boolean running;
+    private volatile Agent agent;
+    private Thread worker;
+
+    /**
+     * Constructor. The buffer is not drained before {@link #start(Agent)} is called.
+     *
+     * @param maxBytes maximum estimated size of the buffered transactions
+     * @param policy what to do when a transaction does not fit
+     * @param blockTimeoutMillis maximum wait of {@link OverflowPolicy#BLOCK}
+     */
+    public TransactionBuffer(long maxBytes, OverflowPolicy policy, long blockTimeoutMillis) {
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+    }
+
+    /**
+     * Adds a transaction without metadata to the buffer, to be handed to the agent of the buffer.
+     *
+     * @param transaction transaction to add
+     * @return true if the transaction was buffered, false if it was dropped
+     */
+    public boolean add(Transaction transaction) {
+        return add(transaction, null, Collections.<String>emptyList(), Collections.<String>emptyList());
+    }
+
+    /**
+     * Adds a transaction to the buffer. The agent API does not give access to the metadata of a
+     * transaction, so the metadata already added to it is kept next to it for spilling.
+     *
+     * @param transaction transaction to add
+     * @param agent agent that created the transaction and is handed it, null for the agent of the buffer
+     * @param metadataNames names of the metadata added to the transaction
+     * @param metadataValues values of the metadata, in the order of the names
+     * @return true if the transaction was buffered, false if it was dropped
+     */
+    public boolean add(Transaction transaction, Agent agent, List<String> metadataNames, List<String> metadataValues) {
+        offered.increment();
+        Entry entry = new Entry(transaction, agent, metadataNames, metadataValues);
+        long size = entry.size;
+        if ((usedBytes + size > maxBytes || hasSpilledTransactions()) && spill(entry)) {
+            return true;
+        }
+
+        if (policy == OverflowPolicy.SAMPLE && !isSampledUnderPressure(transaction)) {
+            sampledOut.increment();
+            return false;
+        }
+
+        lock.lock();
+        try {
+            if (!makeRoom(size)) {
+                return false;
+            }
+            entries.addLast(entry);
+            usedBytes += size;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private boolean spill(Entry entry) {
+        SpillQueue queue = this.spillQueue;
+        if (queue == null) {
+            return false;
+        }
+        try {
+            if (!queue.offer(TransactionCodec.encode(entry.transaction, entry.metadataNames, entry.metadataValues))) {
+                return false;
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while spilling a transaction to disk!", e);
+            return false;
+        }
+        spilled.increment();
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * Makes room for a transaction according to the policy. Called with the lock held.
+     *
+     * @param size estimated size of the new transaction
+     * @return true if the transaction fits
+     */
+    private boolean makeRoom(long size) {
+        // A transaction larger than the whole buffer would never fit.
+        if (size > maxBytes) {
+            droppedNewest.increment();
+            return false;
+        }
+
+        switch (policy) {
+            case DROP_OLDEST:
+                while (usedBytes + size > maxBytes) {
+                    Entry oldest = entries.pollFirst();
+                    usedBytes -= oldest.size;
+                    droppedOldest.increment();
+                }
+                return true;
+            case BLOCK:
+                long nanos = blockTimeoutNanos;
+                try {
+                    while (usedBytes + size > maxBytes) {
+                        if (nanos <= 0) {
+                            timedOut.increment();
+                            return false;
+                        }
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    timedOut.increment();
+                    return false;
+                }
+                return true;
+            default:
+                if (usedBytes + size > maxBytes) {
+                    droppedNewest.increment();
+                    return false;
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Keeps all flows until the buffer is half full, after that a share of flows falling
+     * linearly to zero when the buffer is full. Flows are kept or dropped as a whole.
+     */
+    private boolean isSampledUnderPressure(Transaction transaction) {
+        double fill = usedBytes / (double) maxBytes;
+        if (fill <= SAMPLING_THRESHOLD) {
+            return true;
+        }
+        double rate = Math.max(0.0, (1.0 - fill) / (1.0 - SAMPLING_THRESHOLD));
+        return FlowSampler.forRate(rate).isSampled(transaction.getFlowId());
+    }
+
+    /**
+     * Estimates the memory held by a transaction and its metadata from their strings.
+     *
+     * @param transaction transaction
+     * @param metadataNames names of the metadata
+     * @param metadataValues values of the metadata
+     * @return estimated size in bytes
+     */
+    static long estimateSize(Transaction transaction, List<String> metadataNames, List<String> metadataValues) {
+        long chars = length(transaction.getFlowId()) + length(transaction.getOperationKey())
+                + length(transaction.getFromKey()) + length(transaction.getToKey())
+                + length(transaction.getPayloadTypeKey()) + length(transaction.getStatus())
+                + length(transaction.getMessage());
+        Map<String, List<String>> ids = transaction.getIds();
+        if (ids != null) {
+            for (Map.Entry<String, List<String>> idsOfType : ids.entrySet()) {
+                chars += length(idsOfType.getKey());
+                for (String id : idsOfType.getValue()) {
+                    chars += length(id) + 16;
+                }
+            }
+        }
+        for (int i = 0; i < metadataNames.size(); i++) {
+            chars += length(metadataNames.get(i)) + length(metadataValues.get(i)) + 16;
+        }
+        return TRANSACTION_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Sets the queue the transactions that do not fit in memory are spilled to.
+     *
+     * @param spillQueue spill queue, or null to apply the overflow policy right away
+     */
+    public void setSpillQueue(SpillQueue spillQueue) {
+        this.spillQueue = spillQueue;
+    }
+
+    public SpillQueue getSpillQueue() {
+        return spillQueue;
+    }
+
+    /**
+     * Limits how fast the transactions are handed to the agent.
+     * The agent sends what it has been handed once per send interval, so at most maxInFlight
+     * transactions are handed to it per interval.
+     *
+     * @param maxInFlight maximum number of transactions handed to the agent per send interval
+     * @param sendIntervalMillis send interval of the agent
+     */
+    public void setSendWindow(int maxInFlight, long sendIntervalMillis) {
+        this.maxInFlight = maxInFlight;
+        this.sendIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sendIntervalMillis);
+    }
+
+    /**
+     * Starts the thread handing the buffered transactions to the agent.
+     *
+     * @param agent agent to hand the transactions to
+     */
+    public synchronized void start(Agent agent) {
+        if (running) {
+            return;
+        }
+        this.agent = agent;
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "aino-transaction-buffer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Switches the buffer to a reloaded agent. Buffered transactions are still handed to the agent that created
+     * them, the new agent only creates the transactions restored from the spill queue and gets those added without
+     * an agent.
+     *
+     * @param agent agent of the buffer from now on
+     */
+    public void setAgent(Agent agent) {
+        this.agent = agent;
+    }
+
+    /**
+     * Stops the background thread. The buffered transactions are written to the spill queue if there is one,
+     * otherwise they are handed to the agent.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void shutdown(long timeoutMillis) throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.join(timeoutMillis);
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<Entry>(DRAIN_BATCH_SIZE);
+        long windowStart = System.nanoTime();
+        int handed = 0;
+        while (true) {
+            int window = maxInFlight;
+            long elapsed = System.nanoTime() - windowStart;
+            if (elapsed >= sendIntervalNanos) {
+                windowStart = System.nanoTime();
+                handed = 0;
+            } else if (handed >= window && running) {
+                if (!awaitSendInterval(sendIntervalNanos - elapsed)) {
+                    return;
+                }
+                continue;
+            }
+            // On shutdown everything left is taken without pacing, see spillOnShutdown.
+            int limit = running ? Math.min(DRAIN_BATCH_SIZE, window - handed) : DRAIN_BATCH_SIZE;
+
+            lock.lock();
+            try {
+                while (entries.isEmpty() && !hasSpilledTransactions()) {
+                    if (!running) {
+                        return;
+                    }
+                    // Spilling does not signal, so the spill queue is polled.
+                    notEmpty.awaitNanos(SPILL_POLL_NANOS);
+                }
+                while (batch.size() < limit && !entries.isEmpty()) {
+                    Entry entry = entries.pollFirst();
+                    usedBytes -= entry.size;
+                    batch.add(entry);
+                }
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            Agent agent = this.agent;
+            if (batch.isEmpty()) {
+                if (!running) {
+                    // Spilled transactions are left on disk for the next start.
+                    return;
+                }
+                restoreSpilled(batch, agent, limit);
+            } else if (!running) {
+                spillOnShutdown(batch);
+            }
+
+            for (Entry entry : batch) {
+                try {
+                    (entry.agent != null ? entry.agent : agent).addTransaction(entry.transaction);
+                    delivered.increment();
+                } catch (Exception e) {
+                    log.error("Error occurred while handing a buffered transaction to aino.io agent!", e);
+                }
+            }
+            handed += batch.size();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits for the next send interval of the agent. Shutdown wakes the thread up.
+     *
+     * @return false if interrupted
+     */
+    private boolean awaitSendInterval(long nanos) {
+        lock.lock();
+        try {
+            if (running) {
+                notEmpty.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasSpilledTransactions() {
+        SpillQueue queue = this.spillQueue;
+        return queue != null && !queue.isEmpty();
+    }
+
+    /**
+     * The agent cannot be stopped or flushed, so what it is handed on shutdown is only sent if its send
+     * timer fires before the JVM exits. With a spill queue the transactions left in memory are written
+     * to disk instead, behind the ones already there, and sent after the next start. What does not fit
+     * in the spill queue stays in the batch and is handed to the agent.
+     */
+    private void spillOnShutdown(List<Entry> batch) {
+        SpillQueue queue = this.spillQueue;
+        if (queue == null) {
+            return;
+        }
+        int spilledCount = 0;
+        try {
+            while (spilledCount < batch.size()) {
+                Entry entry = batch.get(spilledCount);
+                if (!queue.offer(TransactionCodec.encode(entry.transaction, entry.metadataNames, entry.metadataValues))) {
+                    break;
+                }
+                spilled.increment();
+                spilledCount++;
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while spilling the buffered transactions to disk on shutdown!", e);
+        }
+        batch.subList(0, spilledCount).clear();
+    }
+
+    private void restoreSpilled(List<Entry> batch, Agent agent, int limit) {
+        SpillQueue queue = this.spillQueue;
+        try {
+            byte[] record;
+            while (batch.size() < limit && (record = queue.poll()) != null) {
+                try {
+                    batch.add(new Entry(TransactionCodec.decode(record, agent), agent,
+                            Collections.<String>emptyList(), Collections.<String>emptyList()));
+                    restored.increment();
+                } catch (IOException e) {
+                    log.error("Dropping a corrupted spilled transaction!", e);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while reading spilled transactions!", e);
+        }
+    }
+
+    /**
+     * Registers the buffer to the platform MBean server, replacing the buffer of a previous deployment.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(METRICS_JMX_DOMAIN + ":type=TransactionBuffer");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Could not register transaction buffer to JMX. Exception message: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return policy.getConfigName();
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    @Override
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getOfferedCount() {
+        return offered.get();
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    @Override
+    public long getDroppedNewestCount() {
+        return droppedNewest.get();
+    }
+
+    @Override
+    public long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    @Override
+    public long getSampledOutCount() {
+        return sampledOut.get();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    @Override
+    public long getRestoredCount() {
+        return restored.get();
+    }
+
+    @Override
+    public long getSpillSize() {
+        SpillQueue queue = this.spillQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public long getSpillBytes() {
+        SpillQueue queue = this.spillQueue;
+        return queue == null ? 0 : queue.getUsedBytes();
+    }
+
+    private static class Entry {
+        final Transaction transaction;
+        final Agent agent;
+        final List<String> metadataNames;
+        final List<String> metadataValues;
+        final long size;
+
+        Entry(Transaction transaction, Agent agent, List<String> metadataNames, List<String> metadataValues) {
+            this.transaction = transaction;
+            this.agent = agent;
+            this.metadataNames = metadataNames;
+            this.metadataValues = metadataValues;
+            this.size = estimateSize(transaction, metadataNames, metadataValues);
+        }
+    }
+}
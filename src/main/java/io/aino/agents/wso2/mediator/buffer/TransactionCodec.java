@@ -0,0 +1,159 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+
+/**
+ * Binary form of a transaction for {@link SpillQueue}.
+ *
+ * The agent API does not give access to the metadata of a transaction, so the metadata is encoded
+ * from the names and values kept next to the transaction in the buffer. The API does not allow
+ * setting the timestamp either, so a restored transaction gets the original timestamp as metadata
+ * named {@link #ORIGINAL_TIMESTAMP_METADATA}.
+ */
+public final class TransactionCodec {
+
+    public static final String ORIGINAL_TIMESTAMP_METADATA = "originalTimestamp";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int VERSION = 1;
+
+    private TransactionCodec() {}
+
+    /**
+     * Encodes a transaction.
+     *
+     * @param transaction transaction
+     * @param metadataNames names of the metadata of the transaction
+     * @param metadataValues values of the metadata, in the order of the names
+     * @return encoded transaction
+     */
+    public static byte[] encode(Transaction transaction, List<String> metadataNames, List<String> metadataValues) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(transaction.getTimestamp());
+            writeString(out, transaction.getFlowId());
+            writeString(out, transaction.getOperationKey());
+            writeString(out, transaction.getFromKey());
+            writeString(out, transaction.getToKey());
+            writeString(out, transaction.getPayloadTypeKey());
+            writeString(out, transaction.getStatus());
+            writeString(out, transaction.getMessage());
+
+            Map<String, List<String>> ids = transaction.getIds();
+            out.writeInt(ids == null ? 0 : ids.size());
+            if (ids != null) {
+                for (Map.Entry<String, List<String>> idsOfType : ids.entrySet()) {
+                    writeString(out, idsOfType.getKey());
+                    out.writeInt(idsOfType.getValue().size());
+                    for (String id : idsOfType.getValue()) {
+                        writeString(out, id);
+                    }
+                }
+            }
+
+            out.writeInt(metadataNames.size());
+            for (int i = 0; i < metadataNames.size(); i++) {
+                writeString(out, metadataNames.get(i));
+                writeString(out, metadataValues.get(i));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a transaction.
+     *
+     * @param record encoded transaction
+     * @param agent agent creating the transaction
+     * @return decoded transaction
+     * @throws IOException if the record is not an encoded transaction
+     */
+    public static Transaction decode(byte[] record, Agent agent) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown spilled transaction version " + version);
+        }
+
+        long timestamp = in.readLong();
+        Transaction transaction = agent.newTransaction();
+        transaction.setFlowId(readString(in));
+        transaction.setOperationKey(readString(in));
+        transaction.setFromKey(readString(in));
+        transaction.setToKey(readString(in));
+        transaction.setPayloadTypeKey(readString(in));
+        transaction.setStatus(readString(in));
+        transaction.setMessage(readString(in));
+
+        int idTypeCount = in.readInt();
+        for (int i = 0; i < idTypeCount; i++) {
+            String idType = readString(in);
+            int idCount = in.readInt();
+            List<String> ids = new ArrayList<String>(idCount);
+            for (int j = 0; j < idCount; j++) {
+                ids.add(readString(in));
+            }
+            transaction.addIdsByTypeKey(idType, ids);
+        }
+
+        int metadataCount = in.readInt();
+        for (int i = 0; i < metadataCount; i++) {
+            transaction.addMetadata(readString(in), readString(in));
+        }
+        transaction.addMetadata(ORIGINAL_TIMESTAMP_METADATA, String.valueOf(timestamp));
+        return transaction;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
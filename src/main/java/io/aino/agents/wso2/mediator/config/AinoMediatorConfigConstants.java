@@ -53,6 +53,16 @@ public class AinoMediatorConfigConstants {
 
     public static final String DEFAULT_SEPARATOR = ",";
 
+    public static final String CONFIG_ASYNC_MEDIATION_TAG_NAME = "asyncMediation";
+    public static final String CONFIG_WORKERS_ATT_NAME = "workers";
+    public static final int ASYNC_WORKER_COUNT = 2;
+    public static final int ASYNC_QUEUE_SIZE = 10000;
+
+    public static final long WARNING_SUMMARY_INTERVAL_MILLIS = 60000L;
+    public static final int WARNING_AGGREGATOR_MAX_KEYS = 1024;
+
+    public static final String METRICS_JMX_DOMAIN = "io.aino.agents.wso2";
+
     public static final String NAMESPACE_STRING = XMLConfigConstants.SYNAPSE_NAMESPACE;
 
     public static final String CONFIG_AINO_LOGER_SERVICE_TAG_NAME = "ainoLoggerService";
@@ -65,6 +75,48 @@ public class AinoMediatorConfigConstants {
     public static final String CONFIG_INTERVAL_ATT_NAME = "interval";
     public static final String CONFIG_SIZE_THRESHOLD_ATT_NAME = "sizeThreshold";
 
+    public static final String CONFIG_ESB_LOG_TAG_NAME = "esbLog";
+    public static final String CONFIG_FORMAT_ATT_NAME = "format";
+    public static final String CONFIG_ASYNC_ATT_NAME = "async";
+    public static final String CONFIG_QUEUE_SIZE_ATT_NAME = "queueSize";
+    public static final int ESB_LOG_QUEUE_SIZE = 10000;
+
+    public static final String CONFIG_SAMPLING_TAG_NAME = "sampling";
+    public static final String CONFIG_ARTIFACT_TAG_NAME = "artifact";
+    public static final String CONFIG_NAME_ATT_NAME = "name";
+    public static final String CONFIG_RATE_ATT_NAME = "rate";
+
+    public static final String CONFIG_TRANSACTION_BUFFER_TAG_NAME = "transactionBuffer";
+    public static final String CONFIG_MAX_BYTES_ATT_NAME = "maxBytes";
+    public static final String CONFIG_OVERFLOW_POLICY_ATT_NAME = "overflowPolicy";
+    public static final String CONFIG_BLOCK_TIMEOUT_ATT_NAME = "blockTimeout";
+    public static final long TRANSACTION_BUFFER_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long TRANSACTION_BUFFER_BLOCK_TIMEOUT_MILLIS = 100L;
+    public static final String CONFIG_MAX_IN_FLIGHT_ATT_NAME = "maxInFlight";
+    public static final int TRANSACTION_BUFFER_MAX_IN_FLIGHT = 1000;
+    public static final long AGENT_SEND_INTERVAL_MILLIS = 1000L;
+    public static final String CONFIG_SPILL_ATT_NAME = "spill";
+    public static final String CONFIG_SPILL_DIRECTORY_ATT_NAME = "spillDirectory";
+    public static final String CONFIG_MAX_SPILL_BYTES_ATT_NAME = "maxSpillBytes";
+    public static final String SPILL_DIRECTORY = ESB_CONFIG_DIR + "ainoSpill";
+    public static final int SPILL_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final long SPILL_MAX_BYTES = 1024L * 1024 * 1024;
+
+    public static final String CONFIG_TRANSACTION_LIMITS_TAG_NAME = "transactionLimits";
+    public static final String CONFIG_FIELD_MAX_BYTES_ATT_NAME = "fieldMaxBytes";
+
+    public static final String CONFIG_SINKS_TAG_NAME = "sinks";
+    public static final String CONFIG_SINK_TAG_NAME = "sink";
+    public static final String CONFIG_TYPE_ATT_NAME = "type";
+    public static final String CONFIG_DEFAULT_ATT_NAME = "default";
+    public static final String CONFIG_SINK_ATT_NAME = "sink";
+
+    public static final String CONFIG_XPATH_CACHE_TAG_NAME = "xpathCache";
+
+    public static final String CONFIG_HOT_RELOAD_TAG_NAME = "hotReload";
+    public static final String CONFIG_DEBOUNCE_ATT_NAME = "debounce";
+    public static final long HOT_RELOAD_DEBOUNCE_MILLIS = 1000L;
+
     public static final String LOG_MEDIATOR_TAG_NAME = "log";
 
     public static final String ROOT_TAG_NAME = "ainoLog";
@@ -72,10 +124,21 @@ public class AinoMediatorConfigConstants {
     public static final String STATUS_ATT_NAME = "status";
     public static final QName ATT_STATUS_EXPRESSION_Q = new QName("statusExpression");
 
+    public static final String ASYNC_ATT_NAME = "async";
+    public static final String SAMPLE_RATE_ATT_NAME = "sampleRate";
+    public static final String PAYLOAD_DIGEST_ATT_NAME = "payloadDigest";
+
     public static final String APPLICATION_KEY_ATT_NAME = "applicationKey";
     public static final String PAYLOAD_TYPE_ATT_NAME = "key";
 
     public static final String TYPE_ATT_NAME = "typeKey";
+    public static final String MAX_COUNT_ATT_NAME = "maxCount";
+    public static final String MAX_BYTES_ATT_NAME = "maxBytes";
+    public static final String DISTINCT_ATT_NAME = "distinct";
+
+    public static final String TRUNCATED_IDS_METADATA_NAME = "truncatedIds";
+    public static final String PAYLOAD_DIGEST_METADATA_NAME = "payloadDigest";
+    public static final String PAYLOAD_SIZE_METADATA_NAME = "payloadSize";
 
     public static final String MESSAGE_TAG_NAME = "message";
     public static final String OPERATION_TAG_NAME = "operation";
@@ -87,6 +150,9 @@ public class AinoMediatorConfigConstants {
 
 
     public static final QName ATT_SEPARATOR_Q = new QName("separator");
+    public static final QName ATT_ASYNC_Q = new QName(ASYNC_ATT_NAME);
+    public static final QName ATT_SAMPLE_RATE_Q = new QName(SAMPLE_RATE_ATT_NAME);
+    public static final QName ATT_PAYLOAD_DIGEST_Q = new QName(PAYLOAD_DIGEST_ATT_NAME);
 
     public static final QName CONFIG_AINO_LOGGER_SERVICE_Q = new QName(CONFIG_AINO_LOGER_SERVICE_TAG_NAME);
     public static final QName CONFIG_ADDRESS_Q = new QName(CONFIG_ADDRESS_TAG_NAME);
@@ -98,6 +164,42 @@ public class AinoMediatorConfigConstants {
     public static final QName CONFIG_INTERVAL_ATT_Q = new QName(CONFIG_INTERVAL_ATT_NAME);
     public static final QName CONFIG_SIZE_THRESHOLD_ATT_Q = new QName(CONFIG_SIZE_THRESHOLD_ATT_NAME);
 
+    public static final QName CONFIG_ESB_LOG_Q = new QName(CONFIG_ESB_LOG_TAG_NAME);
+    public static final QName CONFIG_FORMAT_ATT_Q = new QName(CONFIG_FORMAT_ATT_NAME);
+    public static final QName CONFIG_ASYNC_ATT_Q = new QName(CONFIG_ASYNC_ATT_NAME);
+    public static final QName CONFIG_QUEUE_SIZE_ATT_Q = new QName(CONFIG_QUEUE_SIZE_ATT_NAME);
+
+    public static final QName CONFIG_ASYNC_MEDIATION_Q = new QName(CONFIG_ASYNC_MEDIATION_TAG_NAME);
+    public static final QName CONFIG_WORKERS_ATT_Q = new QName(CONFIG_WORKERS_ATT_NAME);
+
+    public static final QName CONFIG_SAMPLING_Q = new QName(CONFIG_SAMPLING_TAG_NAME);
+    public static final QName CONFIG_ARTIFACT_Q = new QName(CONFIG_ARTIFACT_TAG_NAME);
+    public static final QName CONFIG_NAME_ATT_Q = new QName(CONFIG_NAME_ATT_NAME);
+    public static final QName CONFIG_RATE_ATT_Q = new QName(CONFIG_RATE_ATT_NAME);
+
+    public static final QName CONFIG_TRANSACTION_BUFFER_Q = new QName(CONFIG_TRANSACTION_BUFFER_TAG_NAME);
+    public static final QName CONFIG_MAX_BYTES_ATT_Q = new QName(CONFIG_MAX_BYTES_ATT_NAME);
+    public static final QName CONFIG_OVERFLOW_POLICY_ATT_Q = new QName(CONFIG_OVERFLOW_POLICY_ATT_NAME);
+    public static final QName CONFIG_BLOCK_TIMEOUT_ATT_Q = new QName(CONFIG_BLOCK_TIMEOUT_ATT_NAME);
+    public static final QName CONFIG_MAX_IN_FLIGHT_ATT_Q = new QName(CONFIG_MAX_IN_FLIGHT_ATT_NAME);
+    public static final QName CONFIG_SPILL_ATT_Q = new QName(CONFIG_SPILL_ATT_NAME);
+    public static final QName CONFIG_SPILL_DIRECTORY_ATT_Q = new QName(CONFIG_SPILL_DIRECTORY_ATT_NAME);
+    public static final QName CONFIG_MAX_SPILL_BYTES_ATT_Q = new QName(CONFIG_MAX_SPILL_BYTES_ATT_NAME);
+
+    public static final QName CONFIG_TRANSACTION_LIMITS_Q = new QName(CONFIG_TRANSACTION_LIMITS_TAG_NAME);
+    public static final QName CONFIG_FIELD_MAX_BYTES_ATT_Q = new QName(CONFIG_FIELD_MAX_BYTES_ATT_NAME);
+
+    public static final QName CONFIG_SINKS_Q = new QName(CONFIG_SINKS_TAG_NAME);
+    public static final QName CONFIG_SINK_Q = new QName(CONFIG_SINK_TAG_NAME);
+    public static final QName CONFIG_TYPE_ATT_Q = new QName(CONFIG_TYPE_ATT_NAME);
+    public static final QName CONFIG_DEFAULT_ATT_Q = new QName(CONFIG_DEFAULT_ATT_NAME);
+    public static final QName CONFIG_SINK_ATT_Q = new QName(CONFIG_SINK_ATT_NAME);
+
+    public static final QName CONFIG_XPATH_CACHE_Q = new QName(CONFIG_XPATH_CACHE_TAG_NAME);
+
+    public static final QName CONFIG_HOT_RELOAD_Q = new QName(CONFIG_HOT_RELOAD_TAG_NAME);
+    public static final QName CONFIG_DEBOUNCE_ATT_Q = new QName(CONFIG_DEBOUNCE_ATT_NAME);
+
     public static final QName LOG_MEDIATOR_ROOT_Q = new QName(NAMESPACE_STRING, LOG_MEDIATOR_TAG_NAME);
 
     public static final QName ROOT_TAG = new QName(NAMESPACE_STRING, ROOT_TAG_NAME, XMLConstants.DEFAULT_NS_PREFIX);
@@ -108,6 +210,9 @@ public class AinoMediatorConfigConstants {
     public static final QName ATT_PAYLOAD_TYPE_KEY_Q = new QName(PAYLOAD_TYPE_ATT_NAME);
 
     public static final QName ATT_TYPE_Q = new QName(TYPE_ATT_NAME);
+    public static final QName ATT_MAX_COUNT_Q = new QName(MAX_COUNT_ATT_NAME);
+    public static final QName ATT_MAX_BYTES_Q = new QName(MAX_BYTES_ATT_NAME);
+    public static final QName ATT_DISTINCT_Q = new QName(DISTINCT_ATT_NAME);
 
     public static final QName MESSAGE_Q = new QName(NAMESPACE_STRING, MESSAGE_TAG_NAME, XMLConstants.DEFAULT_NS_PREFIX);
     public static final QName OPERATION_Q = new QName(NAMESPACE_STRING, OPERATION_TAG_NAME,
@@ -125,6 +230,7 @@ public class AinoMediatorConfigConstants {
     public static final String AINO_ARTIFACT_NAME_PROPERTY_NAME = "ainoArtifactName";
     public static final String AINO_ARTIFACT_LINE_NUMBER_PROPERTY_NAME = "ainoArtifactLineNumber";
     public static final String FLOW_ID_PROPERTY_NAME = "flowId";
+    public static final String AINO_XPATH_CACHE_PROPERTY_NAME = "ainoXPathResultCache";
 
     public static final String SYNAPSE_MESSAGE_CONTEXT_PREFIX = "$ctx:";
     public static final String AXIS_TRANSPORT_HEADER_PREFIX = "$trp:";
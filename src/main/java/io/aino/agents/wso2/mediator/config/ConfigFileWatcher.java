@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Watches a config file and hands its new contents to a listener when it changes.
+ *
+ * Editors and deployment tools often write a file in several steps, so the file is read only after
+ * it has not changed for the debounce time. Contents equal to the previously handled ones are ignored.
+ * If the listener fails, the failure is logged and the same contents are not retried until the file changes again.
+ */
+public class ConfigFileWatcher {
+    private static final Log log = LogFactory.getLog(ConfigFileWatcher.class);
+
+    /**
+     * Receives the new contents of the watched file.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the watcher thread when the contents of the file have changed.
+         *
+         * @param content new contents of the file
+         * @throws Exception if the contents cannot be taken into use
+         */
+        void configChanged(byte[] content) throws Exception;
+    }
+
+    private final Path file;
+    private final long debounceMillis;
+    private final Listener listener;
+    private byte[] lastContent;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Constructor. The file is not watched before {@link #start()} is called.
+     *
+     * @param file file to watch
+     * @param debounceMillis how long the file must stay unchanged before it is read
+     * @param listener listener of the changes
+     * @throws IOException if the current contents of the file cannot be read
+     */
+    public ConfigFileWatcher(File file, long debounceMillis, Listener listener) throws IOException {
+        this.file = file.toPath().toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+        this.lastContent = Files.readAllBytes(this.file);
+    }
+
+    /**
+     * Starts the background thread watching the file.
+     *
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "aino-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = pollEvents(key);
+                // Waits until the file has not changed for the debounce time.
+                while (changed) {
+                    key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        checkForChanges();
+                        break;
+                    }
+                    pollEvents(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private boolean pollEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && file.getFileName().equals(context))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Reads the file and notifies the listener if the contents have changed since the last check.
+     *
+     * @return true if the listener was notified
+     */
+    public synchronized boolean checkForChanges() {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (IOException e) {
+            log.warn("Unable to read " + file + ": " + e.getMessage());
+            return false;
+        }
+        if (Arrays.equals(content, lastContent)) {
+            return false;
+        }
+        lastContent = content;
+        try {
+            listener.configChanged(content);
+        } catch (Exception e) {
+            log.error("Unable to reload " + file + ", the previous configuration stays in use.", e);
+        }
+        return true;
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the watch service of " + file, e);
+        }
+        thread.interrupt();
+        thread = null;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.config;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.aino.agents.core.Agent;
+
+import static io.aino.agents.wso2.mediator.AinoMediator.*;
+
+/**
+ * Read-optimized index of the keys configured to the agent.
+ *
+ * Lookups read an immutable snapshot through a single reference and never lock.
+ * Keys not yet in the snapshot are looked up from the agent config once and published
+ * with a compare-and-set of a copied snapshot. Configured keys and keys missing from the
+ * config are remembered separately, so arbitrary dynamic values cannot push configured keys
+ * out of the index. Both are bounded per type; once the misses are full, further unknown
+ * values are looked up from the agent config every time.
+ *
+ * Each {@link io.aino.agents.wso2.mediator.plan.ExecutionPlan} holds the registry of its agent,
+ * so a reloaded agent gets a fresh registry with its plans.
+ *
+ * The Unknown fallback keys are registered to the agent config once, when the agent is
+ * initialized, so mediation never modifies the agent config.
+ */
+public final class KeyRegistry {
+
+    /**
+     * Types of keys in the Aino.io configuration.
+     */
+    public enum KeyType {
+        OPERATION, APPLICATION, PAYLOAD_TYPE, ID_TYPE
+    }
+
+    private static final int MAX_KEYS_PER_TYPE = 4096;
+    private static final int MAX_MISSES_PER_TYPE = 256;
+
+    private final Agent agent;
+    private final AtomicReference<EnumMap<KeyType, Map<String, String>>> names;
+    private final AtomicReference<EnumMap<KeyType, Map<String, String>>> misses;
+
+    /**
+     * Constructor.
+     *
+     * @param agent aino agent whose config is indexed
+     */
+    public KeyRegistry(Agent agent) {
+        this.agent = agent;
+        this.names = new AtomicReference<EnumMap<KeyType, Map<String, String>>>(emptySnapshot());
+        this.misses = new AtomicReference<EnumMap<KeyType, Map<String, String>>>(emptySnapshot());
+    }
+
+    private static EnumMap<KeyType, Map<String, String>> emptySnapshot() {
+        EnumMap<KeyType, Map<String, String>> empty = new EnumMap<KeyType, Map<String, String>>(KeyType.class);
+        for (KeyType type : KeyType.values()) {
+            empty.put(type, Collections.<String, String>emptyMap());
+        }
+        return empty;
+    }
+
+    /**
+     * Adds the Unknown fallback keys to the agent config.
+     * Must be called before the agent is used by mediators.
+     *
+     * @param agent aino agent
+     */
+    public static void registerUnknownKeys(Agent agent) {
+        if (!agent.getAgentConfig().getOperations().entryExists(UNKNOWN_DYNAMIC_OPERATION)) {
+            agent.getAgentConfig().getOperations().addEntry(UNKNOWN_DYNAMIC_OPERATION, UNKNOWN_DYNAMIC_OPERATION);
+        }
+        if (!agent.getAgentConfig().getApplications().entryExists(UNKNOWN_DYNAMIC_APPLICATION)) {
+            agent.getAgentConfig().getApplications().addEntry(UNKNOWN_DYNAMIC_APPLICATION, UNKNOWN_DYNAMIC_APPLICATION);
+        }
+        if (!agent.getAgentConfig().getPayloadTypes().entryExists(UNKNOWN_DYNAMIC_PAYLOADTYPE)) {
+            agent.getAgentConfig().getPayloadTypes().addEntry(UNKNOWN_DYNAMIC_PAYLOADTYPE, UNKNOWN_DYNAMIC_PAYLOADTYPE);
+        }
+        if (!agent.getAgentConfig().getIdTypes().entryExists(UNKNOWN_DYNAMIC_IDTYPE)) {
+            agent.getAgentConfig().getIdTypes().addEntry(UNKNOWN_DYNAMIC_IDTYPE, UNKNOWN_DYNAMIC_IDTYPE);
+        }
+    }
+
+    /**
+     * Tells whether the key is configured.
+     *
+     * @param type type of the key
+     * @param key key to look up
+     * @return true if the key exists
+     */
+    public boolean exists(KeyType type, String key) {
+        return getName(type, key) != null;
+    }
+
+    /**
+     * Returns the name configured for the key.
+     *
+     * @param type type of the key
+     * @param key key to look up
+     * @return name of the key, or null if the key does not exist
+     */
+    public String getName(KeyType type, String key) {
+        if (key == null) {
+            return null;
+        }
+
+        String name = names.get().get(type).get(key);
+        if (name != null) {
+            return name;
+        }
+        if (misses.get().get(type).containsKey(key)) {
+            return null;
+        }
+
+        name = lookUp(type, key);
+        if (name != null) {
+            publish(names, type, key, name, MAX_KEYS_PER_TYPE);
+        } else {
+            publish(misses, type, key, key, MAX_MISSES_PER_TYPE);
+        }
+        return name;
+    }
+
+    private String lookUp(KeyType type, String key) {
+        String name;
+        switch (type) {
+            case OPERATION:
+                name = agent.getAgentConfig().getOperations().getEntry(key);
+                break;
+            case APPLICATION:
+                name = agent.getAgentConfig().getApplications().getEntry(key);
+                break;
+            case PAYLOAD_TYPE:
+                name = agent.getAgentConfig().getPayloadTypes().getEntry(key);
+                break;
+            default:
+                name = agent.getAgentConfig().getIdTypes().getEntry(key);
+                break;
+        }
+        return name;
+    }
+
+    private static void publish(AtomicReference<EnumMap<KeyType, Map<String, String>>> snapshot,
+                                KeyType type, String key, String name, int maxKeys) {
+        while (true) {
+            EnumMap<KeyType, Map<String, String>> current = snapshot.get();
+            Map<String, String> keys = current.get(type);
+            if (keys.containsKey(key) || keys.size() >= maxKeys) {
+                return;
+            }
+
+            Map<String, String> newKeys = new HashMap<String, String>(keys);
+            newKeys.put(key, name);
+            EnumMap<KeyType, Map<String, String>> updated = new EnumMap<KeyType, Map<String, String>>(current);
+            updated.put(type, Collections.unmodifiableMap(newKeys));
+            if (snapshot.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.impl.builder.StAXOMBuilder;
+import org.apache.commons.lang3.StringUtils;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.config.InvalidAgentConfigException;
+import io.aino.agents.wso2.mediator.buffer.OverflowPolicy;
+import io.aino.agents.wso2.mediator.buffer.SpillQueue;
+import io.aino.agents.wso2.mediator.buffer.TransactionBuffer;
+import io.aino.agents.wso2.mediator.log.AsyncEsbLogAppender;
+import io.aino.agents.wso2.mediator.log.EsbLogFormat;
+import io.aino.agents.wso2.mediator.log.EsbLogger;
+import io.aino.agents.wso2.mediator.sink.TransactionSink;
+import io.aino.agents.wso2.mediator.sink.TransactionSinks;
+import io.aino.agents.wso2.mediator.plan.TransactionBudget;
+import io.aino.agents.wso2.mediator.util.AsyncMediationExecutor;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.*;
+
+/**
+ * Mediator specific settings of ainoLogMediatorConfig.xml.
+ * The settings of the agent itself are read by the agent.
+ */
+public class MediatorConfig {
+
+    private EsbLogFormat esbLogFormat = EsbLogFormat.PLAIN;
+    private boolean esbLogAsync = false;
+    private int esbLogQueueSize = ESB_LOG_QUEUE_SIZE;
+    private int asyncWorkerCount = ASYNC_WORKER_COUNT;
+    private int asyncQueueSize = ASYNC_QUEUE_SIZE;
+    private double sampleRate = 1.0;
+    private final Map<String, Double> artifactSampleRates = new HashMap<String, Double>();
+    private boolean transactionBufferEnabled = false;
+    private long transactionBufferMaxBytes = TRANSACTION_BUFFER_MAX_BYTES;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+    private long blockTimeoutMillis = TRANSACTION_BUFFER_BLOCK_TIMEOUT_MILLIS;
+    private int maxInFlight = TRANSACTION_BUFFER_MAX_IN_FLIGHT;
+    private long sendIntervalMillis = AGENT_SEND_INTERVAL_MILLIS;
+    private boolean spill = false;
+    private String spillDirectory = SPILL_DIRECTORY;
+    private long maxSpillBytes = SPILL_MAX_BYTES;
+    private TransactionBudget transactionBudget = TransactionBudget.UNLIMITED;
+    private final List<SinkDefinition> sinkDefinitions = new ArrayList<SinkDefinition>();
+    private final Map<String, String> artifactSinkNames = new LinkedHashMap<String, String>();
+    private String defaultSinkName;
+    private boolean xpathCacheEnabled = true;
+    private boolean hotReload = false;
+    private long hotReloadDebounceMillis = HOT_RELOAD_DEBOUNCE_MILLIS;
+
+    /**
+     * Reads the mediator settings from the config file.
+     *
+     * @param configFileInputStream aino.io config file as InputStream
+     * @return mediator config
+     */
+    public static MediatorConfig parse(InputStream configFileInputStream) {
+        MediatorConfig config = new MediatorConfig();
+        OMElement root;
+        try {
+            root = new StAXOMBuilder(configFileInputStream).getDocumentElement();
+        } catch (XMLStreamException e) {
+            throw new InvalidAgentConfigException("Unable to read the aino config file.", e);
+        }
+
+        OMElement loggerServiceElement = root.getFirstChildWithName(CONFIG_AINO_LOGGER_SERVICE_Q);
+        if (loggerServiceElement != null) {
+            config.readSendInterval(loggerServiceElement);
+        }
+
+        OMElement esbLogElement = root.getFirstChildWithName(CONFIG_ESB_LOG_Q);
+        if (esbLogElement != null) {
+            config.readEsbLog(esbLogElement);
+        }
+
+        OMElement asyncMediationElement = root.getFirstChildWithName(CONFIG_ASYNC_MEDIATION_Q);
+        if (asyncMediationElement != null) {
+            config.readAsyncMediation(asyncMediationElement);
+        }
+
+        OMElement samplingElement = root.getFirstChildWithName(CONFIG_SAMPLING_Q);
+        if (samplingElement != null) {
+            config.readSampling(samplingElement);
+        }
+
+        OMElement transactionBufferElement = root.getFirstChildWithName(CONFIG_TRANSACTION_BUFFER_Q);
+        if (transactionBufferElement != null) {
+            config.readTransactionBuffer(transactionBufferElement);
+        }
+
+        OMElement transactionLimitsElement = root.getFirstChildWithName(CONFIG_TRANSACTION_LIMITS_Q);
+        if (transactionLimitsElement != null) {
+            config.readTransactionLimits(transactionLimitsElement);
+        }
+
+        OMElement sinksElement = root.getFirstChildWithName(CONFIG_SINKS_Q);
+        if (sinksElement != null) {
+            config.readSinks(sinksElement);
+        }
+
+        OMElement xpathCacheElement = root.getFirstChildWithName(CONFIG_XPATH_CACHE_Q);
+        if (xpathCacheElement != null) {
+            String enabled = xpathCacheElement.getAttributeValue(CONFIG_ENABLED_ATT_Q);
+            config.xpathCacheEnabled = StringUtils.isEmpty(enabled) || Boolean.parseBoolean(enabled);
+        }
+
+        OMElement hotReloadElement = root.getFirstChildWithName(CONFIG_HOT_RELOAD_Q);
+        if (hotReloadElement != null) {
+            config.readHotReload(hotReloadElement);
+        }
+        return config;
+    }
+
+    private void readSendInterval(OMElement loggerServiceElement) {
+        OMElement sendElement = loggerServiceElement.getFirstChildWithName(CONFIG_SEND_Q);
+        String interval = sendElement == null ? null : sendElement.getAttributeValue(CONFIG_INTERVAL_ATT_Q);
+        if (StringUtils.isNotEmpty(interval)) {
+            sendIntervalMillis = parsePositiveLong(interval, CONFIG_INTERVAL_ATT_NAME);
+        }
+    }
+
+    private void readEsbLog(OMElement esbLogElement) {
+        String format = esbLogElement.getAttributeValue(CONFIG_FORMAT_ATT_Q);
+        if (StringUtils.isNotEmpty(format)) {
+            esbLogFormat = EsbLogFormat.getFormat(format);
+            if (esbLogFormat == null) {
+                throw new InvalidAgentConfigException("Invalid esbLog format: " + format);
+            }
+        }
+
+        esbLogAsync = Boolean.parseBoolean(esbLogElement.getAttributeValue(CONFIG_ASYNC_ATT_Q));
+
+        String queueSize = esbLogElement.getAttributeValue(CONFIG_QUEUE_SIZE_ATT_Q);
+        if (StringUtils.isNotEmpty(queueSize)) {
+            esbLogQueueSize = parsePositiveInt(queueSize, CONFIG_QUEUE_SIZE_ATT_NAME);
+        }
+    }
+
+    private void readAsyncMediation(OMElement asyncMediationElement) {
+        String workers = asyncMediationElement.getAttributeValue(CONFIG_WORKERS_ATT_Q);
+        if (StringUtils.isNotEmpty(workers)) {
+            asyncWorkerCount = parsePositiveInt(workers, CONFIG_WORKERS_ATT_NAME);
+        }
+
+        String queueSize = asyncMediationElement.getAttributeValue(CONFIG_QUEUE_SIZE_ATT_Q);
+        if (StringUtils.isNotEmpty(queueSize)) {
+            asyncQueueSize = parsePositiveInt(queueSize, CONFIG_QUEUE_SIZE_ATT_NAME);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readSampling(OMElement samplingElement) {
+        String rate = samplingElement.getAttributeValue(CONFIG_RATE_ATT_Q);
+        if (StringUtils.isNotEmpty(rate)) {
+            sampleRate = parseSampleRate(rate);
+        }
+
+        Iterator<OMElement> artifacts = samplingElement.getChildrenWithName(CONFIG_ARTIFACT_Q);
+        while (artifacts.hasNext()) {
+            OMElement artifact = artifacts.next();
+            String name = artifact.getAttributeValue(CONFIG_NAME_ATT_Q);
+            if (StringUtils.isEmpty(name)) {
+                throw new InvalidAgentConfigException("Sampling artifact must have a name.");
+            }
+            artifactSampleRates.put(name, parseSampleRate(artifact.getAttributeValue(CONFIG_RATE_ATT_Q)));
+        }
+    }
+
+    private void readTransactionBuffer(OMElement transactionBufferElement) {
+        transactionBufferEnabled = true;
+
+        String maxBytes = transactionBufferElement.getAttributeValue(CONFIG_MAX_BYTES_ATT_Q);
+        if (StringUtils.isNotEmpty(maxBytes)) {
+            transactionBufferMaxBytes = parsePositiveLong(maxBytes, CONFIG_MAX_BYTES_ATT_NAME);
+        }
+
+        String policy = transactionBufferElement.getAttributeValue(CONFIG_OVERFLOW_POLICY_ATT_Q);
+        if (StringUtils.isNotEmpty(policy)) {
+            overflowPolicy = OverflowPolicy.getPolicy(policy);
+            if (overflowPolicy == null) {
+                throw new InvalidAgentConfigException("Invalid transactionBuffer overflowPolicy: " + policy);
+            }
+        }
+
+        String blockTimeout = transactionBufferElement.getAttributeValue(CONFIG_BLOCK_TIMEOUT_ATT_Q);
+        if (StringUtils.isNotEmpty(blockTimeout)) {
+            blockTimeoutMillis = parsePositiveLong(blockTimeout, CONFIG_BLOCK_TIMEOUT_ATT_NAME);
+        }
+
+        String inFlight = transactionBufferElement.getAttributeValue(CONFIG_MAX_IN_FLIGHT_ATT_Q);
+        if (StringUtils.isNotEmpty(inFlight)) {
+            maxInFlight = parsePositiveInt(inFlight, CONFIG_MAX_IN_FLIGHT_ATT_NAME);
+        }
+
+        spill = Boolean.parseBoolean(transactionBufferElement.getAttributeValue(CONFIG_SPILL_ATT_Q));
+
+        String directory = transactionBufferElement.getAttributeValue(CONFIG_SPILL_DIRECTORY_ATT_Q);
+        if (StringUtils.isNotEmpty(directory)) {
+            spillDirectory = directory;
+        }
+
+        String maxSpill = transactionBufferElement.getAttributeValue(CONFIG_MAX_SPILL_BYTES_ATT_Q);
+        if (StringUtils.isNotEmpty(maxSpill)) {
+            maxSpillBytes = parsePositiveLong(maxSpill, CONFIG_MAX_SPILL_BYTES_ATT_NAME);
+        }
+    }
+
+    private void readTransactionLimits(OMElement transactionLimitsElement) {
+        int fieldMaxBytes = 0;
+        String fieldMax = transactionLimitsElement.getAttributeValue(CONFIG_FIELD_MAX_BYTES_ATT_Q);
+        if (StringUtils.isNotEmpty(fieldMax)) {
+            fieldMaxBytes = parsePositiveInt(fieldMax, CONFIG_FIELD_MAX_BYTES_ATT_NAME);
+        }
+
+        long maxBytes = 0;
+        String max = transactionLimitsElement.getAttributeValue(CONFIG_MAX_BYTES_ATT_Q);
+        if (StringUtils.isNotEmpty(max)) {
+            maxBytes = parsePositiveLong(max, CONFIG_MAX_BYTES_ATT_NAME);
+        }
+        transactionBudget = new TransactionBudget(fieldMaxBytes, maxBytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readSinks(OMElement sinksElement) {
+        Iterator<OMElement> sinks = sinksElement.getChildrenWithName(CONFIG_SINK_Q);
+        while (sinks.hasNext()) {
+            OMElement sink = sinks.next();
+            String name = sink.getAttributeValue(CONFIG_NAME_ATT_Q);
+            String type = sink.getAttributeValue(CONFIG_TYPE_ATT_Q);
+            if (StringUtils.isEmpty(name) || StringUtils.isEmpty(type)) {
+                throw new InvalidAgentConfigException("Sink must have a name and a type.");
+            }
+            Map<String, String> properties = new LinkedHashMap<String, String>();
+            Iterator<OMAttribute> attributes = sink.getAllAttributes();
+            while (attributes.hasNext()) {
+                OMAttribute attribute = attributes.next();
+                properties.put(attribute.getLocalName(), attribute.getAttributeValue());
+            }
+            sinkDefinitions.add(new SinkDefinition(name, type, properties));
+        }
+
+        String defaultSink = sinksElement.getAttributeValue(CONFIG_DEFAULT_ATT_Q);
+        if (StringUtils.isNotEmpty(defaultSink)) {
+            defaultSinkName = defaultSink;
+        }
+
+        Iterator<OMElement> artifacts = sinksElement.getChildrenWithName(CONFIG_ARTIFACT_Q);
+        while (artifacts.hasNext()) {
+            OMElement artifact = artifacts.next();
+            String name = artifact.getAttributeValue(CONFIG_NAME_ATT_Q);
+            String sinkName = artifact.getAttributeValue(CONFIG_SINK_ATT_Q);
+            if (StringUtils.isEmpty(name) || StringUtils.isEmpty(sinkName)) {
+                throw new InvalidAgentConfigException("Sink artifact must have a name and a sink.");
+            }
+            artifactSinkNames.put(name, sinkName);
+        }
+    }
+
+    private void readHotReload(OMElement hotReloadElement) {
+        hotReload = Boolean.parseBoolean(hotReloadElement.getAttributeValue(CONFIG_ENABLED_ATT_Q));
+
+        String debounce = hotReloadElement.getAttributeValue(CONFIG_DEBOUNCE_ATT_Q);
+        if (StringUtils.isNotEmpty(debounce)) {
+            hotReloadDebounceMillis = parsePositiveLong(debounce, CONFIG_DEBOUNCE_ATT_NAME);
+        }
+    }
+
+    /**
+     * Parses a sample rate.
+     *
+     * @param value rate from 0.0 to 1.0
+     * @return parsed rate
+     */
+    public static double parseSampleRate(String value) {
+        try {
+            double result = Double.parseDouble(StringUtils.trimToEmpty(value));
+            if (result >= 0.0 && result <= 1.0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new InvalidAgentConfigException("Sample rate must be between 0.0 and 1.0: " + value);
+    }
+
+    /**
+     * Parses a positive integer attribute.
+     *
+     * @param value attribute value
+     * @param attributeName name of the attribute, used in the error message
+     * @return parsed value
+     * @throws InvalidAgentConfigException if the value is not a positive integer
+     */
+    public static int parsePositiveInt(String value, String attributeName) {
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new InvalidAgentConfigException("Attribute " + attributeName + " must be a positive integer: " + value);
+    }
+
+    private static long parsePositiveLong(String value, String attributeName) {
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new InvalidAgentConfigException("Attribute " + attributeName + " must be a positive integer: " + value);
+    }
+
+    /**
+     * Creates the logger for the ESB log lines of the mediators.
+     *
+     * @return ESB logger
+     */
+    public EsbLogger createEsbLogger() {
+        if (esbLogFormat == EsbLogFormat.PLAIN && !esbLogAsync) {
+            return EsbLogger.getDefault();
+        }
+        return new EsbLogger(esbLogFormat, esbLogAsync ? new AsyncEsbLogAppender(esbLogQueueSize) : null);
+    }
+
+    /**
+     * Starts the worker pool of the asynchronous ainoLog mediators.
+     *
+     * @return started worker pool, or the one already running
+     */
+    public AsyncMediationExecutor startAsyncMediationExecutor() {
+        return AsyncMediationExecutor.start(asyncWorkerCount, asyncQueueSize);
+    }
+
+    /**
+     * Returns the sample rate of the ainoLog mediators of an artifact.
+     *
+     * @param artifactName name of the proxy service, API, sequence, ...
+     * @return sample rate of the artifact, or the default sample rate
+     */
+    public double getSampleRate(String artifactName) {
+        Double rate = artifactName == null ? null : artifactSampleRates.get(artifactName);
+        return rate == null ? sampleRate : rate;
+    }
+
+    /**
+     * Creates the buffer between the mediators and the agent.
+     *
+     * @return transaction buffer, or null if transactions are handed to the agent directly
+     */
+    public TransactionBuffer createTransactionBuffer() {
+        if (!transactionBufferEnabled) {
+            return null;
+        }
+        TransactionBuffer buffer = new TransactionBuffer(transactionBufferMaxBytes, overflowPolicy, blockTimeoutMillis);
+        buffer.setSendWindow(maxInFlight, sendIntervalMillis);
+        if (spill) {
+            try {
+                buffer.setSpillQueue(SpillQueue.open(new File(spillDirectory), SPILL_SEGMENT_BYTES, maxSpillBytes));
+            } catch (IOException e) {
+                throw new InvalidAgentConfigException("Unable to open the transaction spill directory " + spillDirectory, e);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Creates and initializes the configured transaction sinks.
+     *
+     * @param agent aino agent handed to the sinks
+     * @return transaction sinks, empty if the config has no sinks element
+     */
+    public TransactionSinks createTransactionSinks(Agent agent) {
+        TransactionSinks sinks = new TransactionSinks();
+        try {
+            for (SinkDefinition definition : sinkDefinitions) {
+                TransactionSink sink = TransactionSinks.newSink(definition.type);
+                sink.init(definition.properties, agent);
+                sinks.addSink(definition.name, sink);
+            }
+            if (defaultSinkName != null) {
+                sinks.setDefaultSink(defaultSinkName);
+            }
+            for (Map.Entry<String, String> route : artifactSinkNames.entrySet()) {
+                sinks.routeArtifact(route.getKey(), route.getValue());
+            }
+        } catch (InvalidAgentConfigException e) {
+            sinks.close();
+            throw e;
+        }
+        return sinks;
+    }
+
+    public boolean isXPathCacheEnabled() {
+        return xpathCacheEnabled;
+    }
+
+    public int getAsyncWorkerCount() {
+        return asyncWorkerCount;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public EsbLogFormat getEsbLogFormat() {
+        return esbLogFormat;
+    }
+
+    public boolean isEsbLogAsync() {
+        return esbLogAsync;
+    }
+
+    public int getEsbLogQueueSize() {
+        return esbLogQueueSize;
+    }
+
+    public boolean isTransactionBufferEnabled() {
+        return transactionBufferEnabled;
+    }
+
+    public long getTransactionBufferMaxBytes() {
+        return transactionBufferMaxBytes;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getBlockTimeoutMillis() {
+        return blockTimeoutMillis;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getSendIntervalMillis() {
+        return sendIntervalMillis;
+    }
+
+    public boolean isSpill() {
+        return spill;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    public TransactionBudget getTransactionBudget() {
+        return transactionBudget;
+    }
+
+    public boolean isHotReload() {
+        return hotReload;
+    }
+
+    public long getHotReloadDebounceMillis() {
+        return hotReloadDebounceMillis;
+    }
+
+    private static class SinkDefinition {
+        private final String name;
+        private final String type;
+        private final Map<String, String> properties;
+
+        SinkDefinition(String name, String type, Map<String, String> properties) {
+            this.name = name;
+            this.type = type;
+            this.properties = properties;
+        }
+    }
+}
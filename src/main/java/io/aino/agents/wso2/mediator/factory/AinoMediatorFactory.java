@@ -19,16 +19,25 @@ package io.aino.agents.wso2.mediator.factory;
 import java.io.*;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.transform.Source;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
@@ -40,8 +49,21 @@ import io.aino.agents.core.config.InputStreamConfigBuilder;
 
 import io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.Deprecated;
 import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.buffer.TransactionBuffer;
+import io.aino.agents.wso2.mediator.config.ConfigFileWatcher;
+import io.aino.agents.wso2.mediator.config.KeyRegistry;
+import io.aino.agents.wso2.mediator.config.MediatorConfig;
+import io.aino.agents.wso2.mediator.log.EsbLogger;
+import io.aino.agents.wso2.mediator.plan.ExecutionPlan;
+import io.aino.agents.wso2.mediator.sink.AgentSink;
+import io.aino.agents.wso2.mediator.sink.TransactionSink;
+import io.aino.agents.wso2.mediator.sink.TransactionSinks;
+import io.aino.agents.wso2.mediator.util.AsyncMediationExecutor;
 import io.aino.agents.wso2.mediator.util.Enum;
+import io.aino.agents.wso2.mediator.util.Id;
 import io.aino.agents.wso2.mediator.util.MediatorLocation;
+import io.aino.agents.wso2.mediator.util.PayloadDigest;
+import io.aino.agents.wso2.mediator.util.XPathResultCache;
 import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.*;
 
 import org.apache.axiom.attachments.utils.IOUtils;
@@ -61,6 +83,7 @@ import org.apache.synapse.config.xml.SynapseXPathFactory;
 import org.jaxen.JaxenException;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 /**
  * Mediator factory for creating aino.io WSO2 ESB mediator from XML configurations.
@@ -68,12 +91,22 @@ import org.xml.sax.SAXException;
 public class AinoMediatorFactory extends AbstractMediatorFactory {
     private static final Log log = LogFactory.getLog(AinoMediatorFactory.class);
 
+    private static final String AINO_LOG_SCHEMA_PATH = "/schemas/ainoLog.xsd";
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
     private static final String HOSTNAME_XPATH_STRING = "/axisconfig/parameter[@name = 'SynapseConfig.ServerName']/text()";
 
     private String esbServerName;
+    private MediatorConfig mediatorConfig;
     private final static Lock ainoInitLock = new ReentrantLock();
 
-    private static Agent ainoAgent;
+    private static volatile Agent ainoAgent;
+    private static volatile EsbLogger esbLogger;
+    private static volatile TransactionBuffer transactionBuffer;
+    private static volatile TransactionSinks transactionSinks;
+    private static Thread shutdownHook;
+    private static final Set<AinoMediator> mediators =
+            Collections.newSetFromMap(new WeakHashMap<AinoMediator, Boolean>());
+    private static ConfigFileWatcher configWatcher;
 
     /**
      * This no-args constructor can be called only when the CARBON_HOME
@@ -87,10 +120,21 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
         
         this(new FileInputStream(new File(AINO_CONFIG_FILE_PATH)),
                 new FileInputStream(new File(AXIS2_CONFIG_FILE_PATH)));
+
+        if (mediatorConfig.isHotReload()) {
+            watchAinoConfig(new File(AINO_CONFIG_FILE_PATH), mediatorConfig.getHotReloadDebounceMillis());
+        }
     }
 
     public void clearAinoLogger() {
-        ainoAgent = null;
+        stopConfigWatcher();
+        ainoInitLock.lock();
+        try {
+            ainoAgent = null;
+            shutdownSharedResources();
+        } finally {
+            ainoInitLock.unlock();
+        }
     }
 
     /**
@@ -108,6 +152,10 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
 
             initializeAinoAgent(confStream);
 
+            confStream.reset();
+            mediatorConfig = MediatorConfig.parse(confStream);
+            initializeSharedResources(mediatorConfig);
+
         } catch (OMException e) {
             StringBuilder sb = new StringBuilder("Unable to read the aino config file. ");
             sb.append("The file either contains disallowed characters (&|<) that need to be escaped (&amp; and &lt; respectively) or is not well-formed.");
@@ -127,6 +175,115 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
         return esbServerName;
     }
 
+    /**
+     * Returns the mediator settings read from the aino config file.
+     */
+    public MediatorConfig getMediatorConfig() {
+        return mediatorConfig;
+    }
+
+    /**
+     * Returns the transaction sinks configured in the aino config file, shared by all mediators of the node.
+     */
+    public TransactionSinks getTransactionSinks() {
+        return transactionSinks;
+    }
+
+    private void watchAinoConfig(File configFile, long debounceMillis) {
+        synchronized (AinoMediatorFactory.class) {
+            if (configWatcher != null) {
+                return;
+            }
+            try {
+                configWatcher = new ConfigFileWatcher(configFile, debounceMillis, new ConfigFileWatcher.Listener() {
+                    @Override
+                    public void configChanged(byte[] content) {
+                        reloadAinoConfig(new ByteArrayInputStream(content));
+                    }
+                });
+                configWatcher.start();
+                log.info("Watching " + configFile + " for changes.");
+            } catch (IOException e) {
+                configWatcher = null;
+                log.error("Unable to watch " + configFile + ", changes require an ESB restart.", e);
+            }
+        }
+    }
+
+    /**
+     * Builds a new agent from the aino config and switches all mediators to it.
+     *
+     * The mediators are first validated and compiled against the new agent. If any of them refers to a key
+     * missing from the new config, nothing is switched. The shared buffer and sinks are kept. Mediation calls
+     * already running and buffered transactions complete with the previous agent. It gets no new transactions
+     * and keeps sending its own queue.
+     * Only the agent settings are reloaded, the mediator specific settings of the file require a restart.
+     *
+     * @param configFileInputStream aino.io config file as InputStream
+     * @throws InvalidAgentConfigException if the config is invalid
+     */
+    public void reloadAinoConfig(InputStream configFileInputStream) {
+        Agent newAgent;
+        try {
+            newAgent = Agent.getFactory().setConfigurationBuilder(new InputStreamConfigBuilder(configFileInputStream)).build();
+        } finally {
+            closeStreamQuietly(configFileInputStream);
+        }
+        if (newAgent.isEnabled() && !newAgent.applicationExists("esb")) {
+            throw new InvalidAgentConfigException("application with key 'esb' must be configured.");
+        }
+        KeyRegistry.registerUnknownKeys(newAgent);
+
+        ainoInitLock.lock();
+        try {
+            List<AinoMediator> liveMediators;
+            synchronized (mediators) {
+                liveMediators = new ArrayList<AinoMediator>(mediators);
+            }
+
+            Map<AinoMediator, ExecutionPlan> plans = new IdentityHashMap<AinoMediator, ExecutionPlan>();
+            for (AinoMediator mediator : liveMediators) {
+                validateKeys(mediator, newAgent);
+                plans.put(mediator, ExecutionPlan.compile(mediator, newAgent));
+            }
+
+            ainoAgent = newAgent;
+            for (AinoMediator mediator : liveMediators) {
+                mediator.switchAgent(plans.get(mediator));
+            }
+            if (transactionBuffer != null) {
+                transactionBuffer.setAgent(newAgent);
+            }
+            log.info("Reloaded the aino config, " + liveMediators.size() + " mediators switched to the new configuration.");
+        } finally {
+            ainoInitLock.unlock();
+        }
+    }
+
+    private static void validateKeys(AinoMediator mediator, Agent agent) {
+        String missing = null;
+        if (mediator.getOperation() != null && !agent.operationExists(mediator.getOperation())) {
+            missing = "operation " + mediator.getOperation();
+        } else if (mediator.getPayloadType() != null && !agent.payloadTypeExists(mediator.getPayloadType())) {
+            missing = "payload type " + mediator.getPayloadType();
+        } else if (mediator.getFromApplication() != null && !agent.applicationExists(mediator.getFromApplication())) {
+            missing = "application " + mediator.getFromApplication();
+        } else if (mediator.getToApplication() != null && !agent.applicationExists(mediator.getToApplication())) {
+            missing = "application " + mediator.getToApplication();
+        } else {
+            for (Id id : mediator.getIdList()) {
+                if (!agent.getAgentConfig().getIdTypes().entryExists(id.getTypeKey())) {
+                    missing = "id type " + id.getTypeKey();
+                    break;
+                }
+            }
+        }
+        if (missing != null) {
+            throw new InvalidAgentConfigException("The new aino config does not have " + missing
+                    + " used by the mediator at " + mediator.getMediatorLocation());
+        }
+    }
+
     private boolean closeStreamQuietly(InputStream stream){
         if(null == stream){
             return true;
@@ -140,6 +297,79 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
         }
     }
 
+    /**
+     * Creates the resources shared by all mediators of the node.
+     * Synapse instantiates the factory for every ainoLog element, so only the first factory creates them.
+     */
+    private static void initializeSharedResources(MediatorConfig config) {
+        ainoInitLock.lock();
+        try {
+            config.startAsyncMediationExecutor();
+            XPathResultCache.setEnabled(config.isXPathCacheEnabled());
+            if (esbLogger == null) {
+                esbLogger = config.createEsbLogger();
+            }
+            if (transactionBuffer == null && config.isTransactionBufferEnabled()) {
+                TransactionBuffer buffer = config.createTransactionBuffer();
+                buffer.start(ainoAgent);
+                buffer.registerMBean();
+                transactionBuffer = buffer;
+            }
+            if (transactionSinks == null) {
+                transactionSinks = config.createTransactionSinks(ainoAgent);
+            }
+            if (shutdownHook == null) {
+                shutdownHook = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopConfigWatcher();
+                        shutdownSharedResources();
+                    }
+                }, "aino-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+        } finally {
+            ainoInitLock.unlock();
+        }
+    }
+
+    /**
+     * Stops watching the aino config file. Called without holding ainoInitLock,
+     * since a reload in progress holds the watcher while it takes the lock.
+     */
+    private static void stopConfigWatcher() {
+        ConfigFileWatcher watcher;
+        synchronized (AinoMediatorFactory.class) {
+            watcher = configWatcher;
+            configWatcher = null;
+        }
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    private static void shutdownSharedResources() {
+        try {
+            // The asynchronous mediations still queued add their transactions to the buffer and log lines.
+            AsyncMediationExecutor.getInstance().shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+            if (transactionBuffer != null) {
+                transactionBuffer.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+            }
+            if (transactionSinks != null) {
+                transactionSinks.close();
+            }
+            if (esbLogger != null) {
+                esbLogger.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            transactionBuffer = null;
+            transactionSinks = null;
+            esbLogger = null;
+        }
+    }
+
     private void initializeAinoAgent(ByteArrayInputStream confStream) {
         if(ainoInitLock.tryLock()) {
             try {
@@ -149,6 +379,7 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
                 if(ainoAgent.isEnabled() && !ainoAgent.applicationExists("esb")) {
                     throw new InvalidAgentConfigException("application with key 'esb' must be configured.");
                 }
+                KeyRegistry.registerUnknownKeys(ainoAgent);
             } finally {
                 ainoInitLock.unlock();
             }
@@ -172,6 +403,9 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
         AinoMediator mediator = new AinoMediator(MediatorLocation.getMediatorLocation(element), ainoAgent);
 
         mediator.setSeparator(element.getAttributeValue(ATT_SEPARATOR_Q));
+        mediator.setAsync(Boolean.parseBoolean(element.getAttributeValue(ATT_ASYNC_Q)));
+        setMediatorSampleRate(element, mediator);
+        setMediatorPayloadDigest(element, mediator);
 
         // required elements
         setMediatorStatus(element, mediator);
@@ -185,12 +419,44 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
         setMediatorPayloadType(element, mediator);
 
         mediator.setEsbServerName(esbServerName);
+        mediator.setEsbLogger(esbLogger);
+        mediator.setTransactionBudget(mediatorConfig.getTransactionBudget());
+        mediator.setTransactionBuffer(transactionBuffer);
+        TransactionSink sink = transactionSinks.getSink(mediator.getMediatorLocation().getArtifactName());
+        // The agent sink is the buffer or the agent of the mediator, which follow a reloaded agent.
+        mediator.setTransactionSink(sink instanceof AgentSink ? null : sink);
 
         mediator.setProperties(MediatorPropertyFactory.getMediatorProperties(element));
 
+        mediator.compileExecutionPlan();
+
+        synchronized (mediators) {
+            mediators.add(mediator);
+        }
         return mediator;
     }
 
+    private void setMediatorPayloadDigest(OMElement element, AinoMediator mediator) {
+        String digest = element.getAttributeValue(ATT_PAYLOAD_DIGEST_Q);
+        if (StringUtils.isEmpty(digest)) {
+            return;
+        }
+
+        PayloadDigest payloadDigest = PayloadDigest.getDigest(digest);
+        if (payloadDigest == null) {
+            throw new InvalidAgentConfigException("Invalid payloadDigest: " + digest);
+        }
+        mediator.setPayloadDigest(payloadDigest);
+    }
+
+    private void setMediatorSampleRate(OMElement element, AinoMediator mediator) {
+        String sampleRate = element.getAttributeValue(ATT_SAMPLE_RATE_Q);
+        if (StringUtils.isNotEmpty(sampleRate)) {
+            mediator.setSampleRate(MediatorConfig.parseSampleRate(sampleRate));
+        }
+        mediator.setArtifactSampleRate(mediatorConfig.getSampleRate(mediator.getMediatorLocation().getArtifactName()));
+    }
+
     private void setMediatorPayloadType(OMElement element, AinoMediator mediator) {
         OMElement payloadTypeElement = element.getFirstChildWithName(PAYLOAD_Q);
         if (payloadTypeElement != null) {
@@ -295,8 +561,13 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
                 throw new InvalidAgentConfigException(sb.toString());
             }
 
+            String maxCount = idsElement.getAttributeValue(ATT_MAX_COUNT_Q);
+            String maxBytes = idsElement.getAttributeValue(ATT_MAX_BYTES_Q);
             try {
-                mediator.addId(typeKey, SynapseXPathFactory.getSynapseXPath(idsElement, ATT_EXPRN));
+                mediator.addId(new Id(typeKey, SynapseXPathFactory.getSynapseXPath(idsElement, ATT_EXPRN),
+                        StringUtils.isEmpty(maxCount) ? 0 : MediatorConfig.parsePositiveInt(maxCount, MAX_COUNT_ATT_NAME),
+                        StringUtils.isEmpty(maxBytes) ? 0 : MediatorConfig.parsePositiveInt(maxBytes, MAX_BYTES_ATT_NAME),
+                        Boolean.parseBoolean(idsElement.getAttributeValue(ATT_DISTINCT_Q))));
             } catch (JaxenException e) {
                 StringBuilder sb = new StringBuilder("An invalid xPath expression has been given to a AinoMediator ");
                 sb.append(IDS_Q).append(" element");
@@ -398,23 +669,93 @@ public class AinoMediatorFactory extends AbstractMediatorFactory {
     }
 
     private void validateMediatorConfig(OMElement element) throws SAXException, IOException {
-        validateXml(element, "/schemas/ainoLog.xsd");
+        validateXml(element);
     }
 
-    private void validateXml(OMElement element, String schemaPath) throws SAXException, IOException {
-        OMFactory doomFactory = DOOMAbstractFactory.getOMFactory();
+    /**
+     * Validates the element against the cached schema with a validator of its own, as validators are not thread safe.
+     * The element is streamed to the validator, unless the schema implementation does not accept StAXSource.
+     */
+    private void validateXml(OMElement element) throws SAXException, IOException {
+        Validator validator = AinoLogSchema.SCHEMA.newValidator();
+        try {
+            validator.validate(new StAXSource(new ElementStreamReader(element.getXMLStreamReader())));
+            return;
+        } catch (SAXException e) {
+            throw unwrapParseException(e);
+        } catch (IllegalArgumentException e) {
+            log.debug("Schema validator does not accept StAXSource, validating a DOM copy instead.", e);
+        }
+        validator.reset();
+        validator.validate(new DOMSource(toDom(element)));
+    }
+
+    /**
+     * The StAX to SAX bridge wraps the schema violation in transformer and stream exceptions.
+     */
+    private static SAXException unwrapParseException(SAXException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SAXParseException) {
+                return (SAXParseException) cause;
+            }
+        }
+        return e;
+    }
 
+    private static Element toDom(OMElement element) {
+        OMFactory doomFactory = DOOMAbstractFactory.getOMFactory();
         StAXOMBuilder doomBuilder = new StAXOMBuilder(doomFactory, element.getXMLStreamReader());
+        return (Element) doomBuilder.getDocumentElement();
+    }
 
-        Element domElement = (Element) doomBuilder.getDocumentElement();
+    /**
+     * The stream reader of an element fails when asked for the document encoding,
+     * which the StAX to SAX bridge of the validator does at the start of the document.
+     */
+    private static final class ElementStreamReader extends StreamReaderDelegate {
+        ElementStreamReader(XMLStreamReader reader) {
+            super(reader);
+        }
 
-        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        Source source = new StreamSource(this.getClass().getResourceAsStream(schemaPath));
+        @Override
+        public String getEncoding() {
+            return null;
+        }
 
-        Schema schema = factory.newSchema(source);
+        @Override
+        public String getCharacterEncodingScheme() {
+            return null;
+        }
+
+        @Override
+        public String getVersion() {
+            return null;
+        }
+    }
+
+    /**
+     * Holds the compiled ainoLog schema. The schema is compiled once, when the first element is validated,
+     * and is thread safe.
+     */
+    private static final class AinoLogSchema {
+        private static final Schema SCHEMA = compile();
 
-        Validator validator = schema.newValidator();
-        validator.validate(new DOMSource(domElement));
+        private static Schema compile() {
+            InputStream schemaStream = AinoMediatorFactory.class.getResourceAsStream(AINO_LOG_SCHEMA_PATH);
+            try {
+                return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(schemaStream));
+            } catch (SAXException e) {
+                throw new InvalidAgentConfigException("Failed to compile " + AINO_LOG_SCHEMA_PATH, e);
+            } finally {
+                if (schemaStream != null) {
+                    try {
+                        schemaStream.close();
+                    } catch (IOException e) {
+                        // ignored
+                    }
+                }
+            }
+        }
     }
 
     private static String getHostName(InputStream axis2ConfigInputStream) {
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Writes ESB log lines on a background thread.
+ * When the queue is full, or the appender has been shut down, lines are written on
+ * the calling thread, so lines are never dropped.
+ *
+ * One appender is shared by all mediators of the node. It is stopped with {@link #shutdown(long)}
+ * when the mediators are unloaded.
+ */
+public class AsyncEsbLogAppender {
+
+    private static final long FLUSH_POLL_MILLIS = 10;
+
+    // Queued by shutdown to wake the background thread, an interrupt could abort a write in progress.
+    private static final Entry STOP = new Entry(null, null);
+
+    private final BlockingQueue<Entry> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor. Starts the background thread.
+     *
+     * @param queueSize maximum number of lines waiting to be written
+     */
+    public AsyncEsbLogAppender(int queueSize) {
+        this.queue = new ArrayBlockingQueue<Entry>(queueSize);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLines();
+            }
+        }, "aino-esb-log-appender");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues the line to be written to the log at INFO level.
+     *
+     * @param log log to write to
+     * @param line line to write
+     */
+    public void append(Log log, String line) {
+        if (!running || !queue.offer(new Entry(log, line))) {
+            log.info(line);
+        }
+    }
+
+    /**
+     * Returns the number of lines waiting to be written.
+     *
+     * @return queue size
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Waits until the lines queued so far have been written.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if the queue was emptied in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!queue.isEmpty() && worker.isAlive()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(FLUSH_POLL_MILLIS);
+        }
+        return queue.isEmpty();
+    }
+
+    /**
+     * Stops the background thread after writing the queued lines.
+     * Lines appended after this are written on the calling thread, and lines queued
+     * while shutting down are written by the thread calling this method.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        running = false;
+        queue.offer(STOP, timeoutMillis, TimeUnit.MILLISECONDS);
+        worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+        writeQueuedLines();
+    }
+
+    private void writeLines() {
+        try {
+            Entry entry;
+            while ((entry = queue.take()) != STOP) {
+                entry.write();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeQueuedLines();
+    }
+
+    private void writeQueuedLines() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            if (entry != STOP) {
+                entry.write();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Log log;
+        private final String line;
+
+        private Entry(Log log, String line) {
+            this.log = log;
+            this.line = line;
+        }
+
+        private void write() {
+            log.info(line);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Formats of the ESB log line written for each transaction.
+ */
+public enum EsbLogFormat {
+    /**
+     * name = value pairs separated by the separator of the mediator.
+     */
+    PLAIN("plain"),
+    /**
+     * name="value" pairs separated by spaces.
+     */
+    KEY_VALUE("keyValue"),
+    /**
+     * One JSON object per line.
+     */
+    JSON("json");
+
+    private static final Map<String, EsbLogFormat> formats;
+
+    static {
+        formats = new HashMap<String, EsbLogFormat>();
+
+        for (EsbLogFormat format : EsbLogFormat.values()) {
+            formats.put(format.formatString, format);
+        }
+    }
+
+    /**
+     * Gets Enum member based on string representation.
+     *
+     * @param formatString format string
+     * @return Enum member corresponding to formatString, or null
+     */
+    public static EsbLogFormat getFormat(String formatString) {
+        return formats.get(formatString);
+    }
+
+    private final String formatString;
+
+    EsbLogFormat(String formatString) {
+        this.formatString = formatString;
+    }
+
+    @Override
+    public String toString() {
+        return formatString;
+    }
+}
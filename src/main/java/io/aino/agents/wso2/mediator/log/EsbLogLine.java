@@ -0,0 +1,232 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.log;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builder of a single ESB log line.
+ *
+ * Each thread reuses one line and its buffer, so formatting a line allocates
+ * nothing but the final String. A line must be finished before the thread starts the next one.
+ */
+public final class EsbLogLine {
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<EsbLogLine> LINES = new ThreadLocal<EsbLogLine>() {
+        @Override
+        protected EsbLogLine initialValue() {
+            return new EsbLogLine();
+        }
+    };
+
+    private StringBuilder sb = new StringBuilder(INITIAL_CAPACITY);
+    private EsbLogFormat format;
+    private String separator;
+    private boolean empty;
+
+    private EsbLogLine() {
+    }
+
+    /**
+     * Starts a new line on the current thread.
+     *
+     * @param format format of the line
+     * @param separator separator between fields in {@link EsbLogFormat#PLAIN} format
+     * @return empty line
+     */
+    public static EsbLogLine start(EsbLogFormat format, String separator) {
+        EsbLogLine line = LINES.get();
+        line.format = format;
+        line.separator = separator;
+        line.empty = true;
+        line.sb.setLength(0);
+        if (format == EsbLogFormat.JSON) {
+            line.sb.append('{');
+        }
+        return line;
+    }
+
+    /**
+     * Appends a field.
+     *
+     * @param name name of the field
+     * @param value value of the field, may be null
+     * @return this line
+     */
+    public EsbLogLine field(String name, String value) {
+        switch (format) {
+            case JSON:
+                nextJsonMember();
+                appendQuoted(name);
+                sb.append(':');
+                appendQuoted(value);
+                break;
+            case KEY_VALUE:
+                nextKeyValuePair();
+                sb.append(name).append('=');
+                appendQuoted(value);
+                break;
+            default:
+                sb.append(name).append(" = ").append(value).append(separator);
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Appends the ids of a transaction.
+     *
+     * @param ids ids by id type key
+     * @return this line
+     */
+    public EsbLogLine ids(Map<String, List<String>> ids) {
+        switch (format) {
+            case JSON:
+                nextJsonMember();
+                sb.append("\"ids\":{");
+                boolean firstType = true;
+                for (Map.Entry<String, List<String>> entry : ids.entrySet()) {
+                    if (!firstType) {
+                        sb.append(',');
+                    }
+                    firstType = false;
+                    appendQuoted(entry.getKey());
+                    sb.append(":[");
+                    appendJoined(entry.getValue(), true);
+                    sb.append(']');
+                }
+                sb.append('}');
+                break;
+            case KEY_VALUE:
+                for (Map.Entry<String, List<String>> entry : ids.entrySet()) {
+                    nextKeyValuePair();
+                    sb.append("ids.").append(entry.getKey()).append("=\"");
+                    appendJoined(entry.getValue(), false);
+                    sb.append('"');
+                }
+                break;
+            default:
+                sb.append("ids = [");
+                for (Map.Entry<String, List<String>> entry : ids.entrySet()) {
+                    sb.append(entry.getKey()).append(": [");
+                    appendJoined(entry.getValue(), false);
+                    sb.append("],");
+                }
+                sb.append("]");
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Finishes the line. The buffer of the line is reused by the next line of the thread.
+     *
+     * @return the formatted line
+     */
+    public String finish() {
+        if (format == EsbLogFormat.JSON) {
+            sb.append('}');
+        }
+        String result = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            sb = new StringBuilder(INITIAL_CAPACITY);
+        }
+        return result;
+    }
+
+    private void nextJsonMember() {
+        if (!empty) {
+            sb.append(',');
+        }
+        empty = false;
+    }
+
+    private void nextKeyValuePair() {
+        if (!empty) {
+            sb.append(' ');
+        }
+        empty = false;
+    }
+
+    private void appendJoined(List<String> values, boolean json) {
+        if (values == null) {
+            return;
+        }
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (json) {
+                appendQuoted(values.get(i));
+            } else if (format == EsbLogFormat.KEY_VALUE) {
+                appendEscaped(values.get(i));
+            } else {
+                sb.append(values.get(i));
+            }
+        }
+    }
+
+    private void appendQuoted(String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        appendEscaped(value);
+        sb.append('"');
+    }
+
+    private void appendEscaped(String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00");
+                        sb.append(Character.forDigit(c >> 4, 16));
+                        sb.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+}
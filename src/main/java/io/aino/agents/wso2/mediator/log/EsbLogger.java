@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.log;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Writes the ESB log lines of {@link io.aino.agents.wso2.mediator.AinoMediator}s.
+ *
+ * Callers check {@link #isEnabled(Log)} before collecting any values, so nothing is
+ * formatted when INFO level is off for the mediator.
+ */
+public class EsbLogger {
+
+    private static final EsbLogger DEFAULT = new EsbLogger(EsbLogFormat.PLAIN, null);
+
+    private final EsbLogFormat format;
+    private final AsyncEsbLogAppender appender;
+
+    /**
+     * Constructor.
+     *
+     * @param format format of the lines
+     * @param appender appender writing the lines in background, null to write them on the calling thread
+     */
+    public EsbLogger(EsbLogFormat format, AsyncEsbLogAppender appender) {
+        this.format = format;
+        this.appender = appender;
+    }
+
+    /**
+     * Returns the logger writing plain lines on the calling thread.
+     *
+     * @return default logger
+     */
+    public static EsbLogger getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the format of the lines.
+     *
+     * @return format
+     */
+    public EsbLogFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Tells whether the lines would be written to the log.
+     *
+     * @param log log of the mediator
+     * @return true if INFO level is enabled
+     */
+    public boolean isEnabled(Log log) {
+        return log.isInfoEnabled();
+    }
+
+    /**
+     * Starts a new line on the current thread.
+     *
+     * @param separator separator between fields in {@link EsbLogFormat#PLAIN} format
+     * @return empty line
+     */
+    public EsbLogLine startLine(String separator) {
+        return EsbLogLine.start(format, separator);
+    }
+
+    /**
+     * Waits until the lines written so far have reached the log.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if all lines were written in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        return appender == null || appender.flush(timeoutMillis);
+    }
+
+    /**
+     * Stops the background appender after writing the queued lines.
+     * Lines written after this go to the log on the calling thread.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        if (appender != null) {
+            appender.shutdown(timeoutMillis);
+        }
+    }
+
+    /**
+     * Finishes the line and writes it to the log.
+     *
+     * @param log log of the mediator
+     * @param line line to write
+     */
+    public void write(Log log, EsbLogLine line) {
+        String message = line.finish();
+        if (appender != null) {
+            appender.append(log, message);
+        } else {
+            log.info(message);
+        }
+    }
+}
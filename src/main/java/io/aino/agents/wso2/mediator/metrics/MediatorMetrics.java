@@ -0,0 +1,258 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanConstructorInfo;
+
+/**
+ * Throughput and latency of one ainoLog mediator, exposed over JMX.
+ *
+ * Attributes are InvocationCount, ErrorCount, UnknownFallbackCount, TruncatedFieldCount and
+ * TransactionBudgetHitCount, and for every
+ * {@link Phase} its count and p50, p99 and p999 latencies in nanoseconds,
+ * e.g. IdExtractionP99Nanos. All recording methods are lock-free.
+ * The histogram of a phase is allocated when the phase is first recorded, so a mediator only
+ * holds histograms of the phases it runs.
+ */
+public final class MediatorMetrics implements DynamicMBean {
+
+    /**
+     * Measured phases of the mediation.
+     */
+    public enum Phase {
+        /** Whole mediate() call on the mediating thread. */
+        MEDIATE("Mediate"),
+        ID_EXTRACTION("IdExtraction"),
+        MULTIIDS("Multiids"),
+        DYNAMIC_FIELDS("DynamicFields"),
+        ESB_LOG("EsbLog"),
+        ADD_TRANSACTION("AddTransaction");
+
+        private final String attributePrefix;
+
+        Phase(String attributePrefix) {
+            this.attributePrefix = attributePrefix;
+        }
+
+        public String getAttributePrefix() {
+            return attributePrefix;
+        }
+    }
+
+    private static final String COUNT_SUFFIX = "Count";
+    private static final String P50_SUFFIX = "P50Nanos";
+    private static final String P99_SUFFIX = "P99Nanos";
+    private static final String P999_SUFFIX = "P999Nanos";
+
+    private final String description;
+    private final StripedCounter invocations = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final StripedCounter unknownFallbacks = new StripedCounter();
+    private final StripedCounter truncatedFields = new StripedCounter();
+    private final StripedCounter transactionBudgetHits = new StripedCounter();
+    private final AtomicReferenceArray<LatencyHistogram> latencies =
+            new AtomicReferenceArray<LatencyHistogram>(Phase.values().length);
+    private final Set<Object> owners = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+    private final MBeanInfo mBeanInfo;
+
+    /**
+     * Constructor.
+     *
+     * @param description description shown by JMX clients, e.g. the mediator location
+     */
+    public MediatorMetrics(String description) {
+        this.description = description;
+        this.mBeanInfo = createMBeanInfo();
+    }
+
+    public void invocation() {
+        invocations.increment();
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public void unknownFallback() {
+        unknownFallbacks.increment();
+    }
+
+    public void truncatedField() {
+        truncatedFields.increment();
+    }
+
+    public void transactionBudgetHit() {
+        transactionBudgetHits.increment();
+    }
+
+    /**
+     * Records the latency of a phase.
+     *
+     * @param phase measured phase
+     * @param nanos latency in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        getLatency(phase).record(nanos);
+    }
+
+    public long getInvocationCount() {
+        return invocations.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getUnknownFallbackCount() {
+        return unknownFallbacks.get();
+    }
+
+    public long getTruncatedFieldCount() {
+        return truncatedFields.get();
+    }
+
+    public long getTransactionBudgetHitCount() {
+        return transactionBudgetHits.get();
+    }
+
+    public LatencyHistogram getLatency(Phase phase) {
+        LatencyHistogram histogram = latencies.get(phase.ordinal());
+        if (histogram == null) {
+            latencies.compareAndSet(phase.ordinal(), null, new LatencyHistogram());
+            histogram = latencies.get(phase.ordinal());
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the mediators using these metrics, guarded by the {@link MediatorMetricsRegistry}.
+     */
+    Set<Object> getOwners() {
+        return owners;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if ("InvocationCount".equals(attribute)) {
+            return getInvocationCount();
+        }
+        if ("ErrorCount".equals(attribute)) {
+            return getErrorCount();
+        }
+        if ("UnknownFallbackCount".equals(attribute)) {
+            return getUnknownFallbackCount();
+        }
+        if ("TruncatedFieldCount".equals(attribute)) {
+            return getTruncatedFieldCount();
+        }
+        if ("TransactionBudgetHitCount".equals(attribute)) {
+            return getTransactionBudgetHitCount();
+        }
+        for (Phase phase : Phase.values()) {
+            String prefix = phase.getAttributePrefix();
+            if (!attribute.startsWith(prefix)) {
+                continue;
+            }
+            String suffix = attribute.substring(prefix.length());
+            LatencyHistogram histogram = latencies.get(phase.ordinal());
+            if (COUNT_SUFFIX.equals(suffix)) {
+                return histogram == null ? 0L : histogram.getCount();
+            }
+            if (P50_SUFFIX.equals(suffix)) {
+                return histogram == null ? 0L : histogram.getPercentile(0.5);
+            }
+            if (P99_SUFFIX.equals(suffix)) {
+                return histogram == null ? 0L : histogram.getPercentile(0.99);
+            }
+            if (P999_SUFFIX.equals(suffix)) {
+                return histogram == null ? 0L : histogram.getPercentile(0.999);
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Attributes of " + description + " are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            try {
+                list.add(new Attribute(name, getAttribute(name)));
+            } catch (AttributeNotFoundException ignored) {
+                // Unknown attributes are left out of the list, as required by DynamicMBean.
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return mBeanInfo;
+    }
+
+    private MBeanInfo createMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        attributes.add(longAttribute("InvocationCount", "Number of mediate() calls"));
+        attributes.add(longAttribute("ErrorCount", "Number of mediations that failed with an exception"));
+        attributes.add(longAttribute("UnknownFallbackCount", "Number of dynamic values replaced by Unknown"));
+        attributes.add(longAttribute("TruncatedFieldCount", "Number of values cut to the field size limit"));
+        attributes.add(longAttribute("TransactionBudgetHitCount", "Number of transactions whose values were cut to the transaction size limit"));
+        for (Phase phase : Phase.values()) {
+            String prefix = phase.getAttributePrefix();
+            attributes.add(longAttribute(prefix + COUNT_SUFFIX, "Number of measured " + prefix + " phases"));
+            attributes.add(longAttribute(prefix + P50_SUFFIX, "Median " + prefix + " latency in nanoseconds"));
+            attributes.add(longAttribute(prefix + P99_SUFFIX, "99th percentile " + prefix + " latency in nanoseconds"));
+            attributes.add(longAttribute(prefix + P999_SUFFIX, "99.9th percentile " + prefix + " latency in nanoseconds"));
+        }
+        return new MBeanInfo(getClass().getName(), "Aino.io mediator " + description,
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+
+    private static MBeanAttributeInfo longAttribute(String name, String description) {
+        return new MBeanAttributeInfo(name, "long", description, true, false, false);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.aino.agents.wso2.mediator.util.MediatorLocation;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.METRICS_JMX_DOMAIN;
+
+/**
+ * Registry of {@link MediatorMetrics}, one per mediator location.
+ * Metrics are registered to the platform MBean server when first requested, and unregistered
+ * when the mediators using them are destroyed.
+ */
+public final class MediatorMetricsRegistry {
+    private static final Log log = LogFactory.getLog(MediatorMetricsRegistry.class);
+
+    private static final MediatorMetricsRegistry DEFAULT = new MediatorMetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+
+    private final ConcurrentMap<String, MediatorMetrics> metrics = new ConcurrentHashMap<String, MediatorMetrics>();
+    private final MBeanServer mBeanServer;
+
+    /**
+     * Constructor.
+     *
+     * @param mBeanServer server to register the metrics to, or null to not register them
+     */
+    public MediatorMetricsRegistry(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    /**
+     * Returns the registry shared by all mediators.
+     *
+     * @return shared registry
+     */
+    public static MediatorMetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the metrics of a mediator location, creating and registering them if needed.
+     * The metrics stay registered until every mediator that requested them is released.
+     *
+     * @param location mediator location, may be null
+     * @param owner mediator using the metrics
+     * @return metrics of the location
+     */
+    public synchronized MediatorMetrics forLocation(MediatorLocation location, Object owner) {
+        String name = getObjectName(location);
+        MediatorMetrics existing = metrics.get(name);
+        if (existing == null) {
+            existing = new MediatorMetrics(String.valueOf(location));
+            metrics.put(name, existing);
+            register(name, existing);
+        }
+        existing.getOwners().add(owner);
+        return existing;
+    }
+
+    /**
+     * Releases the metrics of a mediator location used by a mediator, e.g. when the mediator is destroyed.
+     * The metrics are unregistered when no other mediator at the same location uses them.
+     *
+     * @param location mediator location, may be null
+     * @param owner mediator that used the metrics
+     */
+    public synchronized void release(MediatorLocation location, Object owner) {
+        String name = getObjectName(location);
+        MediatorMetrics existing = metrics.get(name);
+        if (existing == null) {
+            return;
+        }
+        existing.getOwners().remove(owner);
+        if (existing.getOwners().isEmpty()) {
+            metrics.remove(name);
+            unregister(name);
+        }
+    }
+
+    /**
+     * Unregisters all metrics from the MBean server.
+     */
+    public synchronized void unregisterAll() {
+        for (String name : metrics.keySet()) {
+            unregister(name);
+            metrics.remove(name);
+        }
+    }
+
+    private void unregister(String name) {
+        if (mBeanServer == null) {
+            return;
+        }
+        try {
+            mBeanServer.unregisterMBean(new ObjectName(name));
+        } catch (JMException e) {
+            log.debug("Could not unregister mediator metrics " + name, e);
+        }
+    }
+
+    private void register(String name, MediatorMetrics mediatorMetrics) {
+        if (mBeanServer == null) {
+            return;
+        }
+        try {
+            mBeanServer.registerMBean(mediatorMetrics, new ObjectName(name));
+        } catch (JMException e) {
+            log.warn("Could not register mediator metrics " + name + " to JMX. Exception message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the JMX object name of a mediator location.
+     *
+     * @param location mediator location, may be null
+     * @return object name
+     */
+    public static String getObjectName(MediatorLocation location) {
+        StringBuilder sb = new StringBuilder(METRICS_JMX_DOMAIN).append(":type=AinoMediator");
+        if (location == null) {
+            return sb.append(",artifactType=unknown").toString();
+        }
+        sb.append(",artifactType=").append(ObjectName.quote(String.valueOf(location.getArtifactType())));
+        sb.append(",artifactName=").append(ObjectName.quote(String.valueOf(location.getArtifactName())));
+        sb.append(",lineNumber=").append(location.getLineNumber());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells, so that threads incrementing it concurrently
+ * rarely touch the same cache line. The value is the sum of the cells.
+ */
+public final class StripedCounter {
+
+    // Cells are this many longs apart, so that two cells never share a 64 byte cache line.
+    static final int PADDING = 8;
+    static final int STRIPES = stripeCount();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        cells.incrementAndGet(stripe() * PADDING);
+    }
+
+    /**
+     * Returns the current value of the counter.
+     *
+     * @return counter value
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the stripe of the calling thread.
+     *
+     * @return stripe index
+     */
+    static int stripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1));
+    }
+
+    private static int stripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        return Integer.highestOneBit(Math.max(processors, 1));
+    }
+}
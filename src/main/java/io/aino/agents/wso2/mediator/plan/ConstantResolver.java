@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+/**
+ * {@link FieldResolver} for statically configured values.
+ */
+public class ConstantResolver implements FieldResolver {
+
+    /**
+     * Resolver for fields that are not configured.
+     */
+    public static final ConstantResolver NULL = new ConstantResolver(null);
+
+    private final String value;
+
+    /**
+     * Constructor.
+     *
+     * @param value constant value
+     */
+    public ConstantResolver(String value) {
+        this.value = value;
+    }
+
+    @Override
+    public String resolve(MediationContext context) {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
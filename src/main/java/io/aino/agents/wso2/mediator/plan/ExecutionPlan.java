@@ -0,0 +1,565 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.MediatorProperty;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.config.KeyRegistry;
+import io.aino.agents.wso2.mediator.config.KeyRegistry.KeyType;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics.Phase;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetricsRegistry;
+import io.aino.agents.wso2.mediator.util.DigestingOutputStream;
+import io.aino.agents.wso2.mediator.util.Enum;
+import io.aino.agents.wso2.mediator.util.FlowSampler;
+import io.aino.agents.wso2.mediator.util.Id;
+import io.aino.agents.wso2.mediator.util.IdPropertyBuilder;
+import io.aino.agents.wso2.mediator.util.MediatorLocation;
+import io.aino.agents.wso2.mediator.util.MultiidsParser;
+import io.aino.agents.wso2.mediator.util.PayloadDigest;
+import io.aino.agents.wso2.mediator.util.TransportHeaders;
+import io.aino.agents.wso2.mediator.util.UnbuiltEnvelope;
+import io.aino.agents.wso2.mediator.util.WarningAggregator;
+import io.aino.agents.wso2.mediator.util.XPathResultCache;
+
+import static io.aino.agents.wso2.mediator.AinoMediator.*;
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.*;
+
+/**
+ * Immutable execution plan of one ainoLog mediator.
+ *
+ * The plan is compiled from the mediator configuration. Static values are collected to a
+ * {@link TransactionTemplate} and every dynamic field gets a {@link FieldResolver}, so mediation
+ * only applies the template, runs the resolvers in order and keeps no state between messages.
+ * A plan can be shared freely between worker threads.
+ *
+ * The plan holds the agent it was compiled for, so a mediation call always uses a plan and an
+ * agent that belong together, also while the agent is being reloaded.
+ */
+public final class ExecutionPlan {
+    private static final Log log = LogFactory.getLog(ExecutionPlan.class);
+    private static final String PASS_THROUGH_PIPE_PROPERTY_NAME = "pass-through.pipe";
+    private static final String MESSAGE_BUILDER_INVOKED_PROPERTY_NAME = "message.builder.invoked";
+
+    private static final List<String> DATA_FIELDS = Arrays.asList(
+            "from",
+            "to",
+            "message",
+            "status",
+            "timestamp",
+            "operation",
+            "ids",
+            "multiids",
+            "flowId",
+            "payloadType"
+    );
+
+    private final Agent agent;
+    private final MediatorLocation mediatorLocation;
+    private final WarningAggregator warnings = WarningAggregator.getDefault();
+    private final MediatorMetrics metrics;
+    private final KeyRegistry keys;
+    private final String esbServerName;
+
+    private final FieldResolver flowId;
+    private final FieldResolver operation;
+    private final FieldResolver dynamicOperation;
+    private final FieldResolver message;
+    private final FieldResolver status;
+    private final FieldResolver payloadType;
+    private final FieldResolver fromApplication;
+    private final FieldResolver toApplication;
+    private final FieldResolver multiids;
+    private final List<String> staticIdTypes;
+    private final List<List<String>> staticIds;
+
+    private final boolean hasDynamicOperation;
+    private final boolean hasDynamicMessage;
+    private final boolean hasDynamicStatus;
+    private final boolean hasDynamicPayloadType;
+    private final boolean hasDynamicFromApplication;
+    private final boolean hasDynamicToApplication;
+    private final boolean captureErrors;
+
+    private final TransactionTemplate template;
+    private final FlowSampler sampler;
+    private final TransactionBudget budget;
+    private final PayloadDigest payloadDigest;
+    private final IdPropertyBuilder idPropertyBuilder;
+    private final String[] metadataNames;
+    private final FieldResolver[] metadataResolvers;
+
+    private ExecutionPlan(AinoMediator mediator, Agent agent) {
+        this.agent = agent;
+        this.mediatorLocation = mediator.getMediatorLocation();
+        this.esbServerName = mediator.getEsbServerName();
+        this.metrics = MediatorMetricsRegistry.getDefault().forLocation(mediatorLocation, mediator);
+        this.keys = agent == null ? null : new KeyRegistry(agent);
+
+        this.flowId = new FallbackResolver(new HeaderResolver(AINO_FLOW_ID_PROPERTY_NAME),
+                new PropertyResolver(AINO_FLOW_ID_PROPERTY_NAME));
+
+        // The static value of operation is used if given, otherwise it is looked up from headers and context.
+        if (mediator.getOperation() != null) {
+            this.operation = new ConstantResolver(mediator.getOperation());
+        } else {
+            this.operation = new FallbackResolver(new HeaderResolver(AINO_OPERATION_KEY_PROPERTY_NAME),
+                    new PropertyResolver(AINO_OPERATION_KEY_PROPERTY_NAME));
+        }
+
+        this.dynamicOperation = compileField(mediator.getDynamicOperation(), "operation");
+        this.message = compileField(mediator.getDynamicMessage(), "message");
+        this.status = compileField(mediator.getDynamicStatus(), "Status");
+        this.payloadType = compileField(mediator.getDynamicPayloadType(), "payloadType");
+        this.fromApplication = compileField(mediator.getDynamicFromApplication(), "Application of direction FROM");
+        this.toApplication = compileField(mediator.getDynamicToApplication(), "Application of direction TO");
+        // Static multiids are parsed and their id types validated once, here.
+        if (mediator.getDynamicMultiids() == null && mediator.getMultiids() != null) {
+            this.multiids = ConstantResolver.NULL;
+            this.staticIdTypes = new ArrayList<String>();
+            this.staticIds = new ArrayList<List<String>>();
+            compileStaticMultiids(mediator.getMultiids());
+        } else {
+            this.multiids = compileField(mediator.getDynamicMultiids(), "Multiids");
+            this.staticIdTypes = Collections.emptyList();
+            this.staticIds = Collections.emptyList();
+        }
+
+        this.hasDynamicOperation = mediator.getDynamicOperation() != null;
+        this.hasDynamicMessage = mediator.getDynamicMessage() != null;
+        this.hasDynamicStatus = mediator.getDynamicStatus() != null;
+        this.hasDynamicPayloadType = mediator.getDynamicPayloadType() != null;
+        this.hasDynamicFromApplication = mediator.getDynamicFromApplication() != null;
+        this.hasDynamicToApplication = mediator.getDynamicToApplication() != null;
+        this.captureErrors = Enum.Status.FAILURE.toString().equals(mediator.getStatus());
+
+        this.sampler = FlowSampler.forRate(mediator.getEffectiveSampleRate());
+        this.budget = mediator.getTransactionBudget();
+        this.payloadDigest = mediator.getPayloadDigest();
+        this.idPropertyBuilder = new IdPropertyBuilder(new ArrayList<Id>(mediator.getIdList()));
+
+        TransactionTemplate.Builder templateBuilder = compileTemplate(mediator);
+
+        List<String> names = new ArrayList<String>();
+        List<FieldResolver> resolvers = new ArrayList<FieldResolver>();
+        if (mediator.getProperties() != null) {
+            for (MediatorProperty property : mediator.getProperties()) {
+                if (property == null || DATA_FIELDS.contains(property.getName())) {
+                    continue;
+                }
+                if (property.getValue() != null) {
+                    templateBuilder.metadata(property.getName(), property.getValue());
+                } else {
+                    names.add(property.getName());
+                    resolvers.add(new MediatorPropertyResolver(property));
+                }
+            }
+        }
+        this.template = templateBuilder.build();
+        this.metadataNames = names.toArray(new String[names.size()]);
+        this.metadataResolvers = resolvers.toArray(new FieldResolver[resolvers.size()]);
+    }
+
+    /**
+     * Compiles the execution plan of a mediator.
+     *
+     * @param mediator configured mediator
+     * @return execution plan
+     */
+    public static ExecutionPlan compile(AinoMediator mediator) {
+        return new ExecutionPlan(mediator, mediator.ainoAgent);
+    }
+
+    /**
+     * Compiles the execution plan of a mediator for another agent than the one the mediator uses,
+     * for example a reloaded one.
+     *
+     * @param mediator configured mediator
+     * @param agent agent the plan is compiled for
+     * @return execution plan
+     */
+    public static ExecutionPlan compile(AinoMediator mediator, Agent agent) {
+        return new ExecutionPlan(mediator, agent);
+    }
+
+    private TransactionTemplate.Builder compileTemplate(AinoMediator mediator) {
+        TransactionTemplate.Builder builder = new TransactionTemplate.Builder()
+                .metadata("artifactName", mediatorLocation.getArtifactName())
+                .metadata("esbServerName", esbServerName)
+                .metadata("artifactType", mediatorLocation.getArtifactType())
+                .metadata("lineNumber", Integer.toString(mediatorLocation.getLineNumber()));
+
+        if (!hasDynamicMessage && mediator.getMessage() != null) {
+            builder.message(mediator.getMessage());
+        }
+        if (!hasDynamicStatus) {
+            builder.status(mediator.getStatus() == null ? "" : mediator.getStatus());
+        }
+        if (!hasDynamicPayloadType && mediator.getPayloadType() != null) {
+            builder.payloadType(mediator.getPayloadType());
+        }
+        if (!hasDynamicFromApplication && mediator.getFromApplication() != null) {
+            builder.fromApplication(mediator.getFromApplication());
+        }
+        if (!hasDynamicToApplication && mediator.getToApplication() != null) {
+            builder.toApplication(mediator.getToApplication());
+        }
+        return builder;
+    }
+
+    private void compileStaticMultiids(String multiidsValue) {
+        MultiidsParser.parse(multiidsValue, new MultiidsParser.Handler() {
+            @Override
+            public void ids(String idType, List<String> ids) {
+                staticIdTypes.add(keys == null ? idType : resolveIdType(idType, keys));
+                staticIds.add(Collections.unmodifiableList(ids));
+            }
+        });
+    }
+
+    private static FieldResolver compileField(SynapseXPath expression, String fieldName) {
+        if (expression != null) {
+            return new XPathResolver(expression, fieldName);
+        }
+        return ConstantResolver.NULL;
+    }
+
+    /**
+     * Returns the agent this plan was compiled for.
+     *
+     * @return aino agent
+     */
+    public Agent getAgent() {
+        return agent;
+    }
+
+    /**
+     * Returns the metrics of the mediator location of this plan.
+     *
+     * @return mediator metrics
+     */
+    public MediatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the index of the keys configured to the agent of this plan.
+     *
+     * @return key registry, or null if the plan has no agent
+     */
+    public KeyRegistry getKeyRegistry() {
+        return keys;
+    }
+
+    /**
+     * Reads everything the transaction needs from the message context.
+     * This must be run on the mediating thread, because the message context
+     * must not be touched once the mediation has moved on.
+     *
+     * @param context message context
+     * @param agent aino agent
+     * @return raw values for building the transaction
+     */
+    public MessageSnapshot capture(MessageContext context, Agent agent) {
+        MediationContext mediationContext = new MediationContext(context);
+        try {
+            return capture(mediationContext, agent);
+        } finally {
+            // Headers are written once, also when the flow is dropped or evaluation failed.
+            mediationContext.flushHeaders();
+            UnbuiltEnvelope.release(context);
+            XPathResultCache.endMediator(context);
+        }
+    }
+
+    private MessageSnapshot capture(MediationContext context, Agent agent) {
+        String flowIdValue = flowId.resolve(context);
+        if (flowIdValue == null) {
+            flowIdValue = context.getMessageId();
+        }
+        context.setFlowId(flowIdValue);
+
+        String operationKey = operation.resolve(context);
+        context.setOperationKey(operationKey);
+
+        // Dropped flows stop here, before any expression of the message is evaluated.
+        if (!agent.isEnabled() || !sampler.isSampled(flowIdValue)) {
+            return new MessageSnapshot(null);
+        }
+
+        Transaction transaction = agent.newTransaction();
+        transaction.setFlowId(flowIdValue);
+        transaction.setOperationKey(operationKey);
+        MessageSnapshot snapshot = new MessageSnapshot(transaction, budget, metrics);
+
+        long start = System.nanoTime();
+        for (String truncated : idPropertyBuilder.buildToContext(context.getMessageContext(), transaction)) {
+            snapshot.addStaticMetadata(TRUNCATED_IDS_METADATA_NAME, truncated);
+        }
+        metrics.record(Phase.ID_EXTRACTION, System.nanoTime() - start);
+
+        if (payloadDigest != null) {
+            capturePayloadDigest(context.getMessageContext(), snapshot);
+        }
+        if (captureErrors) {
+            captureErrorMetadata(context.getMessageContext(), snapshot);
+        }
+
+        // Static values are in the transaction template, only dynamic fields are evaluated.
+        start = System.nanoTime();
+        if (hasDynamicOperation) {
+            snapshot.operation = dynamicOperation.resolve(context);
+        }
+        if (hasDynamicMessage) {
+            snapshot.setMessage(message.resolve(context));
+        }
+        if (hasDynamicStatus) {
+            snapshot.status = status.resolve(context);
+        }
+        if (hasDynamicPayloadType) {
+            snapshot.payloadType = payloadType.resolve(context);
+        }
+        if (hasDynamicFromApplication) {
+            snapshot.fromApplication = fromApplication.resolve(context);
+        }
+        if (hasDynamicToApplication) {
+            snapshot.toApplication = toApplication.resolve(context);
+        }
+        for (int i = 0; i < metadataNames.length; i++) {
+            snapshot.addMetadata(metadataNames[i], metadataResolvers[i].resolve(context));
+        }
+        long end = System.nanoTime();
+        snapshot.dynamicFieldsNanos = end - start;
+
+        snapshot.multiids = multiids.resolve(context);
+        snapshot.multiidsNanos = System.nanoTime() - end;
+
+        return snapshot;
+    }
+
+    /**
+     * Completes the transaction from the captured values.
+     * Dynamic keys that do not exist in the Aino.io configuration are replaced by Unknown keys.
+     *
+     * @param snapshot values captured from the message context
+     * @param agent aino agent
+     * @return completed transaction, or null when the agent was disabled
+     */
+    public Transaction complete(MessageSnapshot snapshot, Agent agent) {
+        Transaction transaction = snapshot.getTransaction();
+        if (transaction == null) {
+            return null;
+        }
+
+        template.applyTo(transaction);
+        template.addMetadataTo(snapshot);
+
+        long start = System.nanoTime();
+        processMultiids(snapshot.multiids, transaction, keys);
+        long end = System.nanoTime();
+        metrics.record(Phase.MULTIIDS, snapshot.multiidsNanos + end - start);
+
+        // Dynamic operation handling. If Dynamic operation is given. it will override any other style of giving the operation name
+        if (hasDynamicOperation) {
+            transaction.setOperationKey(resolveDynamicOperation(snapshot.operation, keys));
+        }
+        if (hasDynamicPayloadType) {
+            transaction.setPayloadTypeKey(resolveDynamicPayloadType(snapshot.payloadType, keys));
+        }
+        if (hasDynamicStatus) {
+            transaction.setStatus(resolveDynamicStatus(snapshot.status));
+        }
+        if (hasDynamicMessage) {
+            transaction.setMessage(snapshot.message);
+        }
+        if (hasDynamicFromApplication) {
+            transaction.setFromKey(resolveDynamicApplication(fromApplication, snapshot.fromApplication, keys));
+        }
+        if (hasDynamicToApplication) {
+            transaction.setToKey(resolveDynamicApplication(toApplication, snapshot.toApplication, keys));
+        }
+
+        for (int i = 0; i < snapshot.metadataNames.size(); i++) {
+            transaction.addMetadata(snapshot.metadataNames.get(i), snapshot.metadataValues.get(i));
+        }
+        metrics.record(Phase.DYNAMIC_FIELDS, snapshot.dynamicFieldsNanos + System.nanoTime() - end);
+
+        return transaction;
+    }
+
+    private void capturePayloadDigest(MessageContext context, MessageSnapshot snapshot) {
+        // A body still streamed by the pass-through transport is not built for the digest, its size is taken from the headers.
+        org.apache.axis2.context.MessageContext axis2Context = ((Axis2MessageContext) context).getAxis2MessageContext();
+        if (axis2Context.getProperty(PASS_THROUGH_PIPE_PROPERTY_NAME) != null
+                && !Boolean.TRUE.equals(axis2Context.getProperty(MESSAGE_BUILDER_INVOKED_PROPERTY_NAME))) {
+            String contentLength = TransportHeaders.getContentLength(context);
+            if (contentLength != null) {
+                snapshot.addStaticMetadata(PAYLOAD_SIZE_METADATA_NAME, contentLength);
+            }
+            return;
+        }
+
+        DigestingOutputStream out = payloadDigest.newOutputStream();
+        try {
+            OMElement payload = context.getEnvelope().getBody().getFirstElement();
+            if (payload != null) {
+                payload.serialize(out);
+            }
+        } catch (XMLStreamException e) {
+            log.warn("Error while computing the payload digest. Exception message: " + e.getMessage(), e);
+            return;
+        }
+        snapshot.addStaticMetadata(PAYLOAD_DIGEST_METADATA_NAME, out.getDigest());
+        snapshot.addStaticMetadata(PAYLOAD_SIZE_METADATA_NAME, Long.toString(out.getByteCount()));
+    }
+
+    private void captureErrorMetadata(MessageContext context, MessageSnapshot snapshot) {
+        if (context.getProperty("ERROR_CODE") != null) {
+            snapshot.addMetadata("errorCode", context.getProperty("ERROR_CODE").toString());
+        }
+
+        if (context.getProperty("ERROR_MESSAGE") != null) {
+            snapshot.addMetadata("errorMessage", context.getProperty("ERROR_MESSAGE").toString());
+        }
+
+        if (context.getProperty("ERROR_DETAIL") != null) {
+            snapshot.addMetadata("errorDetails", context.getProperty("ERROR_DETAIL").toString());
+        }
+
+        if (context.getProperty("ERROR_EXCEPTION") != null) {
+            snapshot.addMetadata("errorException", context.getProperty("ERROR_EXCEPTION").toString());
+        }
+    }
+
+    private void processMultiids(String multiidsValues, final Transaction transaction, final KeyRegistry keys) {
+        for (int i = 0; i < staticIdTypes.size(); i++) {
+            transaction.addIdsByTypeKey(staticIdTypes.get(i), new ArrayList<String>(staticIds.get(i)));
+        }
+
+        if (multiidsValues == null) {
+            return;
+        }
+        //Sample whole multiidsValues: some_other_id=value1,value2||some_other_id2=xxx
+        MultiidsParser.parse(multiidsValues, new MultiidsParser.Handler() {
+            @Override
+            public void ids(String idType, List<String> ids) {
+                transaction.addIdsByTypeKey(resolveIdType(idType, keys), ids);
+            }
+        });
+    }
+
+    private String resolveIdType(String idType, KeyRegistry keys) {
+        if (keys.exists(KeyType.ID_TYPE, idType)) {
+            return idType;
+        }
+        metrics.unknownFallback();
+        long count = warnings.record(mediatorLocation, "idType", idType);
+        if (count > 0) {
+            StringBuilder sb = new StringBuilder("An invalid id type key has been given to a AinoMediator ");
+            sb.append(idType).append(" element, using Unknown as id type");
+            warnings.log(log, mediatorLocation, "idType", idType, sb.toString(), count);
+        }
+        return UNKNOWN_DYNAMIC_IDTYPE;
+    }
+
+    private String resolveDynamicOperation(String operationKey, KeyRegistry keys) {
+        if (keys.exists(KeyType.OPERATION, operationKey)) {
+            return operationKey;
+        }
+        // The dynamic operation name is NOT in the configs OR the Xpath was corrupted.
+        // So lets use UnKnown operation name, registered to the config when the agent was initialized.
+        metrics.unknownFallback();
+        long count = warnings.record(mediatorLocation, "operation", operationKey);
+        if (count > 0) {
+            StringBuilder sb = new StringBuilder("Error while resolving the dynamic operation ");
+            sb.append(" using XPath expression: ").append(dynamicOperation.toString());
+            sb.append(" Exception message: operation does not exist in config, name of operation: ").append(operationKey).append(" Doing fallback and using UnKnown as operation name");
+            warnings.log(log, mediatorLocation, "operation", operationKey, sb.toString(), count);
+        }
+        return UNKNOWN_DYNAMIC_OPERATION;
+    }
+
+    private String resolveDynamicApplication(FieldResolver expression, String applicationKey, KeyRegistry keys) {
+        if (keys.exists(KeyType.APPLICATION, applicationKey)) {
+            return applicationKey;
+        }
+        // The dynamic application name is NOT in the configs OR the Xpath was corrupted.
+        // So lets use UnKnown application name, registered to the config when the agent was initialized.
+        metrics.unknownFallback();
+        String field = expression == fromApplication ? "from" : "to";
+        long count = warnings.record(mediatorLocation, field, applicationKey);
+        if (count > 0) {
+            StringBuilder sb = new StringBuilder("Error while resolving the dynamic Application ");
+            sb.append(" using XPath expression: ").append(expression.toString());
+            sb.append(" Exception message: application does not exist in config, name of application: ").append(applicationKey).append(" Doing fallback and using UnKnown as application name");
+            warnings.log(log, mediatorLocation, field, applicationKey, sb.toString(), count);
+        }
+        return UNKNOWN_DYNAMIC_APPLICATION;
+    }
+
+    private String resolveDynamicPayloadType(String payloadTypeKey, KeyRegistry keys) {
+        if (keys.exists(KeyType.PAYLOAD_TYPE, payloadTypeKey)) {
+            return payloadTypeKey;
+        }
+        // The dynamic payloadType name is NOT in the configs OR the Xpath was corrupted.
+        // So lets use UnKnown payloadType name, registered to the config when the agent was initialized.
+        metrics.unknownFallback();
+        long count = warnings.record(mediatorLocation, "payloadType", payloadTypeKey);
+        if (count > 0) {
+            StringBuilder sb = new StringBuilder("Error while resolving the dynamic payloadType ");
+            sb.append(" using XPath expression: ").append(payloadType.toString());
+            sb.append(" Exception message: payloadType does not exist in config, name of payloadType: ").append(payloadTypeKey).append(" Doing fallback and using UnKnown as payloadType name");
+            warnings.log(log, mediatorLocation, "payloadType", payloadTypeKey, sb.toString(), count);
+        }
+        return UNKNOWN_DYNAMIC_PAYLOADTYPE;
+    }
+
+    private String resolveDynamicStatus(String calculatedStatus) {
+        Enum.Status resolvedStatus = Enum.Status.getStatus(calculatedStatus);
+        if (resolvedStatus == null) {
+            // The dynamic status is NOT valid status OR the Xpath was corrupted.
+            // So lets use UnKnown as status
+            resolvedStatus = Enum.Status.UNKNOWN;
+            metrics.unknownFallback();
+            long count = warnings.record(mediatorLocation, "status", calculatedStatus);
+            if (count > 0) {
+                StringBuilder sb = new StringBuilder("Error while resolving the dynamic Status ");
+                sb.append(" using XPath expression: ").append(status.toString());
+                sb.append(" Exception message: Can not calculate valid status from given value: ").append(calculatedStatus).append(" Doing fallback and using unknown as status");
+                warnings.log(log, mediatorLocation, "status", calculatedStatus, sb.toString(), count);
+            }
+        }
+        return resolvedStatus.toString();
+    }
+
+}
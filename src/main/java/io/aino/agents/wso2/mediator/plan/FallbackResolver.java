@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+/**
+ * {@link FieldResolver} returning the value of the first resolver, or the value of
+ * the second one if the first returns null.
+ */
+public class FallbackResolver implements FieldResolver {
+
+    private final FieldResolver primary;
+    private final FieldResolver secondary;
+
+    /**
+     * Constructor.
+     *
+     * @param primary resolver tried first
+     * @param secondary resolver used when primary returns null
+     */
+    public FallbackResolver(FieldResolver primary, FieldResolver secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    @Override
+    public String resolve(MediationContext context) {
+        String value = primary.resolve(context);
+        if (value == null) {
+            value = secondary.resolve(context);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return primary + " | " + secondary;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+/**
+ * Resolves the value of one transaction field from a message context.
+ * Resolvers are immutable and can be shared between threads.
+ */
+public interface FieldResolver {
+
+    /**
+     * Resolves the field value.
+     *
+     * @param context state of the mediate() call
+     * @return field value or null if it could not be resolved
+     */
+    String resolve(MediationContext context);
+}
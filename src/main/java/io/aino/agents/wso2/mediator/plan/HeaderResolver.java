@@ -0,0 +1,45 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+/**
+ * {@link FieldResolver} reading a transport header of the message.
+ */
+public class HeaderResolver implements FieldResolver {
+
+    private final String name;
+
+    /**
+     * Constructor.
+     *
+     * @param name header name
+     */
+    public HeaderResolver(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String resolve(MediationContext context) {
+        // This logic is in place for situations where the message is coming back from a system which doesn't return custom transport headers.
+        return context.getHeader(name);
+    }
+
+    @Override
+    public String toString() {
+        return "$trp:" + name;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import java.util.Map;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import io.aino.agents.wso2.mediator.util.TransportHeaders;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.AINO_FLOW_ID_PROPERTY_NAME;
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.AINO_OPERATION_KEY_PROPERTY_NAME;
+
+/**
+ * State of one mediate() call.
+ *
+ * The axis2 message context and the transport headers map are looked up once and shared by all
+ * {@link FieldResolver}s of the call. The flow id and operation headers set during the call are
+ * written to the transport headers together by {@link #flushHeaders()}.
+ */
+public final class MediationContext {
+
+    private final MessageContext messageContext;
+    private final org.apache.axis2.context.MessageContext axis2MessageContext;
+    private Map<String, String> transportHeaders;
+
+    private String flowId;
+    private String operationKey;
+
+    /**
+     * Constructor.
+     *
+     * @param messageContext message context being mediated
+     */
+    public MediationContext(MessageContext messageContext) {
+        this.messageContext = messageContext;
+        this.axis2MessageContext = messageContext instanceof Axis2MessageContext
+                ? ((Axis2MessageContext) messageContext).getAxis2MessageContext() : null;
+    }
+
+    public MessageContext getMessageContext() {
+        return messageContext;
+    }
+
+    /**
+     * Returns the axis2 message context.
+     *
+     * @return axis2 message context, or null if the message context is not an axis2 one
+     */
+    public org.apache.axis2.context.MessageContext getAxis2MessageContext() {
+        return axis2MessageContext;
+    }
+
+    /**
+     * Returns the transport headers of the message, looked up on first use.
+     *
+     * @return transport headers, or null if the message context is not an axis2 one
+     */
+    public Map<String, String> getTransportHeaders() {
+        if (transportHeaders == null && axis2MessageContext != null) {
+            transportHeaders = TransportHeaders.getTransportHeaders(messageContext);
+        }
+        return transportHeaders;
+    }
+
+    /**
+     * Returns a transport header.
+     *
+     * @param name header name
+     * @return header value, or null if the header is not set or not a String
+     */
+    public String getHeader(String name) {
+        Map<String, ?> headers = getTransportHeaders();
+        if (headers == null) {
+            return null;
+        }
+        Object value = headers.get(name);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Returns the axis2 message id.
+     *
+     * @return message id, or null if the message context is not an axis2 one
+     */
+    public String getMessageId() {
+        return axis2MessageContext == null ? null : axis2MessageContext.getMessageID();
+    }
+
+    public String getFlowId() {
+        return flowId;
+    }
+
+    void setFlowId(String flowId) {
+        this.flowId = flowId;
+    }
+
+    public String getOperationKey() {
+        return operationKey;
+    }
+
+    void setOperationKey(String operationKey) {
+        this.operationKey = operationKey;
+    }
+
+    /**
+     * Writes the flow id and operation of the call to the transport headers,
+     * so that the following mediators and endpoints see them.
+     */
+    void flushHeaders() {
+        Map<String, String> headers = getTransportHeaders();
+        if (headers == null) {
+            return;
+        }
+        headers.put(AINO_FLOW_ID_PROPERTY_NAME, flowId);
+        headers.put(AINO_OPERATION_KEY_PROPERTY_NAME, operationKey);
+    }
+}
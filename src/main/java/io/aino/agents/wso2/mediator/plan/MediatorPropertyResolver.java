@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import org.apache.synapse.mediators.MediatorProperty;
+
+import io.aino.agents.wso2.mediator.util.PropertyExpression;
+
+/**
+ * {@link FieldResolver} evaluating the expression of a {@link MediatorProperty}.
+ * Expressions that only read a property or a header are evaluated as a {@link PropertyExpression}.
+ */
+public class MediatorPropertyResolver implements FieldResolver {
+
+    private final MediatorProperty property;
+    private final PropertyExpression propertyExpression;
+
+    /**
+     * Constructor.
+     *
+     * @param property property with an expression
+     */
+    public MediatorPropertyResolver(MediatorProperty property) {
+        this.property = property;
+        this.propertyExpression = PropertyExpression.compile(property.getExpression());
+    }
+
+    @Override
+    public String resolve(MediationContext context) {
+        if (propertyExpression != null) {
+            return propertyExpression.stringValueOf(context.getMessageContext());
+        }
+        return property.getEvaluatedExpression(context.getMessageContext());
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(property.getExpression());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.aino.agents.core.Transaction;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics;
+import io.aino.agents.wso2.mediator.util.Utf8;
+
+/**
+ * Raw values read from the message context for one transaction.
+ * Dynamic values are stored as evaluated; validation against the Aino.io
+ * configuration happens when the transaction is completed by {@link ExecutionPlan}.
+ * The message and metadata values are cut to the {@link TransactionBudget} as they are stored.
+ * Once the transaction is completed, the snapshot holds all metadata added to it, so the metadata
+ * can be kept next to the transaction when it is buffered.
+ */
+public class MessageSnapshot {
+    private final Transaction transaction;
+    private final TransactionBudget budget;
+    private final MediatorMetrics metrics;
+    private long usedBytes;
+    private boolean budgetHit;
+
+    String operation;
+    String message;
+    String status;
+    String payloadType;
+    String fromApplication;
+    String toApplication;
+    String multiids;
+    long dynamicFieldsNanos;
+    long multiidsNanos;
+    final List<String> metadataNames = new ArrayList<String>();
+    final List<String> metadataValues = new ArrayList<String>();
+
+    MessageSnapshot(Transaction transaction) {
+        this(transaction, TransactionBudget.UNLIMITED, null);
+    }
+
+    MessageSnapshot(Transaction transaction, TransactionBudget budget, MediatorMetrics metrics) {
+        this.transaction = transaction;
+        this.budget = budget;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the transaction being built, or null when the agent is disabled.
+     *
+     * @return transaction
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Returns the names of the metadata of the transaction, in the order of {@link #getMetadataValues()}.
+     *
+     * @return metadata names
+     */
+    public List<String> getMetadataNames() {
+        return Collections.unmodifiableList(metadataNames);
+    }
+
+    /**
+     * Returns the values of the metadata of the transaction.
+     *
+     * @return metadata values
+     */
+    public List<String> getMetadataValues() {
+        return Collections.unmodifiableList(metadataValues);
+    }
+
+    void addMetadata(String name, String value) {
+        metadataNames.add(name);
+        metadataValues.add(limit(value));
+    }
+
+    void addStaticMetadata(String name, String value) {
+        metadataNames.add(name);
+        metadataValues.add(value);
+    }
+
+    void setMessage(String message) {
+        this.message = limit(message);
+    }
+
+    private String limit(String value) {
+        if (value == null || budget.isUnlimited()) {
+            return value;
+        }
+        long remaining = budget.getMaxBytes() > 0 ? budget.getMaxBytes() - usedBytes : Long.MAX_VALUE;
+        long limit = budget.getFieldMaxBytes() > 0 ? Math.min(budget.getFieldMaxBytes(), remaining) : remaining;
+        int bytes = Utf8.length(value);
+        if (bytes <= limit) {
+            usedBytes += bytes;
+            return value;
+        }
+
+        String truncated = TransactionBudget.truncate(value, limit);
+        usedBytes += Utf8.length(truncated);
+        if (limit < remaining) {
+            metrics.truncatedField();
+        } else if (!budgetHit) {
+            budgetHit = true;
+            metrics.transactionBudgetHit();
+        }
+        return truncated;
+    }
+}
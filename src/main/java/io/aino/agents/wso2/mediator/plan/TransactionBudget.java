@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import io.aino.agents.wso2.mediator.util.Utf8;
+
+/**
+ * Limits of the UTF-8 size of the dynamic values of a transaction: the message and the metadata,
+ * error details included.
+ *
+ * Every value is limited to {@link #getFieldMaxBytes()} and all values of a transaction together to
+ * {@link #getMaxBytes()}, in the order they are read. A value over its limit is cut at a character
+ * boundary and ends with {@link #TRUNCATION_MARKER}, which is counted in the limit.
+ */
+public final class TransactionBudget {
+
+    public static final String TRUNCATION_MARKER = "...[truncated]";
+
+    /** Budget without limits. */
+    public static final TransactionBudget UNLIMITED = new TransactionBudget(0, 0);
+
+    private static final int MARKER_BYTES = Utf8.length(TRUNCATION_MARKER);
+
+    private final int fieldMaxBytes;
+    private final long maxBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param fieldMaxBytes maximum size of one value, 0 for no limit
+     * @param maxBytes maximum size of all values of a transaction, 0 for no limit
+     */
+    public TransactionBudget(int fieldMaxBytes, long maxBytes) {
+        this.fieldMaxBytes = fieldMaxBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getFieldMaxBytes() {
+        return fieldMaxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    boolean isUnlimited() {
+        return fieldMaxBytes <= 0 && maxBytes <= 0;
+    }
+
+    /**
+     * Cuts a value to at most the given size, marker included.
+     *
+     * @param value value over the limit
+     * @param limit maximum size in UTF-8 bytes
+     * @return truncated value
+     */
+    static String truncate(String value, long limit) {
+        if (limit < MARKER_BYTES) {
+            return Utf8.truncate(value, (int) Math.max(limit, 0));
+        }
+        return Utf8.truncate(value, (int) Math.min(limit - MARKER_BYTES, Integer.MAX_VALUE)) + TRUNCATION_MARKER;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.aino.agents.core.Transaction;
+
+/**
+ * Immutable template of the static parts of the transactions of one mediator.
+ *
+ * The template is built when the {@link ExecutionPlan} is compiled, so the static metadata
+ * strings are created once and applying the template to a transaction only sets references.
+ */
+public final class TransactionTemplate {
+
+    private final String[] metadataNames;
+    private final String[] metadataValues;
+
+    private final boolean hasMessage;
+    private final String message;
+    private final boolean hasStatus;
+    private final String status;
+    private final boolean hasPayloadType;
+    private final String payloadType;
+    private final boolean hasFromApplication;
+    private final String fromApplication;
+    private final boolean hasToApplication;
+    private final String toApplication;
+
+    private TransactionTemplate(Builder builder) {
+        this.metadataNames = builder.metadataNames.toArray(new String[builder.metadataNames.size()]);
+        this.metadataValues = builder.metadataValues.toArray(new String[builder.metadataValues.size()]);
+        this.hasMessage = builder.hasMessage;
+        this.message = builder.message;
+        this.hasStatus = builder.hasStatus;
+        this.status = builder.status;
+        this.hasPayloadType = builder.hasPayloadType;
+        this.payloadType = builder.payloadType;
+        this.hasFromApplication = builder.hasFromApplication;
+        this.fromApplication = builder.fromApplication;
+        this.hasToApplication = builder.hasToApplication;
+        this.toApplication = builder.toApplication;
+    }
+
+    /**
+     * Sets the static fields to the transaction.
+     *
+     * @param transaction transaction to fill
+     */
+    public void applyTo(Transaction transaction) {
+        if (hasMessage) {
+            transaction.setMessage(message);
+        }
+        if (hasStatus) {
+            transaction.setStatus(status);
+        }
+        if (hasPayloadType) {
+            transaction.setPayloadTypeKey(payloadType);
+        }
+        if (hasFromApplication) {
+            transaction.setFromKey(fromApplication);
+        }
+        if (hasToApplication) {
+            transaction.setToKey(toApplication);
+        }
+    }
+
+    /**
+     * Adds the static metadata to the snapshot, which holds all metadata of the transaction.
+     *
+     * @param snapshot snapshot of the transaction
+     */
+    void addMetadataTo(MessageSnapshot snapshot) {
+        for (int i = 0; i < metadataNames.length; i++) {
+            snapshot.addStaticMetadata(metadataNames[i], metadataValues[i]);
+        }
+    }
+
+    /**
+     * Builder of {@link TransactionTemplate}.
+     */
+    static class Builder {
+        private final List<String> metadataNames = new ArrayList<String>();
+        private final List<String> metadataValues = new ArrayList<String>();
+
+        private boolean hasMessage;
+        private String message;
+        private boolean hasStatus;
+        private String status;
+        private boolean hasPayloadType;
+        private String payloadType;
+        private boolean hasFromApplication;
+        private String fromApplication;
+        private boolean hasToApplication;
+        private String toApplication;
+
+        Builder metadata(String name, String value) {
+            metadataNames.add(name);
+            metadataValues.add(value);
+            return this;
+        }
+
+        Builder message(String message) {
+            this.hasMessage = true;
+            this.message = message;
+            return this;
+        }
+
+        Builder status(String status) {
+            this.hasStatus = true;
+            this.status = status;
+            return this;
+        }
+
+        Builder payloadType(String payloadType) {
+            this.hasPayloadType = true;
+            this.payloadType = payloadType;
+            return this;
+        }
+
+        Builder fromApplication(String fromApplication) {
+            this.hasFromApplication = true;
+            this.fromApplication = fromApplication;
+            return this;
+        }
+
+        Builder toApplication(String toApplication) {
+            this.hasToApplication = true;
+            this.toApplication = toApplication;
+            return this;
+        }
+
+        TransactionTemplate build() {
+            return new TransactionTemplate(this);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.plan;
+
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMException;
+import org.apache.axiom.om.OMText;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.util.xpath.SynapseXPath;
+import org.jaxen.JaxenException;
+
+import io.aino.agents.wso2.mediator.util.PropertyExpression;
+import io.aino.agents.wso2.mediator.util.StreamingFirstMatch;
+import io.aino.agents.wso2.mediator.util.StreamingPath;
+import io.aino.agents.wso2.mediator.util.UnbuiltEnvelope;
+import io.aino.agents.wso2.mediator.util.XPathResultCache;
+
+/**
+ * {@link FieldResolver} evaluating a {@link SynapseXPath} against the message.
+ * Expressions that only read a property or a header are evaluated as a {@link PropertyExpression}.
+ * NOTE if the XPath finds several values, only the first non-empty one is returned.
+ * For simple location paths (see {@link StreamingPath}) it is looked up with {@link StreamingFirstMatch},
+ * which stops reading the message at the first value instead of collecting the whole node-set.
+ */
+public class XPathResolver implements FieldResolver {
+    private static final Log log = LogFactory.getLog(XPathResolver.class);
+
+    private final SynapseXPath xPath;
+    private final String fieldName;
+    private final String cacheKey;
+    private final PropertyExpression propertyExpression;
+    private final StreamingPath streamingPath;
+
+    /**
+     * Constructor.
+     *
+     * @param xPath expression to evaluate
+     * @param fieldName name of the field, used in log messages
+     */
+    public XPathResolver(SynapseXPath xPath, String fieldName) {
+        this.xPath = xPath;
+        this.fieldName = fieldName;
+        this.cacheKey = XPathResultCache.getCacheKey(xPath);
+        this.propertyExpression = PropertyExpression.compile(xPath);
+        this.streamingPath = cacheKey == null ? null : StreamingPath.compile(xPath);
+    }
+
+    @Override
+    public String resolve(MediationContext context) {
+        if (propertyExpression != null) {
+            return getExpressionValue(propertyExpression.evaluate(context.getMessageContext()));
+        }
+        if (streamingPath != null) {
+            Object cached = XPathResultCache.get(context.getMessageContext(), cacheKey);
+            if (cached != null) {
+                return getExpressionValue(cached);
+            }
+            try {
+                XMLStreamReader reader = getStreamReader(context.getMessageContext());
+                if (reader != null) {
+                    return StreamingFirstMatch.find(reader, streamingPath);
+                }
+            } catch (XMLStreamException e) {
+                logStreamingError(e);
+            } catch (OMException e) {
+                logStreamingError(e);
+            }
+        }
+        try {
+            Object evaluationResult = XPathResultCache.evaluate(xPath, cacheKey, context.getMessageContext());
+            if (evaluationResult != null) {
+                return getExpressionValue(evaluationResult);
+            }
+        } catch (JaxenException e) {
+            StringBuilder sb = new StringBuilder("Error while resolving the dynamic ").append(fieldName);
+            sb.append(" XPath expression: ").append(xPath.toString());
+            sb.append(" Exception message: ").append(e.getMessage());
+            log.warn(sb.toString(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a reader of the envelope bytes if the ids of the flow already serialized the unbuilt envelope.
+     * Otherwise the envelope is read through a caching reader, so it stays usable for the rest of the
+     * mediation and whatever is after the first value is left unbuilt.
+     */
+    private static XMLStreamReader getStreamReader(MessageContext context) throws XMLStreamException {
+        Object envelopeBytes = XPathResultCache.get(context, UnbuiltEnvelope.CACHE_KEY);
+        if (envelopeBytes instanceof byte[]) {
+            return UnbuiltEnvelope.createReader((byte[]) envelopeBytes);
+        }
+        SOAPEnvelope envelope = context.getEnvelope();
+        return envelope == null ? null : envelope.getXMLStreamReader();
+    }
+
+    private void logStreamingError(Exception e) {
+        StringBuilder sb = new StringBuilder("Error while streaming the dynamic ").append(fieldName);
+        sb.append(", falling back to XPath evaluation. Exception message: ").append(e.getMessage());
+        log.warn(sb.toString(), e);
+    }
+
+    /**
+     * Returns the expression of this resolver.
+     *
+     * @return xpath
+     */
+    public SynapseXPath getXPath() {
+        return xPath;
+    }
+
+    @Override
+    public String toString() {
+        return xPath.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getExpressionValue(Object evaluationResult) {
+        if (evaluationResult instanceof List) {
+            for (Object result : (List<Object>) evaluationResult) {
+                String value = getSingleValue(result);
+                if (StringUtils.isNotEmpty(value)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+        return String.valueOf(evaluationResult);
+    }
+
+    private static String getSingleValue(Object result) {
+        if (result instanceof OMElement) {
+            return ((OMElement) result).getText();
+        } else if (result instanceof OMAttribute) {
+            return ((OMAttribute) result).getAttributeValue();
+        } else if (result instanceof OMText) {
+            return ((OMText) result).getText();
+        }
+        return null;
+    }
+}
@@ -80,6 +80,9 @@ public class AinoMediatorSerializer extends AbstractMediatorSerializer {
         addPayloadTypeToElement(ainoMediator, logElement);
         addPropertiesToElement(ainoMediator, logElement);
         addSeparatorToElement(ainoMediator, logElement);
+        addAsyncToElement(ainoMediator, logElement);
+        addSampleRateToElement(ainoMediator, logElement);
+        addPayloadDigestToElement(ainoMediator, logElement);
         return logElement;
     }
 
@@ -103,6 +106,30 @@ public class AinoMediatorSerializer extends AbstractMediatorSerializer {
         logElement.addAttribute(ATT_SEPARATOR_Q.getLocalPart(), separatorValue, null);
     }
 
+    private void addAsyncToElement(AinoMediator ainoMediator, OMElement logElement) {
+        if(!ainoMediator.isAsync()){
+            return;
+        }
+
+        logElement.addAttribute(ASYNC_ATT_NAME, Boolean.TRUE.toString(), null);
+    }
+
+    private void addSampleRateToElement(AinoMediator ainoMediator, OMElement logElement) {
+        if(ainoMediator.getSampleRate() == null){
+            return;
+        }
+
+        logElement.addAttribute(SAMPLE_RATE_ATT_NAME, ainoMediator.getSampleRate().toString(), null);
+    }
+
+    private void addPayloadDigestToElement(AinoMediator ainoMediator, OMElement logElement) {
+        if(ainoMediator.getPayloadDigest() == null){
+            return;
+        }
+
+        logElement.addAttribute(PAYLOAD_DIGEST_ATT_NAME, ainoMediator.getPayloadDigest().toString(), null);
+    }
+
     private boolean isNullOrEqual(String observed, String reference){
 
         if(null == observed){
@@ -157,6 +184,15 @@ public class AinoMediatorSerializer extends AbstractMediatorSerializer {
             OMElement idsElement = fac.createOMElement(IDS_TAG_NAME, synNS);
             idsElement.addAttribute(ATT_TYPE_Q.getLocalPart(), id.getTypeKey(), null);
             SynapseXPathSerializer.serializeXPath(id.getXPath(), idsElement, ATT_EXPRESSION_Q.getLocalPart());
+            if (id.getMaxCount() > 0) {
+                idsElement.addAttribute(MAX_COUNT_ATT_NAME, Integer.toString(id.getMaxCount()), null);
+            }
+            if (id.getMaxBytes() > 0) {
+                idsElement.addAttribute(MAX_BYTES_ATT_NAME, Integer.toString(id.getMaxBytes()), null);
+            }
+            if (id.isDistinct()) {
+                idsElement.addAttribute(DISTINCT_ATT_NAME, Boolean.TRUE.toString(), null);
+            }
             logElement.addChild(idsElement);
         }
     }
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.util.Map;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+
+/**
+ * Sink adding the transactions to the aino agent, which sends them to aino.io.
+ * This is what the mediators do when no sink is configured for them.
+ *
+ * Mediators routed to this sink do not call it: they hand their transactions to the transaction
+ * buffer or to the agent of their execution plan, so that a reloaded agent is taken into use.
+ */
+public class AgentSink implements TransactionSink {
+
+    public static final String TYPE = "agent";
+
+    private Agent agent;
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public void init(Map<String, String> properties, Agent agent) {
+        this.agent = agent;
+    }
+
+    @Override
+    public void send(Transaction transaction) {
+        agent.addTransaction(transaction);
+    }
+
+    @Override
+    public void close() {
+        // the agent outlives the sink
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+import io.aino.agents.core.config.InvalidAgentConfigException;
+
+/**
+ * Sink posting the transactions as JSON to an HTTP endpoint speaking the aino.io API,
+ * for example a local collector, independently of the agent.
+ * Transactions are sent in batches by a background thread every {@code interval} milliseconds,
+ * or as soon as {@code sizeThreshold} transactions are waiting. At most {@code maxQueued}
+ * transactions wait for sending, newer ones are dropped.
+ */
+public class HttpSink implements TransactionSink {
+    private static final Log log = LogFactory.getLog(HttpSink.class);
+
+    public static final String TYPE = "http";
+    public static final String URI_PROPERTY = "uri";
+    public static final String API_KEY_PROPERTY = "apiKey";
+    public static final String INTERVAL_PROPERTY = "interval";
+    public static final String SIZE_THRESHOLD_PROPERTY = "sizeThreshold";
+    public static final String MAX_QUEUED_PROPERTY = "maxQueued";
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000L;
+    public static final int DEFAULT_SIZE_THRESHOLD = 100;
+    public static final int DEFAULT_MAX_QUEUED = 100000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final ConcurrentLinkedQueue<Transaction> queue = new ConcurrentLinkedQueue<Transaction>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private URL url;
+    private String apiKey;
+    private int sizeThreshold = DEFAULT_SIZE_THRESHOLD;
+    private int maxQueued = DEFAULT_MAX_QUEUED;
+    private ScheduledExecutorService executor;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            flush();
+        }
+    };
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public void init(Map<String, String> properties, Agent agent) {
+        String uri = SinkProperties.getRequired(properties, URI_PROPERTY, TYPE);
+        try {
+            url = new URL(uri);
+        } catch (MalformedURLException e) {
+            throw new InvalidAgentConfigException("Invalid sink uri: " + uri, e);
+        }
+        apiKey = properties.get(API_KEY_PROPERTY);
+        long interval = SinkProperties.getPositiveLong(properties, INTERVAL_PROPERTY, DEFAULT_INTERVAL_MILLIS);
+        sizeThreshold = (int) Math.min(Integer.MAX_VALUE,
+                SinkProperties.getPositiveLong(properties, SIZE_THRESHOLD_PROPERTY, DEFAULT_SIZE_THRESHOLD));
+        maxQueued = (int) Math.min(Integer.MAX_VALUE,
+                SinkProperties.getPositiveLong(properties, MAX_QUEUED_PROPERTY, DEFAULT_MAX_QUEUED));
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aino-http-sink");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(flushTask, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void send(Transaction transaction) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        queue.offer(transaction);
+        if (queued.get() >= sizeThreshold && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(flushTask);
+            } catch (RejectedExecutionException e) {
+                // closed, the transaction is sent by close()
+            }
+        }
+    }
+
+    /**
+     * Sends all queued transactions. Called by the background thread.
+     */
+    void flush() {
+        List<Transaction> batch = new ArrayList<Transaction>();
+        while (true) {
+            batch.clear();
+            Transaction transaction;
+            while (batch.size() < sizeThreshold && (transaction = queue.poll()) != null) {
+                batch.add(transaction);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            queued.addAndGet(-batch.size());
+            post(batch);
+        }
+    }
+
+    private void post(List<Transaction> batch) {
+        StringBuilder sb = new StringBuilder(512 * batch.size());
+        sb.append("{\"transactions\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            TransactionJson.append(sb, batch.get(i));
+        }
+        sb.append("]}");
+        byte[] body = sb.toString().getBytes(UTF_8);
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            if (apiKey != null) {
+                connection.setRequestProperty("Authorization", "apikey " + apiKey);
+            }
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            if (status >= 200 && status < 300) {
+                sentCount.addAndGet(batch.size());
+            } else {
+                failedCount.addAndGet(batch.size());
+                log.error("Sink " + url + " responded with HTTP status " + status);
+            }
+        } catch (IOException e) {
+            failedCount.addAndGet(batch.size());
+            log.error("Error occurred while sending transactions to " + url, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // discard the response
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Sink " + url + " did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+
+/**
+ * Sink keeping the latest transactions in memory. Meant for tests and benchmarks,
+ * where the mediators should be measured without the cost of sending the transactions.
+ */
+public class InMemorySink implements TransactionSink {
+
+    public static final String TYPE = "memory";
+    public static final String CAPACITY_PROPERTY = "capacity";
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final ArrayDeque<Transaction> transactions = new ArrayDeque<Transaction>();
+    private final AtomicLong count = new AtomicLong();
+    private int capacity = DEFAULT_CAPACITY;
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public void init(Map<String, String> properties, Agent agent) {
+        capacity = (int) Math.min(Integer.MAX_VALUE,
+                SinkProperties.getPositiveLong(properties, CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    @Override
+    public void send(Transaction transaction) {
+        count.incrementAndGet();
+        synchronized (transactions) {
+            if (transactions.size() >= capacity) {
+                transactions.pollFirst();
+            }
+            transactions.addLast(transaction);
+        }
+    }
+
+    /**
+     * Returns the retained transactions, oldest first.
+     *
+     * @return at most capacity latest transactions
+     */
+    public List<Transaction> getTransactions() {
+        synchronized (transactions) {
+            return new ArrayList<Transaction>(transactions);
+        }
+    }
+
+    /**
+     * Returns the number of transactions sent to this sink, including the ones no longer retained.
+     *
+     * @return transaction count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Removes the retained transactions.
+     */
+    public void clear() {
+        synchronized (transactions) {
+            transactions.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+import io.aino.agents.core.config.InvalidAgentConfigException;
+
+/**
+ * Sink writing the transactions to a local file, one JSON object per line.
+ * When the file would grow over {@code maxFileBytes} it is renamed to {@code <file>.1},
+ * the previous {@code <file>.1} to {@code <file>.2} and so on, keeping at most {@code maxFiles} old files.
+ * Lines are buffered in memory and written to the file every {@code flushInterval} milliseconds,
+ * when the buffer is full and when the sink is closed.
+ */
+public class RollingFileSink implements TransactionSink {
+    private static final Log log = LogFactory.getLog(RollingFileSink.class);
+
+    public static final String TYPE = "file";
+    public static final String FILE_PROPERTY = "file";
+    public static final String MAX_FILE_BYTES_PROPERTY = "maxFileBytes";
+    public static final String MAX_FILES_PROPERTY = "maxFiles";
+    public static final String FLUSH_INTERVAL_PROPERTY = "flushInterval";
+    public static final long DEFAULT_MAX_FILE_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 5;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private File file;
+    private long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+    private int maxFiles = DEFAULT_MAX_FILES;
+
+    private OutputStream out;
+    private long fileBytes;
+    private final StringBuilder line = new StringBuilder(512);
+    private ScheduledExecutorService executor;
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public synchronized void init(Map<String, String> properties, Agent agent) {
+        file = new File(SinkProperties.getRequired(properties, FILE_PROPERTY, TYPE));
+        maxFileBytes = SinkProperties.getPositiveLong(properties, MAX_FILE_BYTES_PROPERTY, DEFAULT_MAX_FILE_BYTES);
+        maxFiles = (int) Math.min(Integer.MAX_VALUE,
+                SinkProperties.getPositiveLong(properties, MAX_FILES_PROPERTY, DEFAULT_MAX_FILES));
+        long flushInterval = SinkProperties.getPositiveLong(properties, FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new InvalidAgentConfigException("Unable to open transaction sink file " + file, e);
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aino-file-sink");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void open() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        out = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_BYTES);
+        fileBytes = file.length();
+    }
+
+    @Override
+    public synchronized void send(Transaction transaction) {
+        if (out == null) {
+            return;
+        }
+        line.setLength(0);
+        TransactionJson.append(line, transaction);
+        line.append('\n');
+        byte[] bytes = line.toString().getBytes(UTF_8);
+        try {
+            if (fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) {
+                roll();
+            }
+            out.write(bytes);
+            fileBytes += bytes.length;
+        } catch (IOException e) {
+            log.error("Error occurred while writing a transaction to " + file, e);
+        }
+    }
+
+    private void roll() throws IOException {
+        OutputStream current = out;
+        // If the new file cannot be opened, the sink stops writing instead of writing to a closed stream.
+        out = null;
+        current.close();
+        File oldest = rolledFile(maxFiles);
+        if (oldest.exists() && !oldest.delete()) {
+            log.warn("Unable to delete " + oldest);
+        }
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File rolled = rolledFile(i);
+            if (rolled.exists() && !rolled.renameTo(rolledFile(i + 1))) {
+                log.warn("Unable to rename " + rolled);
+            }
+        }
+        if (!file.renameTo(rolledFile(1))) {
+            log.warn("Unable to rename " + file);
+        }
+        open();
+    }
+
+    private File rolledFile(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+
+    /**
+     * Writes the buffered lines to the file. Called by the background thread.
+     */
+    synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.error("Error occurred while writing transactions to " + file, e);
+        }
+    }
+
+    /**
+     * Returns the file currently written to.
+     *
+     * @return sink file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing " + file, e);
+        }
+        out = null;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import io.aino.agents.core.config.InvalidAgentConfigException;
+
+/**
+ * Helpers for reading the attributes of the {@code sink} element.
+ */
+final class SinkProperties {
+
+    private SinkProperties() {
+    }
+
+    static String getRequired(Map<String, String> properties, String name, String type) {
+        String value = properties.get(name);
+        if (StringUtils.isEmpty(value)) {
+            throw new InvalidAgentConfigException("Sink of type " + type + " must have attribute " + name + ".");
+        }
+        return value;
+    }
+
+    static long getPositiveLong(Map<String, String> properties, String name, long defaultValue) {
+        String value = properties.get(name);
+        if (StringUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new InvalidAgentConfigException("Attribute " + name + " must be a positive integer: " + value);
+    }
+}
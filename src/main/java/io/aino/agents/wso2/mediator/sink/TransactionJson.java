@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.util.List;
+import java.util.Map;
+
+import io.aino.agents.core.Transaction;
+
+/**
+ * Writes transactions in the JSON format of the aino.io API.
+ * Metadata is not included, as it cannot be read from the transaction.
+ */
+final class TransactionJson {
+
+    private TransactionJson() {
+    }
+
+    /**
+     * Appends a transaction as a JSON object.
+     *
+     * @param sb builder to append to
+     * @param transaction transaction to write
+     */
+    static void append(StringBuilder sb, Transaction transaction) {
+        sb.append('{');
+        appendMember(sb, "from", transaction.getFromKey(), false);
+        appendMember(sb, "to", transaction.getToKey(), true);
+        appendMember(sb, "status", transaction.getStatus(), true);
+        sb.append(",\"timestamp\":").append(transaction.getTimestamp());
+        appendMember(sb, "operation", transaction.getOperationKey(), true);
+        appendMember(sb, "message", transaction.getMessage(), true);
+        appendMember(sb, "flowId", transaction.getFlowId(), true);
+        appendMember(sb, "payloadType", transaction.getPayloadTypeKey(), true);
+        sb.append(",\"ids\":[");
+        Map<String, List<String>> ids = transaction.getIds();
+        if (ids != null) {
+            boolean first = true;
+            for (Map.Entry<String, List<String>> idsOfType : ids.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append("{\"idType\":");
+                appendQuoted(sb, idsOfType.getKey());
+                sb.append(",\"values\":[");
+                List<String> values = idsOfType.getValue();
+                for (int i = 0; i < values.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    appendQuoted(sb, values.get(i));
+                }
+                sb.append("]}");
+            }
+        }
+        sb.append("]}");
+    }
+
+    private static void appendMember(StringBuilder sb, String name, String value, boolean separator) {
+        if (separator) {
+            sb.append(',');
+        }
+        sb.append('"').append(name).append("\":");
+        appendQuoted(sb, value);
+    }
+
+    private static void appendQuoted(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00");
+                        sb.append(Character.forDigit(c >> 4, 16));
+                        sb.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+}
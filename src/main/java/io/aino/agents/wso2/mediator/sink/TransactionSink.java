@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.util.Map;
+
+import io.aino.agents.core.Agent;
+import io.aino.agents.core.Transaction;
+
+/**
+ * Destination of the transactions of ainoLog mediators.
+ *
+ * Implementations are discovered with {@link java.util.ServiceLoader}, so a new sink is added by
+ * listing its class in {@code META-INF/services/io.aino.agents.wso2.mediator.sink.TransactionSink}.
+ * Sinks are configured in the {@code sinks} element of ainoLogMediatorConfig.xml. A new instance is
+ * created for every configured sink, so the constructor must be public, take no arguments and be cheap.
+ */
+public interface TransactionSink {
+
+    /**
+     * Returns the name used in the {@code type} attribute of the {@code sink} element.
+     *
+     * @return sink type
+     */
+    String getType();
+
+    /**
+     * Initializes the sink.
+     *
+     * @param properties attributes of the {@code sink} element
+     * @param agent aino agent, used for creating transactions
+     * @throws io.aino.agents.core.config.InvalidAgentConfigException if the properties are invalid
+     */
+    void init(Map<String, String> properties, Agent agent);
+
+    /**
+     * Sends a transaction. Called concurrently by the mediating threads, so must not block for long.
+     *
+     * @param transaction transaction to send
+     */
+    void send(Transaction transaction);
+
+    /**
+     * Sends or writes the pending transactions and releases the resources of the sink.
+     */
+    void close();
+}
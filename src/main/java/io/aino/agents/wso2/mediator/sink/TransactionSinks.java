@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.aino.agents.core.config.InvalidAgentConfigException;
+
+/**
+ * Configured {@link TransactionSink}s and the artifacts routed to them.
+ */
+public class TransactionSinks {
+    private static final Log log = LogFactory.getLog(TransactionSinks.class);
+
+    private final Map<String, TransactionSink> sinks = new LinkedHashMap<String, TransactionSink>();
+    private final Map<String, TransactionSink> artifactSinks = new LinkedHashMap<String, TransactionSink>();
+    private TransactionSink defaultSink;
+
+    /**
+     * Creates a new, uninitialized sink of the given type.
+     *
+     * @param type sink type, see {@link TransactionSink#getType()}
+     * @return new sink
+     * @throws InvalidAgentConfigException if no sink of the type is registered
+     */
+    public static TransactionSink newSink(String type) {
+        Iterator<TransactionSink> providers = ServiceLoader.load(TransactionSink.class,
+                TransactionSink.class.getClassLoader()).iterator();
+        List<String> types = new ArrayList<String>();
+        while (true) {
+            TransactionSink sink;
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                sink = providers.next();
+            } catch (ServiceConfigurationError e) {
+                log.warn("Unable to load a transaction sink: " + e.getMessage());
+                continue;
+            }
+            if (sink.getType().equals(type)) {
+                return sink;
+            }
+            types.add(sink.getType());
+        }
+        throw new InvalidAgentConfigException("Unknown sink type: " + type + ". Valid types are " + types + ".");
+    }
+
+    /**
+     * Adds a sink.
+     *
+     * @param name name of the sink
+     * @param sink initialized sink
+     */
+    public void addSink(String name, TransactionSink sink) {
+        if (sinks.containsKey(name)) {
+            throw new InvalidAgentConfigException("Duplicate sink name: " + name);
+        }
+        sinks.put(name, sink);
+    }
+
+    /**
+     * Routes the transactions of an artifact to a sink.
+     *
+     * @param artifactName name of the proxy service, API, sequence, ...
+     * @param sinkName name of an added sink
+     */
+    public void routeArtifact(String artifactName, String sinkName) {
+        artifactSinks.put(artifactName, requireSink(sinkName));
+    }
+
+    /**
+     * Sets the sink of the artifacts that are not routed to a sink of their own.
+     *
+     * @param sinkName name of an added sink
+     */
+    public void setDefaultSink(String sinkName) {
+        defaultSink = requireSink(sinkName);
+    }
+
+    private TransactionSink requireSink(String sinkName) {
+        TransactionSink sink = sinks.get(sinkName);
+        if (sink == null) {
+            throw new InvalidAgentConfigException("Unknown sink: " + sinkName);
+        }
+        return sink;
+    }
+
+    /**
+     * Returns the sink with the given name.
+     *
+     * @param name name of the sink
+     * @return sink, or null if there is no such sink
+     */
+    public TransactionSink getSinkByName(String name) {
+        return sinks.get(name);
+    }
+
+    /**
+     * Returns the sink the transactions of an artifact are sent to.
+     *
+     * @param artifactName name of the proxy service, API, sequence, ...
+     * @return sink of the artifact, the default sink, or null if transactions are added to the agent
+     */
+    public TransactionSink getSink(String artifactName) {
+        TransactionSink sink = artifactName == null ? null : artifactSinks.get(artifactName);
+        return sink == null ? defaultSink : sink;
+    }
+
+    /**
+     * Returns the names of the configured sinks.
+     *
+     * @return sink names in configuration order
+     */
+    public List<String> getSinkNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(sinks.keySet()));
+    }
+
+    /**
+     * Closes all sinks.
+     */
+    public void close() {
+        for (Map.Entry<String, TransactionSink> sink : sinks.entrySet()) {
+            try {
+                sink.getValue().close();
+            } catch (RuntimeException e) {
+                log.error("Error occurred while closing transaction sink " + sink.getKey(), e);
+            }
+        }
+    }
+}
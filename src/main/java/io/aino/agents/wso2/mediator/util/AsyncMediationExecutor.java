@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.ASYNC_QUEUE_SIZE;
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.ASYNC_WORKER_COUNT;
+
+/**
+ * Bounded worker pool used by {@link io.aino.agents.wso2.mediator.AinoMediator} in asynchronous mode.
+ * When the queue is full the task is run on the mediating thread, so transactions are
+ * never dropped, mediation just falls back to synchronous speed. Tasks arriving after
+ * {@link #shutdown(long)} are run on the mediating thread as well.
+ */
+public class AsyncMediationExecutor {
+
+    private static volatile AsyncMediationExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param workerCount number of worker threads
+     * @param queueSize maximum number of tasks waiting for a worker
+     */
+    public AsyncMediationExecutor(int workerCount, int queueSize) {
+        this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory(), new CallerRuns());
+    }
+
+    /**
+     * Starts the executor shared by all mediators, unless one is already running.
+     *
+     * @param workerCount number of worker threads
+     * @param queueSize maximum number of tasks waiting for a worker
+     * @return shared executor
+     */
+    public static synchronized AsyncMediationExecutor start(int workerCount, int queueSize) {
+        if (instance == null || instance.isShutdown()) {
+            instance = new AsyncMediationExecutor(workerCount, queueSize);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the executor shared by all mediators, started with the default settings if none is running.
+     *
+     * @return shared executor
+     */
+    public static AsyncMediationExecutor getInstance() {
+        AsyncMediationExecutor current = instance;
+        return current != null ? current : start(ASYNC_WORKER_COUNT, ASYNC_QUEUE_SIZE);
+    }
+
+    /**
+     * Executes the task on a worker thread, or on the calling thread if the queue is full.
+     *
+     * @param task task to execute
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Returns the number of tasks waiting for a worker.
+     *
+     * @return queue size
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting new tasks and waits for the queued ones to finish.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if all tasks finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tells if the executor has been shut down.
+     *
+     * @return true after {@link #shutdown(long)}
+     */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Runs a rejected task on the calling thread, also once the executor is shut down.
+     * {@link ThreadPoolExecutor.CallerRunsPolicy} would discard it then.
+     */
+    private static class CallerRuns implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            task.run();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "aino-mediator-async-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * OutputStream that keeps only a digest and the number of bytes written to it.
+ * Serializing a payload into it hashes the payload without holding a copy of it.
+ */
+public abstract class DigestingOutputStream extends OutputStream {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private long byteCount;
+
+    /**
+     * Creates a stream computing the SHA-256 digest.
+     *
+     * @return digesting stream
+     */
+    public static DigestingOutputStream sha256() {
+        try {
+            return new MessageDigestOutputStream(MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a stream computing the 64-bit FNV-1a hash, which is not cryptographic but much cheaper.
+     *
+     * @return digesting stream
+     */
+    public static DigestingOutputStream fnv1a64() {
+        return new Fnv1a64OutputStream();
+    }
+
+    @Override
+    public void write(int b) {
+        update((byte) b);
+        byteCount++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        update(bytes, offset, length);
+        byteCount += length;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return byte count
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the digest of the bytes written as lower case hex.
+     *
+     * @return hex digest
+     */
+    public String getDigest() {
+        byte[] digest = digest();
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    protected abstract void update(byte b);
+
+    protected abstract void update(byte[] bytes, int offset, int length);
+
+    protected abstract byte[] digest();
+
+    private static class MessageDigestOutputStream extends DigestingOutputStream {
+        private final MessageDigest messageDigest;
+
+        MessageDigestOutputStream(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        protected void update(byte b) {
+            messageDigest.update(b);
+        }
+
+        @Override
+        protected void update(byte[] bytes, int offset, int length) {
+            messageDigest.update(bytes, offset, length);
+        }
+
+        @Override
+        protected byte[] digest() {
+            return messageDigest.digest();
+        }
+    }
+
+    private static class Fnv1a64OutputStream extends DigestingOutputStream {
+        private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long PRIME = 0x100000001b3L;
+
+        private long hash = OFFSET_BASIS;
+
+        @Override
+        protected void update(byte b) {
+            hash = (hash ^ (b & 0xff)) * PRIME;
+        }
+
+        @Override
+        protected void update(byte[] bytes, int offset, int length) {
+            long h = hash;
+            for (int i = offset; i < offset + length; i++) {
+                h = (h ^ (bytes[i] & 0xff)) * PRIME;
+            }
+            hash = h;
+        }
+
+        @Override
+        protected byte[] digest() {
+            byte[] digest = new byte[8];
+            for (int i = 0; i < 8; i++) {
+                digest[i] = (byte) (hash >>> (56 - i * 8));
+            }
+            return digest;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+/**
+ * Head sampling of flows.
+ *
+ * The keep or drop decision is a pure function of the flow id, so every ainoLog mediator
+ * with the same sample rate keeps or drops the whole flow, also across ESB nodes.
+ * With different rates, the flows kept at a lower rate are a subset of the flows kept at a higher rate.
+ */
+public final class FlowSampler {
+
+    /**
+     * Sampler keeping every flow.
+     */
+    public static final FlowSampler ALL = new FlowSampler(1.0);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final double HASH_RANGE = 1L << 53;
+
+    private final double rate;
+    private final long threshold;
+
+    private FlowSampler(double rate) {
+        this.rate = rate;
+        this.threshold = (long) (rate * HASH_RANGE);
+    }
+
+    /**
+     * Returns a sampler keeping the given share of flows.
+     *
+     * @param rate share of kept flows, from 0.0 (none) to 1.0 (all)
+     * @return sampler
+     */
+    public static FlowSampler forRate(double rate) {
+        if (rate < 0.0 || rate > 1.0 || Double.isNaN(rate)) {
+            throw new IllegalArgumentException("Sample rate must be between 0.0 and 1.0: " + rate);
+        }
+        return rate == 1.0 ? ALL : new FlowSampler(rate);
+    }
+
+    /**
+     * Tells whether the flow is kept.
+     *
+     * @param flowId id of the flow
+     * @return true if the transactions of the flow are kept
+     */
+    public boolean isSampled(String flowId) {
+        if (rate >= 1.0) {
+            return true;
+        }
+        if (rate <= 0.0 || flowId == null) {
+            return false;
+        }
+        return (hash(flowId) >>> 11) < threshold;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the characters of the flow id, finished with the MurmurHash3 mixer
+     * so that similar flow ids (sequential message ids) spread evenly.
+     */
+    static long hash(String flowId) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < flowId.length(); i++) {
+            h ^= flowId.charAt(i);
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -21,22 +21,46 @@ import org.apache.synapse.util.xpath.SynapseXPath;
 /**
  * Class for IDs.
  * Ids are {@link SynapseXPath}, which is used to get the Ids from the message.
+ * The number and total size of the ids can be limited, see {@link IdCollector}.
  */
 public class Id {
 
 
     private final String typeKey;
     private final SynapseXPath xPath;
+    private final String cacheKey;
+    private final PropertyExpression propertyExpression;
+    private final int maxCount;
+    private final int maxBytes;
+    private final boolean distinct;
 
     /**
-     * Constructor.
+     * Constructor of ids without limits.
      *
      * @param typeKey Id type key
      * @param xPath xpath of the ids
      */
     public Id(String typeKey, SynapseXPath xPath) {
+        this(typeKey, xPath, 0, 0, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param typeKey Id type key
+     * @param xPath xpath of the ids
+     * @param maxCount maximum number of ids, 0 for no limit
+     * @param maxBytes maximum total UTF-8 length of the ids, 0 for no limit
+     * @param distinct true to leave out repeated ids
+     */
+    public Id(String typeKey, SynapseXPath xPath, int maxCount, int maxBytes, boolean distinct) {
         this.typeKey = typeKey;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.distinct = distinct;
         this.xPath = xPath;
+        this.cacheKey = XPathResultCache.getCacheKey(xPath);
+        this.propertyExpression = PropertyExpression.compile(xPath);
     }
 
     /**
@@ -57,4 +81,49 @@ public class Id {
         return xPath;
     }
 
+    /**
+     * Returns the key of the xpath in {@link XPathResultCache}.
+     *
+     * @return cache key, or null if the results are not cached
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    /**
+     * Returns the xpath compiled to a property expression, if it only reads a property or a header.
+     *
+     * @return property expression, or null if the xpath is evaluated with Jaxen
+     */
+    public PropertyExpression getPropertyExpression() {
+        return propertyExpression;
+    }
+
+    /**
+     * Returns the maximum number of ids.
+     *
+     * @return maximum count, 0 if not limited
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Returns the maximum total UTF-8 length of the ids.
+     *
+     * @return maximum bytes, 0 if not limited
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Tells if repeated ids are left out.
+     *
+     * @return true if the ids are distinct
+     */
+    public boolean isDistinct() {
+        return distinct;
+    }
+
 }
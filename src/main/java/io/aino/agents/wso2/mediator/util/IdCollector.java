@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the ids of one {@link Id} within its limits.
+ *
+ * Empty values are skipped. With {@link Id#isDistinct()} repeated values are skipped as well,
+ * using an open addressing hash set, so that no extra collection is kept besides the id list.
+ * Once {@link Id#getMaxCount()} ids or {@link Id#getMaxBytes()} UTF-8 bytes are collected, further
+ * values are refused and the collector is marked truncated.
+ */
+public final class IdCollector {
+
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    private final Id id;
+    private final List<String> ids;
+    private int bytes;
+    private boolean truncated;
+
+    private String[] table;
+    private int tableMask;
+
+    /**
+     * Constructor.
+     *
+     * @param id id definition with the limits
+     * @param expectedSize expected number of values, used to size the id list
+     */
+    public IdCollector(Id id, int expectedSize) {
+        this.id = id;
+        int capacity = id.getMaxCount() > 0 ? Math.min(expectedSize, id.getMaxCount()) : expectedSize;
+        this.ids = new ArrayList<String>(Math.max(capacity, 1));
+        if (id.isDistinct()) {
+            this.table = new String[INITIAL_TABLE_SIZE];
+            this.tableMask = INITIAL_TABLE_SIZE - 1;
+        }
+    }
+
+    /**
+     * Adds the string value of an expression that does not select nodes, such as {@code string(...)}.
+     * Unlike values of selected nodes, an empty value is kept as an id.
+     *
+     * @param value string value of the expression
+     * @return false if a limit has been reached and no more values are accepted
+     */
+    public boolean addStringValue(String value) {
+        if (value.isEmpty() && !truncated) {
+            ids.add(value);
+            return true;
+        }
+        return add(value);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value value to add, null and empty values are skipped
+     * @return false if a limit has been reached and no more values are accepted
+     */
+    public boolean add(String value) {
+        if (truncated) {
+            return false;
+        }
+        if (value == null || value.isEmpty()) {
+            return true;
+        }
+        if (table != null && contains(value)) {
+            return true;
+        }
+        if (id.getMaxCount() > 0 && ids.size() >= id.getMaxCount()) {
+            truncated = true;
+            return false;
+        }
+        if (id.getMaxBytes() > 0) {
+            int length = Utf8.length(value);
+            if (bytes + length > id.getMaxBytes()) {
+                truncated = true;
+                return false;
+            }
+            bytes += length;
+        }
+        ids.add(value);
+        if (table != null) {
+            insert(value);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the collected ids.
+     *
+     * @return ids in the order they were added
+     */
+    public List<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Tells if values were refused because of a limit.
+     *
+     * @return true if the ids were truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private boolean contains(String value) {
+        int index = mix(value.hashCode()) & tableMask;
+        String entry;
+        while ((entry = table[index]) != null) {
+            if (entry.equals(value)) {
+                return true;
+            }
+            index = (index + 1) & tableMask;
+        }
+        return false;
+    }
+
+    private void insert(String value) {
+        // Keeps the load factor at most 1/2, so probe sequences stay short.
+        if (ids.size() * 2 > table.length) {
+            String[] old = table;
+            table = new String[old.length * 2];
+            tableMask = table.length - 1;
+            for (String entry : old) {
+                if (entry != null) {
+                    put(entry);
+                }
+            }
+        }
+        put(value);
+    }
+
+    private void put(String value) {
+        int index = mix(value.hashCode()) & tableMask;
+        while (table[index] != null) {
+            index = (index + 1) & tableMask;
+        }
+        table[index] = value;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
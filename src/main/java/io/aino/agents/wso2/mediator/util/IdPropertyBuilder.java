@@ -17,13 +17,16 @@
 package io.aino.agents.wso2.mediator.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import javax.xml.stream.XMLStreamException;
+
 import org.apache.axiom.om.OMAttribute;
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMException;
 import org.apache.axiom.om.OMText;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
@@ -34,11 +37,20 @@ import io.aino.agents.core.Transaction;
 /**
  * Class for evaluation list of {@link Id}s against message context.
  * Adds extracted Ids to {@link Transaction}.
+ *
+ * Ids with simple location paths (see {@link StreamingPath}) are extracted together in one
+ * streaming pass over an unbuilt envelope, ids read from a property or a header (see {@link PropertyExpression})
+ * are read directly and other ids are evaluated with XPath. The ids are collected within the limits
+ * of each {@link Id} by an {@link IdCollector}, and truncated ids are returned as the values of the
+ * {@code truncatedIds} metadata of the transaction.
  */
 public class IdPropertyBuilder {
     private static final Log log = LogFactory.getLog(IdPropertyBuilder.class);
 
     private final List<Id> idList;
+    private final StreamingPath[] streamingPaths;
+    private final int[] streamingIndexes;
+    private final String streamingCacheKey;
 
     /**
      * Constructor.
@@ -47,6 +59,27 @@ public class IdPropertyBuilder {
      */
     public IdPropertyBuilder(List<Id> idList){
         this.idList = idList;
+
+        List<StreamingPath> paths = new ArrayList<StreamingPath>();
+        StringBuilder cacheKey = new StringBuilder("streaming ids");
+        int size = idList == null ? 0 : idList.size();
+        this.streamingIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            Id id = idList.get(i);
+            StreamingPath path = id.getCacheKey() == null ? null : StreamingPath.compile(id.getXPath());
+            if (path == null) {
+                streamingIndexes[i] = -1;
+            } else {
+                streamingIndexes[i] = paths.size();
+                paths.add(path);
+                cacheKey.append(' ').append(id.getCacheKey())
+                        .append(' ').append(id.getMaxCount())
+                        .append(' ').append(id.getMaxBytes())
+                        .append(' ').append(id.isDistinct());
+            }
+        }
+        this.streamingPaths = paths.toArray(new StreamingPath[paths.size()]);
+        this.streamingCacheKey = cacheKey.toString();
     }
 
     /**
@@ -54,51 +87,108 @@ public class IdPropertyBuilder {
      *
      * @param context message context to evaluate
      * @param transaction log entry to add the extracted ids
+     * @return values of the {@code truncatedIds} metadata, one for each id type with truncated ids
      */
-    public void buildToContext(MessageContext context, Transaction transaction) {
+    public List<String> buildToContext(MessageContext context, Transaction transaction) {
         if (CollectionUtils.isEmpty(this.idList) || null == context || null == transaction){
-            return;
+            return Collections.emptyList();
         }
 
-        populateTransactionIds(context, transaction);
+        return populateTransactionIds(context, transaction);
     }
 
-    private void populateTransactionIds(MessageContext context, Transaction transaction) {
-        for (Id id : this.idList) {
-            try {
-                Object evaluationResult = id.getXPath().evaluate(context);
-                List<String> transactionIdList = getTransactionIdList(evaluationResult);
-                transaction.addIdsByTypeKey(id.getTypeKey(), transactionIdList);
-            } catch (JaxenException e) {
-                StringBuilder sb = new StringBuilder("Error while resolving the ID");
-                sb.append(" XPath expression: ").append(id.getXPath().toString());
-                sb.append(" Exception message: ").append(e.getMessage());
-                log.warn(sb.toString(), e);
+    private List<String> populateTransactionIds(MessageContext context, Transaction transaction) {
+        List<String> truncated = Collections.emptyList();
+        IdCollector[] streamedIds = extractStreamingIds(context);
+        for (int i = 0; i < this.idList.size(); i++) {
+            Id id = this.idList.get(i);
+            IdCollector collector;
+            if (streamedIds != null && streamingIndexes[i] >= 0) {
+                collector = streamedIds[streamingIndexes[i]];
+            } else if (id.getPropertyExpression() != null) {
+                collector = collectIds(id, id.getPropertyExpression().evaluate(context));
+            } else {
+                try {
+                    collector = collectIds(id, XPathResultCache.evaluate(id.getXPath(), id.getCacheKey(), context));
+                } catch (JaxenException e) {
+                    StringBuilder sb = new StringBuilder("Error while resolving the ID");
+                    sb.append(" XPath expression: ").append(id.getXPath().toString());
+                    sb.append(" Exception message: ").append(e.getMessage());
+                    log.warn(sb.toString(), e);
+                    continue;
+                }
+            }
+            transaction.addIdsByTypeKey(id.getTypeKey(), collector.getIds());
+            if (collector.isTruncated()) {
+                if (truncated.isEmpty()) {
+                    truncated = new ArrayList<String>();
+                }
+                truncated.add(id.getTypeKey() + ": first " + collector.getIds().size() + " ids");
             }
         }
+        return truncated;
     }
 
-    @SuppressWarnings("unchecked")
-    private List<String> getTransactionIdList(Object evaluationResult) {
-        List<String> transactionIdList = new ArrayList<String>();
-        if (evaluationResult instanceof List) {
-            List<String> entryList = getIdList((List<Object>) evaluationResult);
-            transactionIdList.addAll(entryList);
-        } else {
-            transactionIdList.add(String.valueOf(evaluationResult));
+    /**
+     * Extracts the ids with streaming paths in a single pass over the bytes of an unbuilt envelope
+     * (see {@link UnbuiltEnvelope}), so the message stays unbuilt. A body that is already built is
+     * cheaper to evaluate with XPath.
+     *
+     * The limits of each id are applied while reading, so a path stops being read once its limit is
+     * reached and only the limited ids are cached.
+     *
+     * @return collected ids in the order of the streaming paths, or null if they must be evaluated with XPath
+     */
+    private IdCollector[] extractStreamingIds(MessageContext context) {
+        if (streamingPaths.length == 0) {
+            return null;
         }
-        return transactionIdList;
+
+        Object cached = XPathResultCache.get(context, streamingCacheKey);
+        if (cached != null) {
+            return (IdCollector[]) cached;
+        }
+
+        try {
+            byte[] envelope = UnbuiltEnvelope.getBytes(context);
+            if (envelope == null) {
+                return null;
+            }
+            IdCollector[] streamedIds = new IdCollector[streamingPaths.length];
+            for (int i = 0; i < this.idList.size(); i++) {
+                if (streamingIndexes[i] >= 0) {
+                    streamedIds[streamingIndexes[i]] = new IdCollector(this.idList.get(i), 16);
+                }
+            }
+            StreamingIdExtractor.extract(UnbuiltEnvelope.createReader(envelope), streamingPaths, streamedIds);
+            XPathResultCache.put(context, streamingCacheKey, streamedIds);
+            return streamedIds;
+        } catch (XMLStreamException e) {
+            log.warn("Error while streaming the IDs, falling back to XPath evaluation. Exception message: " + e.getMessage(), e);
+        } catch (OMException e) {
+            log.warn("Error while streaming the IDs, falling back to XPath evaluation. Exception message: " + e.getMessage(), e);
+        }
+        return null;
     }
 
-    private List<String> getIdList(List<Object> results) {
-        List<String> transactionIdList = new ArrayList<String>();
+    /**
+     * Collects the ids from an XPath result. Node-sets are read node by node, until a limit is reached.
+     */
+    @SuppressWarnings("unchecked")
+    private IdCollector collectIds(Id id, Object evaluationResult) {
+        if (!(evaluationResult instanceof List)) {
+            IdCollector collector = new IdCollector(id, 1);
+            collector.addStringValue(String.valueOf(evaluationResult));
+            return collector;
+        }
+        List<Object> results = (List<Object>) evaluationResult;
+        IdCollector collector = new IdCollector(id, results.size());
         for (Object result : results) {
-            String idString = getIdString(result);
-            if (StringUtils.isNotEmpty(idString)) {
-                transactionIdList.add(idString);
+            if (!collector.add(getIdString(result))) {
+                break;
             }
         }
-        return transactionIdList;
+        return collector;
     }
 
     private String getIdString(Object result) {
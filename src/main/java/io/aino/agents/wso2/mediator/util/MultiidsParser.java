@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass parser of multiids values.
+ *
+ * The grammar is {@code type=v1,v2||type2=v3}. Segments are separated by "||", the id type and
+ * the values of a segment by "=" and the values by ",". Segments without exactly one "="
+ * (not counting trailing ones) are skipped and trailing empty values are dropped.
+ * Only the id type and id strings are allocated.
+ */
+public final class MultiidsParser {
+
+    private static final String SEGMENT_SEPARATOR = "||";
+
+    /**
+     * Receives the parsed segments.
+     */
+    public interface Handler {
+        /**
+         * Called for each valid segment, in order.
+         *
+         * @param idType id type of the segment
+         * @param ids ids of the segment
+         */
+        void ids(String idType, List<String> ids);
+    }
+
+    private MultiidsParser() {
+    }
+
+    /**
+     * Parses the multiids value.
+     *
+     * @param multiids value to parse
+     * @param handler receiver of the segments
+     */
+    public static void parse(String multiids, Handler handler) {
+        int length = multiids.length();
+        int start = 0;
+        while (start < length) {
+            int end = multiids.indexOf(SEGMENT_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            parseSegment(multiids, start, end, handler);
+            start = end + SEGMENT_SEPARATOR.length();
+        }
+    }
+
+    private static void parseSegment(String multiids, int start, int end, Handler handler) {
+        while (end > start && multiids.charAt(end - 1) == '=') {
+            end--;
+        }
+
+        int equals = multiids.indexOf('=', start);
+        if (equals < 0 || equals >= end) {
+            return;
+        }
+        int secondEquals = multiids.indexOf('=', equals + 1);
+        if (secondEquals >= 0 && secondEquals < end) {
+            return;
+        }
+
+        handler.ids(multiids.substring(start, equals), parseIds(multiids, equals + 1, end));
+    }
+
+    private static List<String> parseIds(String multiids, int start, int end) {
+        List<String> ids = new ArrayList<String>();
+        int nonEmptyCount = 0;
+        int idStart = start;
+        while (idStart <= end) {
+            int comma = multiids.indexOf(',', idStart);
+            if (comma < 0 || comma > end) {
+                comma = end;
+            }
+            if (comma > idStart) {
+                ids.add(multiids.substring(idStart, comma));
+                nonEmptyCount = ids.size();
+            } else {
+                ids.add("");
+            }
+            idStart = comma + 1;
+        }
+
+        // trailing empty ids are dropped
+        while (ids.size() > nonEmptyCount) {
+            ids.remove(ids.size() - 1);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hash functions of the payload digest written to the transaction metadata.
+ */
+public enum PayloadDigest {
+    /**
+     * SHA-256, for audit.
+     */
+    SHA256("sha256"),
+    /**
+     * 64-bit FNV-1a, a cheaper non-cryptographic hash for deduplication.
+     */
+    FNV1A64("fnv1a64");
+
+    private static final Map<String, PayloadDigest> digests;
+
+    static {
+        digests = new HashMap<String, PayloadDigest>();
+
+        for (PayloadDigest digest : PayloadDigest.values()) {
+            digests.put(digest.digestString, digest);
+        }
+    }
+
+    /**
+     * Gets Enum member based on string representation.
+     *
+     * @param digestString digest string
+     * @return Enum member corresponding to digestString, or null
+     */
+    public static PayloadDigest getDigest(String digestString) {
+        return digests.get(digestString);
+    }
+
+    private final String digestString;
+
+    PayloadDigest(String digestString) {
+        this.digestString = digestString;
+    }
+
+    /**
+     * Creates a stream computing this digest.
+     *
+     * @return digesting stream
+     */
+    public DigestingOutputStream newOutputStream() {
+        if (this == SHA256) {
+            return DigestingOutputStream.sha256();
+        }
+        return DigestingOutputStream.fnv1a64();
+    }
+
+    @Override
+    public String toString() {
+        return digestString;
+    }
+}
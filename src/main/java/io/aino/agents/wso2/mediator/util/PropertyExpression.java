@@ -0,0 +1,216 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMDocument;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMText;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+/**
+ * Expression reading a single property or transport header, evaluated without Jaxen.
+ *
+ * The expressions {@code $ctx:name}, {@code $axis2:name}, {@code $trp:name}, {@code get-property('name')}
+ * and {@code get-property('scope', 'name')} with the scopes default, axis2 and transport are recognised.
+ * They are read straight from the message context and return the same values as {@link SynapseXPath}
+ * would. Other expressions, including get-property names with a special meaning in Synapse, are left to Jaxen.
+ */
+public final class PropertyExpression {
+
+    private static final String NAME = "([A-Za-z_][\\w.\\-]*)";
+    private static final String LITERAL = "\\s*(?:'([^']*)'|\"([^\"]*)\")\\s*";
+    private static final Pattern VARIABLE = Pattern.compile("\\$(ctx|axis2|trp):" + NAME);
+    private static final Pattern GET_PROPERTY = Pattern.compile("get-property\\(" + LITERAL + "(?:," + LITERAL + ")?\\)");
+
+    // Names get-property resolves from the message context fields instead of the properties.
+    private static final Set<String> SPECIAL_PROPERTY_NAMES = new HashSet<String>(Arrays.asList(
+            "To", "From", "Action", "FaultTo", "ReplyTo", "FAULT", "MESSAGE_FORMAT", "OperationName", "OperationNamespace"));
+
+    private enum Scope {
+        DEFAULT,
+        SYNAPSE,
+        AXIS2,
+        TRANSPORT,
+        SYSTEM_DATE,
+        SYSTEM_TIME,
+        MESSAGE_ID
+    }
+
+    private final String expression;
+    private final Scope scope;
+    private final String name;
+
+    private PropertyExpression(String expression, Scope scope, String name) {
+        this.expression = expression;
+        this.scope = scope;
+        this.name = name;
+    }
+
+    /**
+     * Compiles the expression of an XPath if it only reads a property or a transport header.
+     *
+     * @param xPath expression
+     * @return property expression, or null if the expression must be evaluated with Jaxen
+     */
+    public static PropertyExpression compile(SynapseXPath xPath) {
+        if (xPath == null || xPath.toString() == null) {
+            return null;
+        }
+        String expression = xPath.toString().trim();
+
+        Matcher variable = VARIABLE.matcher(expression);
+        if (variable.matches()) {
+            String prefix = variable.group(1);
+            Scope scope = "ctx".equals(prefix) ? Scope.SYNAPSE : "axis2".equals(prefix) ? Scope.AXIS2 : Scope.TRANSPORT;
+            return new PropertyExpression(expression, scope, variable.group(2));
+        }
+
+        Matcher getProperty = GET_PROPERTY.matcher(expression);
+        if (!getProperty.matches()) {
+            return null;
+        }
+        String first = getProperty.group(1) != null ? getProperty.group(1) : getProperty.group(2);
+        String second = getProperty.group(3) != null ? getProperty.group(3) : getProperty.group(4);
+        if (second == null) {
+            return compileDefault(expression, first);
+        }
+        if (second.isEmpty() || "SYSTEM_DATE".equals(second) || "SYSTEM_TIME".equals(second)) {
+            return compileDefault(expression, second);
+        }
+        if ("default".equals(first)) {
+            return compileDefault(expression, second);
+        } else if ("axis2".equals(first)) {
+            return new PropertyExpression(expression, Scope.AXIS2, second);
+        } else if ("transport".equals(first)) {
+            return new PropertyExpression(expression, Scope.TRANSPORT, second);
+        }
+        return null;
+    }
+
+    private static PropertyExpression compileDefault(String expression, String name) {
+        if (name.isEmpty() || SPECIAL_PROPERTY_NAMES.contains(name)) {
+            return null;
+        } else if ("SYSTEM_DATE".equals(name)) {
+            return new PropertyExpression(expression, Scope.SYSTEM_DATE, name);
+        } else if ("SYSTEM_TIME".equals(name)) {
+            return new PropertyExpression(expression, Scope.SYSTEM_TIME, name);
+        } else if ("MessageID".equals(name)) {
+            return new PropertyExpression(expression, Scope.MESSAGE_ID, name);
+        }
+        return new PropertyExpression(expression, Scope.DEFAULT, name);
+    }
+
+    /**
+     * Evaluates the expression. The result has the same form as the result of
+     * {@link SynapseXPath#evaluate(Object)}: a String, Number or Boolean, or a list of values.
+     *
+     * @param context message context
+     * @return evaluation result
+     */
+    public Object evaluate(MessageContext context) {
+        Object value = readValue(context);
+        List<?> values = value instanceof List ? (List<?>) value : Collections.singletonList(value);
+        if (values.size() == 1) {
+            Object first = values.get(0);
+            if (first instanceof String || first instanceof Number || first instanceof Boolean) {
+                return first;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates the expression to a String the way {@link SynapseXPath#stringValueOf(MessageContext)} does.
+     *
+     * @param context message context
+     * @return string value, or null if the property is not set
+     */
+    public String stringValueOf(MessageContext context) {
+        Object result = evaluate(context);
+        if (!(result instanceof List)) {
+            return result.toString();
+        }
+        List<?> values = (List<?>) result;
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (value == null && values.size() == 1) {
+                return null;
+            }
+            if (value instanceof OMText) {
+                sb.append(((OMText) value).getText());
+            } else if (value instanceof OMElement) {
+                String text = ((OMElement) value).getText();
+                sb.append(text.trim().length() == 0 ? value.toString() : text);
+            } else if (value instanceof OMDocument) {
+                sb.append(((OMDocument) value).getOMDocumentElement().toString());
+            } else if (value instanceof OMAttribute) {
+                sb.append(((OMAttribute) value).getAttributeValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    private Object readValue(MessageContext context) {
+        switch (scope) {
+            case SYNAPSE:
+                return context.getProperty(name);
+            case DEFAULT:
+                Object value = context.getProperty(name);
+                return value != null ? value : context.getEntry(name);
+            case AXIS2:
+                org.apache.axis2.context.MessageContext axis2MessageContext = getAxis2MessageContext(context);
+                return axis2MessageContext == null ? null : axis2MessageContext.getProperty(name);
+            case TRANSPORT:
+                axis2MessageContext = getAxis2MessageContext(context);
+                Object headers = axis2MessageContext == null ? null
+                        : axis2MessageContext.getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+                return headers instanceof Map ? ((Map<?, ?>) headers).get(name) : null;
+            case SYSTEM_DATE:
+                return new SimpleDateFormat().format(new Date());
+            case SYSTEM_TIME:
+                return Long.toString(System.currentTimeMillis());
+            case MESSAGE_ID:
+                return context.getMessageID();
+            default:
+                throw new IllegalStateException(scope.toString());
+        }
+    }
+
+    private static org.apache.axis2.context.MessageContext getAxis2MessageContext(MessageContext context) {
+        return context instanceof Axis2MessageContext ? ((Axis2MessageContext) context).getAxis2MessageContext() : null;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
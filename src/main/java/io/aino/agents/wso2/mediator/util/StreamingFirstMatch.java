@@ -0,0 +1,177 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Finds the first non-empty value selected by a {@link StreamingPath} in an XMLStreamReader.
+ *
+ * The value is the one {@link StreamingIdExtractor} would collect first, but reading stops as soon
+ * as it is known. An element value is known when the element ends and every element selected
+ * before it has ended empty; an attribute value is known at once. Only the text of the selected
+ * elements still open is kept.
+ */
+public final class StreamingFirstMatch {
+
+    private final StreamingPath path;
+
+    private String[] stackLocalNames = new String[16];
+    private String[] stackNamespaces = new String[16];
+    private int depth;
+
+    // Selected elements in document order, from the first one not known to be empty.
+    private final List<Candidate> candidates = new ArrayList<Candidate>();
+
+    private StreamingFirstMatch(StreamingPath path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads the stream until the first non-empty value selected by the path is found.
+     *
+     * @param reader reader positioned at the start of the document or of the root element
+     * @param path path to match
+     * @return first non-empty value, or null if the path selects none
+     * @throws XMLStreamException if reading the stream fails
+     */
+    public static String find(XMLStreamReader reader, StreamingPath path) throws XMLStreamException {
+        return new StreamingFirstMatch(path).read(reader);
+    }
+
+    private String read(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    push(reader.getLocalName(), nonNull(reader.getNamespaceURI()));
+                    if (depth == 1 && path.excludesDocumentElement(stackLocalNames[0], stackNamespaces[0])) {
+                        return null;
+                    }
+                    if (path.matches(stackLocalNames, stackNamespaces, depth)) {
+                        String value = startMatch(reader);
+                        if (value != null) {
+                            return value;
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    String value = endElement();
+                    if (value != null) {
+                        return value;
+                    }
+                    if (depth == 0) {
+                        return null;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    characters(reader);
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    return null;
+                default:
+                    break;
+            }
+            if (!reader.hasNext()) {
+                return null;
+            }
+            event = reader.next();
+        }
+    }
+
+    private String startMatch(XMLStreamReader reader) {
+        if (!path.isAttributePath()) {
+            candidates.add(new Candidate(depth));
+            return null;
+        }
+        String localName = path.getAttributeLocalName();
+        String namespace = path.getAttributeNamespace();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (localName.equals(reader.getAttributeLocalName(i))
+                    && namespace.equals(nonNull(reader.getAttributeNamespace(i)))) {
+                String value = reader.getAttributeValue(i);
+                return value == null || value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    private String endElement() {
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Candidate candidate = candidates.get(i);
+            if (candidate.depth == depth && !candidate.closed) {
+                candidate.closed = true;
+                break;
+            }
+        }
+        stackLocalNames[depth - 1] = null;
+        stackNamespaces[depth - 1] = null;
+        depth--;
+
+        // The first closed non-empty candidate wins once all candidates before it have closed empty.
+        while (!candidates.isEmpty() && candidates.get(0).closed) {
+            Candidate first = candidates.remove(0);
+            if (first.text.length() > 0) {
+                return first.text.toString();
+            }
+        }
+        return null;
+    }
+
+    private void characters(XMLStreamReader reader) {
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Candidate candidate = candidates.get(i);
+            if (candidate.depth == depth && !candidate.closed) {
+                candidate.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                return;
+            }
+        }
+    }
+
+    private void push(String localName, String namespace) {
+        if (depth == stackLocalNames.length) {
+            stackLocalNames = Arrays.copyOf(stackLocalNames, depth * 2);
+            stackNamespaces = Arrays.copyOf(stackNamespaces, depth * 2);
+        }
+        stackLocalNames[depth] = localName;
+        stackNamespaces[depth] = namespace;
+        depth++;
+    }
+
+    private static String nonNull(String namespace) {
+        return namespace == null ? "" : namespace;
+    }
+
+    private static class Candidate {
+        private final int depth;
+        private final StringBuilder text = new StringBuilder();
+        private boolean closed;
+
+        private Candidate(int depth) {
+            this.depth = depth;
+        }
+    }
+}
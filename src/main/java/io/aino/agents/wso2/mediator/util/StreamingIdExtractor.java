@@ -0,0 +1,234 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the values selected by a set of {@link StreamingPath}s in a single pass over an XMLStreamReader.
+ *
+ * Values are read the way {@link IdPropertyBuilder} reads XPath results: the text of a selected
+ * element is the concatenation of its own text children, attribute values as they are, and values
+ * are handed to the {@link IdCollector} of their path in document order, which skips empty and
+ * repeated values. Once a collector refuses a value because of its limits, the path is done and
+ * its values are no longer read. Reading stops as soon as no path can take anything further from the stream.
+ */
+public class StreamingIdExtractor {
+
+    private final StreamingPath[] paths;
+    private final IdCollector[] collectors;
+
+    private String[] stackLocalNames = new String[16];
+    private String[] stackNamespaces = new String[16];
+    private int depth;
+
+    private final List<ArrayDeque<OpenValue>> pendingValues;
+    private final List<OpenValue> openValues = new ArrayList<OpenValue>();
+    private final boolean[] done;
+    private int doneCount;
+
+    private StreamingIdExtractor(StreamingPath[] paths, IdCollector[] collectors) {
+        this.paths = paths;
+        this.collectors = collectors;
+        this.pendingValues = new ArrayList<ArrayDeque<OpenValue>>(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            pendingValues.add(new ArrayDeque<OpenValue>());
+        }
+        this.done = new boolean[paths.length];
+    }
+
+    /**
+     * Reads the stream and hands the values selected by each path to the collector of the path.
+     *
+     * @param reader reader positioned at the start of the document or of the root element
+     * @param paths paths to match
+     * @param collectors collectors with the limits of each path, in the order of the paths
+     * @throws XMLStreamException if reading the stream fails
+     */
+    public static void extract(XMLStreamReader reader, StreamingPath[] paths, IdCollector[] collectors)
+            throws XMLStreamException {
+        new StreamingIdExtractor(paths, collectors).read(reader);
+    }
+
+    private void read(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(reader);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    if (depth == 0) {
+                        return;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    characters(reader);
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    return;
+                default:
+                    break;
+            }
+            if (doneCount == paths.length && openValues.isEmpty()) {
+                return;
+            }
+            if (!reader.hasNext()) {
+                return;
+            }
+            event = reader.next();
+        }
+    }
+
+    private void startElement(XMLStreamReader reader) {
+        String localName = reader.getLocalName();
+        String namespace = nonNull(reader.getNamespaceURI());
+        push(localName, namespace);
+
+        for (int i = 0; i < paths.length; i++) {
+            if (done[i]) {
+                continue;
+            }
+            StreamingPath path = paths[i];
+            if (depth == 1 && path.excludesDocumentElement(localName, namespace)) {
+                done[i] = true;
+                doneCount++;
+                continue;
+            }
+            if (!path.matches(stackLocalNames, stackNamespaces, depth)) {
+                continue;
+            }
+            if (path.isAttributePath()) {
+                String value = getAttributeValue(reader, path.getAttributeLocalName(), path.getAttributeNamespace());
+                if (value != null) {
+                    OpenValue attribute = new OpenValue(i, depth, new StringBuilder(value));
+                    attribute.closed = true;
+                    pendingValues.get(i).addLast(attribute);
+                    collectClosedValues(i);
+                }
+            } else {
+                OpenValue value = new OpenValue(i, depth, new StringBuilder());
+                pendingValues.get(i).addLast(value);
+                openValues.add(value);
+            }
+        }
+    }
+
+    private void endElement() {
+        int closedCount = 0;
+        for (int i = openValues.size() - 1; i >= 0; i--) {
+            OpenValue value = openValues.get(i);
+            if (value.depth == depth) {
+                openValues.remove(i);
+                value.closed = true;
+                closedCount++;
+            }
+        }
+        if (closedCount > 0) {
+            for (int i = 0; i < paths.length; i++) {
+                collectClosedValues(i);
+            }
+        }
+        stackLocalNames[depth - 1] = null;
+        stackNamespaces[depth - 1] = null;
+        depth--;
+    }
+
+    /**
+     * Hands the values of a path to its collector in document order. A value of an element nested in
+     * another selected element is complete first, so it waits until the values before it are complete.
+     */
+    private void collectClosedValues(int path) {
+        if (done[path]) {
+            return;
+        }
+        ArrayDeque<OpenValue> pending = pendingValues.get(path);
+        while (!pending.isEmpty() && pending.peekFirst().closed) {
+            if (!collectors[path].add(pending.pollFirst().value.toString())) {
+                markDone(path);
+                return;
+            }
+        }
+    }
+
+    private void markDone(int path) {
+        done[path] = true;
+        doneCount++;
+        pendingValues.get(path).clear();
+        for (int i = openValues.size() - 1; i >= 0; i--) {
+            if (openValues.get(i).path == path) {
+                openValues.remove(i);
+            }
+        }
+    }
+
+    private void characters(XMLStreamReader reader) {
+        for (int i = 0; i < openValues.size(); i++) {
+            OpenValue openValue = openValues.get(i);
+            if (openValue.depth == depth) {
+                openValue.value.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+    }
+
+    private void push(String localName, String namespace) {
+        if (depth == stackLocalNames.length) {
+            stackLocalNames = Arrays.copyOf(stackLocalNames, depth * 2);
+            stackNamespaces = Arrays.copyOf(stackNamespaces, depth * 2);
+        }
+        stackLocalNames[depth] = localName;
+        stackNamespaces[depth] = namespace;
+        depth++;
+    }
+
+    private static String getAttributeValue(XMLStreamReader reader, String localName, String namespace) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (localName.equals(reader.getAttributeLocalName(i))
+                    && namespace.equals(nonNull(reader.getAttributeNamespace(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static String nonNull(String namespace) {
+        return namespace == null ? "" : namespace;
+    }
+
+    private static class OpenValue {
+        private final int path;
+        private final int depth;
+        private final StringBuilder value;
+        private boolean closed;
+
+        private OpenValue(int path, int depth, StringBuilder value) {
+            this.path = path;
+            this.depth = depth;
+            this.value = value;
+        }
+    }
+}
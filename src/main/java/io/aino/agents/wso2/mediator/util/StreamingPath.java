@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+/**
+ * Location path that can be matched against a stream of StAX events.
+ *
+ * Supported are absolute (/a/b/c) and descendant (//b/c) paths of plain child steps,
+ * optionally ending in an attribute step (/a/b/@c). Steps may use namespace prefixes
+ * declared for the XPath. Anything else (predicates, wildcards, functions, axes,
+ * variables, relative paths) must be evaluated with the XPath engine.
+ */
+public final class StreamingPath {
+
+    private final String[] localNames;
+    private final String[] namespaces;
+    private final boolean descendant;
+    private final String attributeLocalName;
+    private final String attributeNamespace;
+
+    private StreamingPath(List<String> localNames, List<String> namespaces, boolean descendant,
+                          String attributeLocalName, String attributeNamespace) {
+        this.localNames = localNames.toArray(new String[localNames.size()]);
+        this.namespaces = namespaces.toArray(new String[namespaces.size()]);
+        this.descendant = descendant;
+        this.attributeLocalName = attributeLocalName;
+        this.attributeNamespace = attributeNamespace;
+    }
+
+    /**
+     * Compiles the expression of the XPath to a streaming path.
+     *
+     * @param xPath expression to compile
+     * @return streaming path, or null if the expression is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public static StreamingPath compile(SynapseXPath xPath) {
+        if (xPath == null) {
+            return null;
+        }
+        String expression = xPath.toString();
+        if (expression == null) {
+            return null;
+        }
+        return compile(expression.trim(), (Map<String, String>) xPath.getNamespaces());
+    }
+
+    static StreamingPath compile(String expression, Map<String, String> prefixes) {
+        boolean descendant = expression.startsWith("//");
+        if (!descendant && !expression.startsWith("/")) {
+            return null;
+        }
+
+        String[] steps = expression.substring(descendant ? 2 : 1).split("/", -1);
+        List<String> localNames = new ArrayList<String>();
+        List<String> namespaces = new ArrayList<String>();
+        String attributeLocalName = null;
+        String attributeNamespace = null;
+
+        for (int i = 0; i < steps.length; i++) {
+            String step = steps[i];
+            boolean attribute = step.startsWith("@");
+            if (attribute) {
+                if (i != steps.length - 1 || localNames.isEmpty()) {
+                    return null;
+                }
+                step = step.substring(1);
+            }
+
+            int colon = step.indexOf(':');
+            String prefix = colon < 0 ? null : step.substring(0, colon);
+            String localName = colon < 0 ? step : step.substring(colon + 1);
+            if (!isName(localName) || (prefix != null && !isName(prefix))) {
+                return null;
+            }
+
+            String namespace = "";
+            if (prefix != null) {
+                namespace = prefixes == null ? null : prefixes.get(prefix);
+                if (namespace == null) {
+                    return null;
+                }
+            }
+
+            if (attribute) {
+                attributeLocalName = localName;
+                attributeNamespace = namespace;
+            } else {
+                localNames.add(localName);
+                namespaces.add(namespace);
+            }
+        }
+        return new StreamingPath(localNames, namespaces, descendant, attributeLocalName, attributeNamespace);
+    }
+
+    private static boolean isName(String name) {
+        if (name.isEmpty() || !Character.isLetter(name.charAt(0)) && name.charAt(0) != '_') {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the innermost open element of the stack is selected by the element steps of this path.
+     *
+     * @param stackLocalNames local names of the open elements, outermost first
+     * @param stackNamespaces namespace URIs of the open elements, "" for no namespace
+     * @param depth number of open elements
+     * @return true if the element matches
+     */
+    boolean matches(String[] stackLocalNames, String[] stackNamespaces, int depth) {
+        int steps = localNames.length;
+        if (descendant ? depth < steps : depth != steps) {
+            return false;
+        }
+        int offset = depth - steps;
+        for (int i = steps - 1; i >= 0; i--) {
+            if (!localNames[i].equals(stackLocalNames[offset + i]) || !namespaces[i].equals(stackNamespaces[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether no element below a document element with the given name can match this path.
+     *
+     * @param localName local name of the document element
+     * @param namespace namespace URI of the document element
+     * @return true if the path cannot match anything in the document
+     */
+    boolean excludesDocumentElement(String localName, String namespace) {
+        return !descendant && !(localNames[0].equals(localName) && namespaces[0].equals(namespace));
+    }
+
+    boolean isAttributePath() {
+        return attributeLocalName != null;
+    }
+
+    String getAttributeLocalName() {
+        return attributeLocalName;
+    }
+
+    String getAttributeNamespace() {
+        return attributeNamespace;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+/**
+ * Utility for accessing the transport headers of a message.
+ */
+public class TransportHeaders {
+
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private TransportHeaders() {}
+
+    /**
+     * Returns the transport headers map of the message.
+     * Creates a transport headers map if one does not exist.
+     *
+     * @param context message context
+     * @return transport headers
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> getTransportHeaders(MessageContext context) {
+        org.apache.axis2.context.MessageContext axis2MessageContext = ((Axis2MessageContext) context).getAxis2MessageContext();
+        Map<String,String> headersMap = (Map<String, String>) axis2MessageContext.getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+
+        if (headersMap == null) {
+            headersMap = new HashMap<String, String>();
+            context.setProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS, headersMap);
+        }
+        return headersMap;
+    }
+
+    /**
+     * Returns the Content-Length transport header of the message without creating a headers map.
+     *
+     * @param context message context
+     * @return content length, or null if the header is not set
+     */
+    @SuppressWarnings("unchecked")
+    public static String getContentLength(MessageContext context) {
+        org.apache.axis2.context.MessageContext axis2MessageContext = ((Axis2MessageContext) context).getAxis2MessageContext();
+        Map<String,String> headersMap = (Map<String, String>) axis2MessageContext.getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+        if (headersMap == null) {
+            return null;
+        }
+
+        String contentLength = headersMap.get(CONTENT_LENGTH);
+        if (contentLength != null) {
+            return contentLength;
+        }
+        // The transports use a case insensitive map, other maps are searched.
+        for (Map.Entry<String, String> header : headersMap.entrySet()) {
+            if (CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
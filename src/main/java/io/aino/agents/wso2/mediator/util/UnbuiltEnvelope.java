@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.axiom.om.OMException;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.axiom.soap.SOAPBody;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.impl.builder.MTOMStAXSOAPModelBuilder;
+import org.apache.axis2.AxisFault;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+
+/**
+ * Gives streaming readers access to a message body that Axiom has not built yet.
+ *
+ * Reading an unbuilt body through Axiom either builds the object tree (caching reader) or consumes
+ * the parser and leaves the message unusable (non-caching reader). Instead, the envelope is serialized
+ * once without building it, and replaced in the message context by an unbuilt envelope parsed from
+ * the same bytes. Streaming readers then read the bytes with a plain parser. The bytes take a fraction
+ * of the heap of the object tree. The envelope is not streamed: it is held in memory once, by the
+ * parser of the copy, until the copy is built or sent. A mediator keeps its own reference only while it
+ * reads the message and then calls {@link #release(MessageContext)}, so the bytes are not kept after
+ * the copy is done with them. The extracted values stay in {@link XPathResultCache} for the next
+ * mediators of the flow.
+ */
+public final class UnbuiltEnvelope {
+    private static final Log log = LogFactory.getLog(UnbuiltEnvelope.class);
+
+    /** Key of the envelope bytes in {@link XPathResultCache}. */
+    public static final String CACHE_KEY = "unbuilt envelope";
+
+    private UnbuiltEnvelope() {}
+
+    /**
+     * Returns true if the body of the envelope has not been built completely.
+     * Bodies of MTOM messages are reported built, as serializing them would inline the attachments.
+     *
+     * @param envelope envelope
+     * @return true if the body is not built
+     */
+    public static boolean isUnbuilt(SOAPEnvelope envelope) {
+        if (envelope == null || envelope.getBuilder() instanceof MTOMStAXSOAPModelBuilder) {
+            return false;
+        }
+        SOAPBody body = envelope.getBody();
+        return body != null && !body.isComplete();
+    }
+
+    /**
+     * Returns the serialized envelope of the message if its body is not built, or null if it is.
+     * The first call of the flow replaces the envelope in the message context.
+     *
+     * @param context message context
+     * @return envelope as UTF-8 bytes, or null
+     */
+    public static byte[] getBytes(MessageContext context) {
+        Object cached = XPathResultCache.get(context, CACHE_KEY);
+        if (cached instanceof byte[]) {
+            return (byte[]) cached;
+        }
+        SOAPEnvelope envelope = context.getEnvelope();
+        if (!isUnbuilt(envelope)) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            envelope.serializeAndConsume(out);
+        } catch (XMLStreamException e) {
+            throw new OMException("Unable to serialize the envelope", e);
+        }
+        byte[] bytes = out.toByteArray();
+        SOAPEnvelope copy = OMXMLBuilderFactory.createSOAPModelBuilder(new ByteArrayInputStream(bytes), "UTF-8")
+                .getSOAPEnvelope();
+        try {
+            context.setEnvelope(copy);
+        } catch (AxisFault e) {
+            throw new OMException("Unable to replace the envelope", e);
+        }
+        XPathResultCache.put(context, CACHE_KEY, bytes);
+        if (log.isDebugEnabled()) {
+            log.debug("Read " + bytes.length + " bytes of unbuilt envelope for streaming.");
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the reference to the envelope bytes kept by {@link #getBytes(MessageContext)}.
+     *
+     * @param context message context
+     */
+    public static void release(MessageContext context) {
+        XPathResultCache.remove(context, CACHE_KEY);
+    }
+
+    /**
+     * Creates a reader of envelope bytes returned by {@link #getBytes(MessageContext)}.
+     *
+     * @param bytes envelope as UTF-8 bytes
+     * @return reader positioned at the start of the document
+     * @throws XMLStreamException if the reader cannot be created
+     */
+    public static XMLStreamReader createReader(byte[] bytes) throws XMLStreamException {
+        return StAXUtils.createXMLStreamReader(new ByteArrayInputStream(bytes), "UTF-8");
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package io.aino.agents.wso2.mediator.util;
+
+/**
+ * Utility for measuring and truncating strings in UTF-8 without encoding them.
+ */
+public final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * Returns the length of the string in UTF-8. Unpaired surrogates count as one replacement byte,
+     * the way {@link java.nio.charset.CharsetEncoder} encodes them.
+     *
+     * @param value string to measure
+     * @return number of bytes
+     */
+    public static int length(CharSequence value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the longest prefix of the string that is at most the given number of bytes in UTF-8.
+     * Surrogate pairs are never split.
+     *
+     * @param value string to truncate
+     * @param maxBytes maximum length in bytes
+     * @return the string itself if it fits, otherwise its prefix
+     */
+    public static String truncate(String value, int maxBytes) {
+        int length = value.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            int charBytes;
+            int chars = 1;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                charBytes = 4;
+                chars = 2;
+            } else if (Character.isSurrogate(c)) {
+                charBytes = 1;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > maxBytes) {
+                return value.substring(0, i);
+            }
+            bytes += charBytes;
+            i += chars - 1;
+        }
+        return value;
+    }
+}
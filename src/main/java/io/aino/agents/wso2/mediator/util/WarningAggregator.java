@@ -0,0 +1,234 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.WARNING_AGGREGATOR_MAX_KEYS;
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.WARNING_SUMMARY_INTERVAL_MILLIS;
+
+/**
+ * Rate limiter for repeating warnings, keyed by mediator location, field and offending value.
+ *
+ * The first occurrence of a warning is logged as is. Later occurrences are only counted, and
+ * once per interval one of them is logged as a summary carrying the count. Occurrences still
+ * counted when a warning stops repeating are logged by a background task, with the last message
+ * logged through {@link #log(Log, MediatorLocation, String, String, String, long)}.
+ * The number of tracked keys is bounded: when the map is full, idle keys are evicted at most once
+ * per interval, and new values of a field share one overflow key.
+ */
+public final class WarningAggregator {
+
+    private static final WarningAggregator DEFAULT = new WarningAggregator(WARNING_SUMMARY_INTERVAL_MILLIS, WARNING_AGGREGATOR_MAX_KEYS);
+
+    private static final String OVERFLOW_VALUE = "*";
+    private static final char SEPARATOR = '\u0000';
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final long intervalNanos;
+    private final int maxKeys;
+    private final AtomicLong lastEviction;
+    private final AtomicBoolean summaryTaskStarted = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param intervalMillis minimum time between two logged occurrences of a warning
+     * @param maxKeys maximum number of tracked warnings
+     */
+    public WarningAggregator(long intervalMillis, int maxKeys) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.maxKeys = maxKeys;
+        this.lastEviction = new AtomicLong(System.nanoTime() - intervalNanos);
+    }
+
+    /**
+     * Returns the aggregator shared by all mediators.
+     *
+     * @return shared aggregator
+     */
+    public static WarningAggregator getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records one occurrence of a warning.
+     *
+     * @param location location of the mediator
+     * @param field field that caused the warning
+     * @param value offending value
+     * @return number of occurrences the caller should log, including this one:
+     *         1 for the first occurrence, more for a summary, 0 if the warning should not be logged
+     */
+    public long record(MediatorLocation location, String field, String value) {
+        long now = System.nanoTime();
+        Entry entry = getEntry(key(location, field, value), now);
+        if (entry == null) {
+            entry = getEntry(key(location, field, OVERFLOW_VALUE), now);
+        }
+        return entry.record(now, intervalNanos);
+    }
+
+    /**
+     * Logs a warning for which {@link #record(MediatorLocation, String, String)} returned a count.
+     * The message is kept to log the occurrences counted after it, if the warning stops repeating.
+     *
+     * @param log log to write to
+     * @param location location of the mediator
+     * @param field field that caused the warning
+     * @param value offending value
+     * @param message warning message
+     * @param count count returned by record
+     */
+    public void log(Log log, MediatorLocation location, String field, String value, String message, long count) {
+        Entry entry = entries.get(key(location, field, value));
+        if (entry == null) {
+            entry = entries.get(key(location, field, OVERFLOW_VALUE));
+        }
+        if (entry != null) {
+            entry.log = log;
+            entry.message = message;
+        }
+        log.warn(format(message, count));
+        startSummaryTask();
+    }
+
+    /**
+     * Logs the summaries of the warnings with counted occurrences that have not been logged for an interval,
+     * and evicts idle warnings. Called periodically by a background task.
+     */
+    public void flushPending() {
+        long now = System.nanoTime();
+        for (Entry entry : entries.values()) {
+            String message = entry.message;
+            if (message == null || entry.pending.get() == 0) {
+                continue;
+            }
+            long count = entry.takePending(now, intervalNanos);
+            if (count > 0) {
+                entry.log.warn(format(message, count));
+            }
+        }
+        evictIdle(now);
+    }
+
+    private void startSummaryTask() {
+        if (intervalNanos <= 0 || !summaryTaskStarted.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aino-warning-summary");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushPending();
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String format(String message, long count) {
+        return count > 1 ? message + " (" + count + " occurrences since the last report)" : message;
+    }
+
+    /**
+     * Returns the number of tracked warnings.
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry getEntry(String key, long now) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        if (entries.size() >= maxKeys) {
+            long last = lastEviction.get();
+            // A full map of warnings that are all still active would otherwise be scanned for every new value.
+            if (now - last >= intervalNanos && lastEviction.compareAndSet(last, now)) {
+                evictIdle(now);
+            }
+            if (entries.size() >= maxKeys && !key.endsWith(SEPARATOR + OVERFLOW_VALUE)) {
+                return null;
+            }
+        }
+        Entry created = new Entry(now - intervalNanos);
+        entry = entries.putIfAbsent(key, created);
+        return entry == null ? created : entry;
+    }
+
+    /**
+     * Removes the warnings that have nothing left to report and have not been logged for an interval.
+     */
+    private void evictIdle(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.pending.get() == 0 && now - entry.lastLogged.get() >= intervalNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String key(MediatorLocation location, String field, String value) {
+        return new StringBuilder().append(location).append(SEPARATOR).append(field)
+                .append(SEPARATOR).append(value).toString();
+    }
+
+    private static class Entry {
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicLong lastLogged;
+        private volatile Log log;
+        private volatile String message;
+
+        Entry(long lastLogged) {
+            this.lastLogged = new AtomicLong(lastLogged);
+        }
+
+        long record(long now, long intervalNanos) {
+            pending.incrementAndGet();
+            return takePending(now, intervalNanos);
+        }
+
+        long takePending(long now, long intervalNanos) {
+            long last = lastLogged.get();
+            // Only the thread that moves the timestamp logs, the others keep counting.
+            if (now - last < intervalNanos || !lastLogged.compareAndSet(last, now)) {
+                return 0;
+            }
+            return pending.getAndSet(0);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2016 Aino.io
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package io.aino.agents.wso2.mediator.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPBody;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.util.xpath.SynapseXPath;
+import org.jaxen.JaxenException;
+
+import static io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants.AINO_XPATH_CACHE_PROPERTY_NAME;
+
+/**
+ * Per message cache of XPath evaluation results.
+ *
+ * Sequences often have several ainoLog mediators evaluating the same expressions against
+ * an unchanged payload. The cache is stored in the message context and shared by all
+ * mediators of the flow. Results are keyed by expression text and namespaces, and the whole
+ * cache is dropped when the envelope of the message or the payload element in its body is replaced,
+ * as payloadFactory and XSLT do.
+ *
+ * Changes made inside the payload element are not detected: an enrich with a custom target, a script
+ * or a class mediator editing the payload in place leaves the results of the earlier mediators in the
+ * cache, and later ainoLog mediators log the values from before the change. Flows doing such edits
+ * between ainoLog mediators should disable sharing with {@link #setEnabled(boolean)}, in which case
+ * results are only kept during one mediator.
+ *
+ * Only expressions that depend on the payload alone are cached: expressions using
+ * variables ($ctx:, $trp:, ...) or get-property() are always evaluated.
+ */
+public class XPathResultCache {
+
+    private static volatile boolean enabled = true;
+
+    private final SOAPEnvelope envelope;
+    private final OMElement payload;
+    private final Map<String, Object> results = new HashMap<String, Object>();
+
+    private XPathResultCache(SOAPEnvelope envelope, OMElement payload) {
+        this.envelope = envelope;
+        this.payload = payload;
+    }
+
+    /**
+     * Sets whether results are shared by the mediators of a flow.
+     *
+     * @param enabled false to drop the results at the end of every mediator
+     */
+    public static void setEnabled(boolean enabled) {
+        XPathResultCache.enabled = enabled;
+    }
+
+    /**
+     * Tells whether results are shared by the mediators of a flow.
+     *
+     * @return true by default
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called at the end of a mediator. Drops the whole cache if sharing is disabled.
+     *
+     * @param context message context
+     */
+    public static void endMediator(MessageContext context) {
+        if (!enabled && context.getProperty(AINO_XPATH_CACHE_PROPERTY_NAME) != null) {
+            context.setProperty(AINO_XPATH_CACHE_PROPERTY_NAME, null);
+        }
+    }
+
+    /**
+     * Returns the cache key of an expression, or null if results of the expression must not be cached.
+     *
+     * @param xPath expression
+     * @return cache key or null
+     */
+    @SuppressWarnings("unchecked")
+    public static String getCacheKey(SynapseXPath xPath) {
+        String expression = xPath.toString();
+        if (expression == null || expression.contains("$") || expression.contains("get-property")) {
+            return null;
+        }
+
+        Map<String, String> namespaces = xPath.getNamespaces();
+        if (namespaces == null || namespaces.isEmpty()) {
+            return expression;
+        }
+        return expression + " " + new TreeMap<String, String>(namespaces);
+    }
+
+    /**
+     * Evaluates the expression against the message, or returns the result of an earlier evaluation
+     * of the same expression against the same envelope.
+     * Returned results are shared and must not be modified.
+     *
+     * @param xPath expression to evaluate
+     * @param cacheKey cache key from {@link #getCacheKey(SynapseXPath)}, null to skip the cache
+     * @param context message context
+     * @return evaluation result
+     * @throws JaxenException if evaluation fails
+     */
+    public static Object evaluate(SynapseXPath xPath, String cacheKey, MessageContext context) throws JaxenException {
+        if (cacheKey == null) {
+            return xPath.evaluate(context);
+        }
+
+        XPathResultCache cache = getCache(context);
+        if (cache == null) {
+            return xPath.evaluate(context);
+        }
+
+        Object result = cache.results.get(cacheKey);
+        if (result == null && !cache.results.containsKey(cacheKey)) {
+            result = xPath.evaluate(context);
+            cache.results.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a result stored with {@link #put(MessageContext, String, Object)} for the current envelope.
+     *
+     * @param context message context
+     * @param cacheKey key of the result
+     * @return stored result or null
+     */
+    public static Object get(MessageContext context, String cacheKey) {
+        XPathResultCache cache = getCache(context);
+        return cache == null ? null : cache.results.get(cacheKey);
+    }
+
+    /**
+     * Stores a result computed from the current envelope by other means than XPath evaluation.
+     * The key must not collide with keys returned by {@link #getCacheKey(SynapseXPath)}.
+     *
+     * @param context message context
+     * @param cacheKey key of the result
+     * @param result result to store
+     */
+    public static void put(MessageContext context, String cacheKey, Object result) {
+        XPathResultCache cache = getCache(context);
+        if (cache != null) {
+            cache.results.put(cacheKey, result);
+        }
+    }
+
+    /**
+     * Removes a result stored with {@link #put(MessageContext, String, Object)}.
+     *
+     * @param context message context
+     * @param cacheKey key of the result
+     */
+    public static void remove(MessageContext context, String cacheKey) {
+        Object cache = context.getProperty(AINO_XPATH_CACHE_PROPERTY_NAME);
+        if (cache instanceof XPathResultCache) {
+            ((XPathResultCache) cache).results.remove(cacheKey);
+        }
+    }
+
+    private static XPathResultCache getCache(MessageContext context) {
+        SOAPEnvelope envelope = context.getEnvelope();
+        if (envelope == null) {
+            return null;
+        }
+        SOAPBody body = envelope.getBody();
+        OMElement payload = body == null ? null : body.getFirstElement();
+
+        Object cache = context.getProperty(AINO_XPATH_CACHE_PROPERTY_NAME);
+        if (cache instanceof XPathResultCache && ((XPathResultCache) cache).envelope == envelope
+                && ((XPathResultCache) cache).payload == payload) {
+            return (XPathResultCache) cache;
+        }
+
+        XPathResultCache newCache = new XPathResultCache(envelope, payload);
+        context.setProperty(AINO_XPATH_CACHE_PROPERTY_NAME, newCache);
+        return newCache;
+    }
+
+    @Override
+    public String toString() {
+        return "XPathResultCache[" + results.size() + " results]";
+    }
+}
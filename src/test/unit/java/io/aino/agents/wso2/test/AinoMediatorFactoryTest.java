@@ -16,27 +16,43 @@
 
 package io.aino.agents.wso2.test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLStreamException;
 
+import io.aino.agents.core.Agent;
 import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.config.ConfigFileWatcher;
+import io.aino.agents.wso2.mediator.config.KeyRegistry;
+import io.aino.agents.wso2.mediator.log.EsbLogFormat;
 import io.aino.agents.core.config.InvalidAgentConfigException;
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.AXIOMUtil;
 import org.apache.axiom.om.xpath.AXIOMXPath;
 import org.apache.synapse.Mediator;
 import org.apache.synapse.mediators.builtin.LogMediator;
 import org.jaxen.JaxenException;
 import org.junit.*;
 
+import io.aino.agents.wso2.mediator.buffer.OverflowPolicy;
+import io.aino.agents.wso2.mediator.buffer.TransactionBuffer;
 import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+import io.aino.agents.wso2.mediator.sink.AgentSink;
+import io.aino.agents.wso2.mediator.sink.InMemorySink;
+import io.aino.agents.wso2.mediator.sink.TransactionSinks;
+import io.aino.agents.wso2.mediator.util.AsyncMediationExecutor;
 import org.junit.contrib.java.lang.system.EnvironmentVariables;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXParseException;
 
 import static org.junit.Assert.*;
 
@@ -52,6 +68,9 @@ public class AinoMediatorFactoryTest {
     @Rule
     public final EnvironmentVariables environmentVariables = new EnvironmentVariables();
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
     public AinoMediatorFactoryTest() throws FileNotFoundException, XMLStreamException, JaxenException {
         ainoLogs = new AXIOMXPath("//syn:ainoLog");
@@ -227,6 +246,126 @@ public class AinoMediatorFactoryTest {
         assertEquals(SERVER_NAME_IN_AXIS2_CONFIG, mediatorFactory.getEsbServerName());
     }
 
+    @Test
+    public void testEsbLogFormatFromFactoryConfig() throws Exception {
+        AinoMediatorFactory mediatorFactory = factoryFrom("ainoLogMediatorConfigJsonEsbLog.xml");
+        OMElement proxy = TestUtils.getDocumentElementFromResourcePath(TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        List<OMElement> ainoConfigs = (List<OMElement>) ainoLogs.evaluate(proxy);
+        AinoMediator m = (AinoMediator) mediatorFactory.createMediator(ainoConfigs.get(0), null);
+
+        assertEquals(EsbLogFormat.JSON, mediatorFactory.getMediatorConfig().getEsbLogFormat());
+        assertEquals(EsbLogFormat.JSON, m.getEsbLogger().getFormat());
+
+        AinoMediator other = (AinoMediator) factoryFrom("ainoLogMediatorConfigJsonEsbLog.xml").createMediator(ainoConfigs.get(0), null);
+        assertSame(m.getEsbLogger(), other.getEsbLogger());
+    }
+
+    @Test
+    public void testTransactionBufferFromFactoryConfig() throws Exception {
+        AinoMediatorFactory mediatorFactory = factoryFrom("ainoLogMediatorConfigTransactionBuffer.xml");
+        OMElement proxy = TestUtils.getDocumentElementFromResourcePath(TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        List<OMElement> ainoConfigs = (List<OMElement>) ainoLogs.evaluate(proxy);
+        AinoMediator m = (AinoMediator) mediatorFactory.createMediator(ainoConfigs.get(0), null);
+
+        TransactionBuffer buffer = m.getTransactionBuffer();
+        assertEquals(1048576, buffer.getMaxBytes());
+        assertEquals(200, buffer.getMaxInFlight());
+        assertEquals(5, mediatorFactory.getMediatorConfig().getSendIntervalMillis());
+
+        AinoMediator other = (AinoMediator) factoryFrom("ainoLogMediatorConfigTransactionBuffer.xml").createMediator(ainoConfigs.get(0), null);
+        assertSame(buffer, other.getTransactionBuffer());
+        assertEquals(OverflowPolicy.DROP_OLDEST.getConfigName(), buffer.getOverflowPolicy());
+        assertEquals(50, mediatorFactory.getMediatorConfig().getBlockTimeoutMillis());
+        assertEquals(3, mediatorFactory.getMediatorConfig().getAsyncWorkerCount());
+        assertEquals(500, mediatorFactory.getMediatorConfig().getAsyncQueueSize());
+
+        AsyncMediationExecutor executor = AsyncMediationExecutor.getInstance();
+        mediatorFactory.clearAinoLogger();
+        assertTrue(executor.isShutdown());
+    }
+
+    @Test
+    public void testSchemaViolationsAreReportedByStreamingValidation() throws Exception {
+        OMElement invalid = AXIOMUtil.stringToOM("<ainoLog xmlns=\"http://ws.apache.org/ns/synapse\" status=\"bogus\">"
+                + "<to applicationKey=\"app01\"/></ainoLog>");
+        try {
+            getFactory().createMediator(invalid, null);
+            fail("Schema violation was not detected");
+        } catch (InvalidAgentConfigException e) {
+            assertTrue(e.getCause() instanceof SAXParseException);
+            assertTrue(e.getCause().getMessage().contains("bogus"));
+        }
+
+        // The validator of the thread is reset and reused for the next element.
+        OMElement proxy = TestUtils.getDocumentElementFromResourcePath(TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        List<OMElement> ainoConfigs = (List<OMElement>) ainoLogs.evaluate(proxy);
+        assertNotNull(getFactory().createMediator(ainoConfigs.get(0), null));
+    }
+
+    @Test
+    public void testReloadedAinoConfigIsSwappedIntoMediators() throws Exception {
+        // Mediators left over from other tests are tracked weakly, collect them so that only this one is validated.
+        System.gc();
+        final AinoMediatorFactory mediatorFactory = getFactory();
+        OMElement proxy = TestUtils.getDocumentElementFromResourcePath(TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        List<OMElement> ainoConfigs = (List<OMElement>) ainoLogs.evaluate(proxy);
+        AinoMediator m = (AinoMediator) mediatorFactory.createMediator(ainoConfigs.get(0), null);
+        Agent originalAgent = m.ainoAgent;
+
+        String original = new String(Files.readAllBytes(new File(AinoMediatorFactoryTest.class
+                .getResource("/conf/ainoLogMediatorConfig.xml").getFile()).toPath()), "UTF-8");
+        File configFile = temporaryFolder.newFile("ainoLogMediatorConfig.xml");
+        Files.write(configFile.toPath(), original.getBytes("UTF-8"));
+        ConfigFileWatcher watcher = new ConfigFileWatcher(configFile, 10, new ConfigFileWatcher.Listener() {
+            @Override
+            public void configChanged(byte[] content) {
+                mediatorFactory.reloadAinoConfig(new ByteArrayInputStream(content));
+            }
+        });
+
+        try {
+            assertFalse(watcher.checkForChanges());
+
+            String withArchive = original.replace("<operation key=\"delete\" name=\"Delete\" />",
+                    "<operation key=\"delete\" name=\"Delete\" />\n    <operation key=\"archive\" name=\"Archive\" />");
+            Files.write(configFile.toPath(), withArchive.getBytes("UTF-8"));
+            assertTrue(watcher.checkForChanges());
+            Agent reloadedAgent = m.ainoAgent;
+            assertNotSame(originalAgent, reloadedAgent);
+            assertSame(reloadedAgent, m.getExecutionPlan().getAgent());
+            assertTrue(m.getExecutionPlan().getKeyRegistry().exists(KeyRegistry.KeyType.OPERATION, "archive"));
+            assertSame(reloadedAgent, ((AinoMediator) mediatorFactory.createMediator(ainoConfigs.get(0), null)).ainoAgent);
+
+            // The mediator logs from app01, so a config without it is not taken into use.
+            String withoutApp01 = withArchive.replace("<application key=\"app01\" name=\"TestApp 1\" />", "");
+            Files.write(configFile.toPath(), withoutApp01.getBytes("UTF-8"));
+            assertTrue(watcher.checkForChanges());
+            assertSame(reloadedAgent, m.ainoAgent);
+        } finally {
+            mediatorFactory.reloadAinoConfig(new ByteArrayInputStream(original.getBytes("UTF-8")));
+        }
+    }
+
+    @Test
+    public void testTransactionSinksFromFactoryConfig() throws Exception {
+        AinoMediatorFactory mediatorFactory = factoryFrom("ainoLogMediatorConfigSinks.xml");
+        OMElement proxy = TestUtils.getDocumentElementFromResourcePath(TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        List<OMElement> ainoConfigs = (List<OMElement>) ainoLogs.evaluate(proxy);
+        AinoMediator m = (AinoMediator) mediatorFactory.createMediator(ainoConfigs.get(0), null);
+
+        TransactionSinks sinks = mediatorFactory.getTransactionSinks();
+        assertEquals(Arrays.asList("memory", "aino"), sinks.getSinkNames());
+        assertTrue(m.getTransactionSink() instanceof InMemorySink);
+        assertTrue(sinks.getSink("OtherProxy") instanceof AgentSink);
+        assertSame(sinks, factoryFrom("ainoLogMediatorConfigSinks.xml").getTransactionSinks());
+        sinks.close();
+    }
+
+    @Test(expected = InvalidAgentConfigException.class)
+    public void testUnknownTransactionSinkTypeFails() {
+        TransactionSinks.newSink("carrierPigeon");
+    }
+
     private AinoMediatorFactory factoryFrom(String ainoLogMediatorConfigFileName) throws FileNotFoundException {
         InputStream axisConf = new FileInputStream(new File(
                 TestUtils.class.getResource("/conf/axis2.xml").getFile()));
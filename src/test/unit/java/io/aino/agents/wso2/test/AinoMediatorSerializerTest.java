@@ -229,6 +229,42 @@ public class AinoMediatorSerializerTest {
         assertEquals("app02", attribute.getAttributeValue());
     }
 
+    @Test
+    public void serializerSetAsyncTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_ASYNC);
+
+        OMElement serializedMediator = serializer.serializeMediator(null, m);
+
+        assertEquals("true", serializedMediator.getAttributeValue(new QName("async")));
+    }
+
+    @Test
+    public void serializerSetSampleRateTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_SAMPLE_RATE);
+
+        OMElement serializedMediator = serializer.serializeMediator(null, m);
+
+        assertEquals("0.0", serializedMediator.getAttributeValue(new QName("sampleRate")));
+    }
+
+    @Test
+    public void serializerSetPayloadDigestTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_PAYLOAD_DIGEST);
+
+        OMElement serializedMediator = serializer.serializeMediator(null, m);
+
+        assertEquals("fnv1a64", serializedMediator.getAttributeValue(new QName("payloadDigest")));
+    }
+
+    @Test
+    public void serializerSetIdLimitsTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_ID_LIMITS);
+
+        assertEquals("1000", serializeAndFindAttribute(m, "ids", "maxCount").getAttributeValue());
+        assertEquals("65536", serializeAndFindAttribute(m, "ids", "maxBytes").getAttributeValue());
+        assertEquals("true", serializeAndFindAttribute(m, "ids", "distinct").getAttributeValue());
+    }
+
     public OMAttribute serializeAndFindAttribute(Mediator m, String tagName, String attributeName) {
         OMElement serializedMediator = serializer.serializeMediator(null, m);
         assertNotNull(serializedMediator);
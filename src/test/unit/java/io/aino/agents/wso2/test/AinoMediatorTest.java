@@ -17,33 +17,99 @@
 package io.aino.agents.wso2.test;
 
 import io.aino.agents.core.Transaction;
+import io.aino.agents.core.Agent;
 import io.aino.agents.wso2.mediator.AinoMediator;
+import io.aino.agents.wso2.mediator.buffer.OverflowPolicy;
+import io.aino.agents.wso2.mediator.buffer.SpillQueue;
+import io.aino.agents.wso2.mediator.buffer.TransactionCodec;
+import io.aino.agents.wso2.mediator.buffer.TransactionBuffer;
+import io.aino.agents.wso2.mediator.config.AinoMediatorConfigConstants;
+import io.aino.agents.wso2.mediator.config.KeyRegistry;
 import io.aino.agents.wso2.mediator.factory.AinoMediatorFactory;
+import io.aino.agents.wso2.mediator.log.AsyncEsbLogAppender;
+import io.aino.agents.wso2.mediator.log.EsbLogFormat;
+import io.aino.agents.wso2.mediator.log.EsbLogLine;
+import io.aino.agents.wso2.mediator.log.EsbLogger;
+import io.aino.agents.wso2.mediator.metrics.LatencyHistogram;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetrics;
+import io.aino.agents.wso2.mediator.metrics.MediatorMetricsRegistry;
+import io.aino.agents.wso2.mediator.plan.TransactionBudget;
+import io.aino.agents.wso2.mediator.sink.HttpSink;
+import io.aino.agents.wso2.mediator.sink.InMemorySink;
+import io.aino.agents.wso2.mediator.sink.RollingFileSink;
+import io.aino.agents.wso2.mediator.util.DigestingOutputStream;
+import io.aino.agents.wso2.mediator.util.FlowSampler;
+import io.aino.agents.wso2.mediator.util.Id;
+import io.aino.agents.wso2.mediator.util.IdCollector;
+import io.aino.agents.wso2.mediator.util.PayloadDigest;
+import io.aino.agents.wso2.mediator.util.PropertyExpression;
+import io.aino.agents.wso2.mediator.util.StreamingFirstMatch;
+import io.aino.agents.wso2.mediator.util.StreamingIdExtractor;
+import io.aino.agents.wso2.mediator.util.StreamingPath;
+import io.aino.agents.wso2.mediator.util.UnbuiltEnvelope;
+import io.aino.agents.wso2.mediator.util.Utf8;
+import io.aino.agents.wso2.mediator.util.WarningAggregator;
+import io.aino.agents.wso2.mediator.util.XPathResultCache;
 import org.apache.axiom.om.*;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPEnvelope;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.axiom.attachments.utils.IOUtils;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.apache.commons.logging.Log;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
 public class AinoMediatorTest {
 
     private static AinoMediatorFactory factory;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     public AinoMediatorTest() throws JaxenException {
     }
 
@@ -103,11 +169,16 @@ public class AinoMediatorTest {
         AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
         Axis2MessageContext ctx = TestUtils.getMockedContext();
 
+        EsbLogger esbLogger = mock(EsbLogger.class);
+        when(esbLogger.isEnabled(any(Log.class))).thenReturn(true);
+        m.setEsbLogger(esbLogger);
+
         when(m.ainoAgent.isEnabled()).thenReturn(false);
 
         m.mediate(ctx);
 
         verify(m.ainoAgent, never()).addTransaction((Transaction) any());
+        verify(esbLogger, never()).write(any(Log.class), any(EsbLogLine.class));
     }
 
     @Test
@@ -154,15 +225,1019 @@ public class AinoMediatorTest {
         assertEquals(expected, actualIds);
     }
 
+    @Test
+    public void mediatorKeepsEmptyStringValueAsIdTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+
+        // An expression like string(...) evaluates to a string instead of nodes, an empty one is still an id.
+        SynapseXPath idXPath = mock(SynapseXPath.class);
+        when(idXPath.evaluate(ctx)).thenReturn("");
+        m.addId(new Id("typeKey", idXPath, 0, 0, false));
 
-}
+        Transaction transaction = new Transaction(null);
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(transaction);
+
+        m.mediate(ctx);
+
+        assertEquals(Arrays.asList(""), transaction.getIds().get("typeKey"));
+    }
+
+    @Test
+    public void mediatorLimitsAndDeduplicatesIdsTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+
+        List<OMNode> nodes = new ArrayList<OMNode>();
+        for (String value : new String[] {"1", "2", "1", "", "2", "3", "4", "5"}) {
+            nodes.add(OMAbstractFactory.getOMFactory().createOMText(value));
+        }
+        SynapseXPath idXPath = mock(SynapseXPath.class);
+        when(idXPath.evaluate(ctx)).thenReturn(nodes);
+        m.addId(new Id("typeKey", idXPath, 3, 0, true));
+
+        Transaction transaction = spy(new Transaction(null));
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(transaction);
+
+        m.mediate(ctx);
+
+        assertEquals(Arrays.asList("1", "2", "3"), transaction.getIds().get("typeKey"));
+        verify(transaction).addMetadata(AinoMediatorConfigConstants.TRUNCATED_IDS_METADATA_NAME, "typeKey: first 3 ids");
+
+        // 6 bytes fit: "a" and the two byte "\u00e4" twice, but not the four byte "\ud83d\ude00".
+        IdCollector collector = new IdCollector(new Id("typeKey", idXPath, 0, 6, false), 4);
+        assertTrue(collector.add("a"));
+        assertTrue(collector.add("\u00e4\u00e4"));
+        assertTrue(collector.add("a"));
+        assertFalse(collector.add("\ud83d\ude00"));
+        assertFalse(collector.add("b"));
+        assertTrue(collector.isTruncated());
+        assertEquals(Arrays.asList("a", "\u00e4\u00e4", "a"), collector.getIds());
+        assertEquals(4, Utf8.length("\ud83d\ude00"));
+        assertEquals("\ud83d\ude00".getBytes("UTF-8").length, Utf8.length("\ud83d\ude00"));
+    }
+
+    @Test
+    public void mediatorCutsValuesToTransactionBudgetTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        m.setStatus("failure");
+        m.setTransactionBudget(new TransactionBudget(40, 60));
+
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longValue.append("\u00e4\ud83d\ude00");
+        }
+        SynapseXPath messageXPath = mock(SynapseXPath.class);
+        when(messageXPath.evaluate(ctx)).thenReturn(longValue.toString());
+        m.setDynamicMessage(messageXPath);
+        when(ctx.getProperty("ERROR_CODE")).thenReturn("101");
+        when(ctx.getProperty("ERROR_MESSAGE")).thenReturn(longValue.toString());
+
+        Transaction transaction = spy(new Transaction(null));
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(transaction);
+
+        MediatorMetrics metrics = m.getExecutionPlan().getMetrics();
+        long truncatedFields = metrics.getTruncatedFieldCount();
+        long budgetHits = metrics.getTransactionBudgetHitCount();
+
+        m.mediate(ctx);
+
+        // Error metadata is read first: "101" takes 3 bytes, the error message is cut to the 40 byte
+        // field limit and the message to the 17 bytes left of the transaction budget.
+        verify(transaction).addMetadata("errorCode", "101");
+        ArgumentCaptor<String> errorMessage = ArgumentCaptor.forClass(String.class);
+        verify(transaction).addMetadata(eq("errorMessage"), errorMessage.capture());
+        assertTrue(errorMessage.getValue().endsWith(TransactionBudget.TRUNCATION_MARKER));
+        assertTrue(errorMessage.getValue().getBytes("UTF-8").length <= 40);
+        assertEquals("\u00e4\ud83d\ude00\u00e4\ud83d\ude00\u00e4\ud83d\ude00\u00e4\ud83d\ude00\u00e4" + TransactionBudget.TRUNCATION_MARKER,
+                errorMessage.getValue());
+        assertEquals("\u00e4" + TransactionBudget.TRUNCATION_MARKER, transaction.getMessage());
+        assertEquals(truncatedFields + 1, metrics.getTruncatedFieldCount());
+        assertEquals(budgetHits + 1, metrics.getTransactionBudgetHitCount());
+
+        assertEquals("a\u00e4", Utf8.truncate("a\u00e4\ud83d\ude00", 6));
+        assertEquals("a\u00e4\ud83d\ude00", Utf8.truncate("a\u00e4\ud83d\ude00", 7));
+        assertEquals("", Utf8.truncate("\ud83d\ude00", 3));
+    }
+
+    @Test
+    public void mediatorAddsPayloadDigestAndSizeTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        m.setPayloadDigest(PayloadDigest.SHA256);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        String payload = "<order><note>\u00e4</note></order>";
+        envelope.getBody().addChild(AXIOMUtil.stringToOM(payload));
+        when(ctx.getEnvelope()).thenReturn(envelope);
+
+        Transaction transaction = spy(new Transaction(null));
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(transaction);
+
+        m.mediate(ctx);
+
+        byte[] bytes = payload.getBytes("UTF-8");
+        StringBuilder expected = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            expected.append(String.format("%02x", b));
+        }
+        verify(transaction).addMetadata(AinoMediatorConfigConstants.PAYLOAD_DIGEST_METADATA_NAME, expected.toString());
+        verify(transaction).addMetadata(AinoMediatorConfigConstants.PAYLOAD_SIZE_METADATA_NAME, Integer.toString(bytes.length));
+
+        // A body still in the pass-through pipe is not built, only its size is read from the headers.
+        when(ctx.getAxis2MessageContext().getProperty("pass-through.pipe")).thenReturn(new Object());
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-length", "1234");
+        when(ctx.getAxis2MessageContext().getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS)).thenReturn(headers);
+        Transaction unbuilt = spy(new Transaction(null));
+        when(m.ainoAgent.newTransaction()).thenReturn(unbuilt);
+
+        m.mediate(ctx);
+
+        verify(unbuilt).addMetadata(AinoMediatorConfigConstants.PAYLOAD_SIZE_METADATA_NAME, "1234");
+        verify(unbuilt, never()).addMetadata(eq(AinoMediatorConfigConstants.PAYLOAD_DIGEST_METADATA_NAME), anyString());
+
+        // FNV-1a of "a" is the published test vector.
+        DigestingOutputStream fnv = PayloadDigest.FNV1A64.newOutputStream();
+        fnv.write('a');
+        assertEquals("af63dc4c8601ec8c", fnv.getDigest());
+        assertEquals(1, fnv.getByteCount());
+    }
+
+    @Test
+    public void propertyExpressionsMatchJaxenEvaluationTest() throws Exception {
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        when(ctx.getEnvelope()).thenReturn(OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope());
+        OMElement status = AXIOMUtil.stringToOM("<status>ok</status>");
+        when(ctx.getProperty("orderId")).thenReturn("1234");
+        when(ctx.getProperty("retries")).thenReturn(3);
+        when(ctx.getProperty("status")).thenReturn(status);
+        when(ctx.getProperty("orders")).thenReturn(Arrays.asList("1", "2"));
+        when(ctx.getAxis2MessageContext().getProperty("HTTP_SC")).thenReturn(200);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("X-Correlation", "abc-1");
+        when(ctx.getAxis2MessageContext().getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS)).thenReturn(headers);
+
+        String[] expressions = {
+                "$ctx:orderId", "$ctx:retries", "$ctx:status", "$ctx:orders", "$ctx:missing",
+                "$trp:X-Correlation", "$trp:missing", "$axis2:HTTP_SC", " get-property('orderId') ",
+                "get-property(\"default\", 'retries')", "get-property('transport','X-Correlation')",
+                "get-property('axis2', 'HTTP_SC')", "get-property('missing')"
+        };
+        for (String expression : expressions) {
+            SynapseXPath xPath = new SynapseXPath(expression);
+            PropertyExpression propertyExpression = PropertyExpression.compile(xPath);
+            assertTrue(expression, propertyExpression != null);
+            assertEquals(expression, xPath.evaluate(ctx), propertyExpression.evaluate(ctx));
+            assertEquals(expression, xPath.stringValueOf(ctx), propertyExpression.stringValueOf(ctx));
+        }
+
+        String[] xPaths = { "//order/id", "get-property('To')", "concat($ctx:orderId, 'x')", "$ctx:orderId = '1'",
+                "get-property('registry', 'conf:/orders')", "get-property('')" };
+        for (String expression : xPaths) {
+            assertEquals(expression, null, PropertyExpression.compile(new SynapseXPath(expression)));
+        }
+    }
+
+    @Test
+    public void asyncMediatorAddsTransactionOnWorkerThreadTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_ASYNC);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        assertTrue(m.isAsync());
+        assertTrue(m.mediate(ctx));
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent, timeout(5000)).addTransaction(argument.capture());
+        assertEquals(TestUtils.MESSAGE_ID, argument.getValue().getFlowId());
+        assertEquals("update", argument.getValue().getOperationKey());
+        assertEquals("app01", argument.getValue().getFromKey());
+    }
+
+    @Test
+    public void mediatorFallsBackToUnknownPayloadTypeWithoutChangingConfigurationTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        m.setPayloadType("subInterface01");
+
+        SynapseXPath payloadTypeXPath = mock(SynapseXPath.class);
+        when(payloadTypeXPath.evaluate(ctx)).thenReturn("notConfiguredPayloadType");
+        m.setDynamicPayloadType(payloadTypeXPath);
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        m.mediate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent).addTransaction(argument.capture());
+        assertEquals(AinoMediator.UNKNOWN_DYNAMIC_PAYLOADTYPE, argument.getValue().getPayloadTypeKey());
+        assertEquals("subInterface01", m.getPayloadType());
+    }
+
+    @Test
+    public void mediatorsReuseXPathResultsUntilEnvelopeIsReplacedTest() throws Exception {
+        AinoMediator first = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        AinoMediator second = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+            }
+        }).when(ctx).setProperty(anyString(), any());
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return properties.get(invocation.getArguments()[0]);
+            }
+        }).when(ctx).getProperty(anyString());
+        when(ctx.getEnvelope()).thenReturn(mock(SOAPEnvelope.class));
+
+        SynapseXPath messageXPath = mock(SynapseXPath.class);
+        when(messageXPath.evaluate(ctx)).thenReturn("cached message");
+        first.setDynamicMessage(messageXPath);
+        second.setDynamicMessage(messageXPath);
+
+        for (AinoMediator m : new AinoMediator[] { first, second }) {
+            when(m.ainoAgent.isEnabled()).thenReturn(true);
+            when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+        }
+
+        first.mediate(ctx);
+        second.mediate(ctx);
+        verify(messageXPath, times(1)).evaluate(ctx);
+
+        when(ctx.getEnvelope()).thenReturn(mock(SOAPEnvelope.class));
+        second.mediate(ctx);
+        verify(messageXPath, times(2)).evaluate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(second.ainoAgent, times(2)).addTransaction(argument.capture());
+        assertEquals("cached message", argument.getValue().getMessage());
+
+        // Without sharing, for flows editing the payload in place, the cache is dropped after every mediator.
+        XPathResultCache.setEnabled(false);
+        try {
+            first.mediate(ctx);
+            verify(messageXPath, times(2)).evaluate(ctx);
+            second.mediate(ctx);
+            second.mediate(ctx);
+            verify(messageXPath, times(4)).evaluate(ctx);
+        } finally {
+            XPathResultCache.setEnabled(true);
+        }
+    }
+
+    @Test
+    public void xpathResultCacheIsDroppedWhenPayloadIsReplacedInPlaceTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+            }
+        }).when(ctx).setProperty(anyString(), any());
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return properties.get(invocation.getArguments()[0]);
+            }
+        }).when(ctx).getProperty(anyString());
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(AXIOMUtil.stringToOM("<order><orderId>1</orderId></order>"));
+        when(ctx.getEnvelope()).thenReturn(envelope);
+        m.addId("typeKey", new SynapseXPath("//order/orderId"));
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null), new Transaction(null));
+
+        m.mediate(ctx);
+        // What payloadFactory does: the same envelope gets a new payload element.
+        envelope.getBody().getFirstElement().detach();
+        envelope.getBody().addChild(AXIOMUtil.stringToOM("<order><orderId>2</orderId></order>"));
+        m.mediate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent, times(2)).addTransaction(argument.capture());
+        assertEquals(Arrays.asList("1"), argument.getAllValues().get(0).getIds().get("typeKey"));
+        assertEquals(Arrays.asList("2"), argument.getAllValues().get(1).getIds().get("typeKey"));
+    }
+
+    @Test
+    public void mediatorStreamsIdsWithSimplePathsTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        String payload = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                + "<orders xmlns:p=\"urn:p\"><order id=\"a1\"><id>1</id></order>"
+                + "<order id=\"a2\"><id>2<!--comment-->3</id><p:id>x</p:id><id/></order></orders>"
+                + "</soapenv:Body></soapenv:Envelope>";
+        SOAPEnvelope envelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(payload.getBytes("UTF-8")), "UTF-8").getSOAPEnvelope();
+        final SOAPEnvelope[] current = { envelope };
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                current[0] = (SOAPEnvelope) invocation.getArguments()[0];
+                return null;
+            }
+        }).when(ctx).setEnvelope(any(SOAPEnvelope.class));
+        when(ctx.getEnvelope()).thenAnswer(new Answer<SOAPEnvelope>() {
+            @Override
+            public SOAPEnvelope answer(InvocationOnMock invocation) {
+                return current[0];
+            }
+        });
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+            }
+        }).when(ctx).setProperty(anyString(), any());
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return properties.get(invocation.getArguments()[0]);
+            }
+        }).when(ctx).getProperty(anyString());
+
+        SynapseXPath prefixedPath = new SynapseXPath("/soapenv:Envelope/soapenv:Body/orders/order/p:id");
+        prefixedPath.addNamespace("soapenv", "http://schemas.xmlsoap.org/soap/envelope/");
+        prefixedPath.addNamespace("p", "urn:p");
+        m.addId("elements", new SynapseXPath("//order/id"));
+        m.addId("attributes", new SynapseXPath("//order/@id"));
+        m.addId("prefixed", prefixedPath);
+        m.addId("nothing", new SynapseXPath("/orders/order/id"));
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        m.mediate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent).addTransaction(argument.capture());
+        Map<String, List<String>> ids = argument.getValue().getIds();
+        assertEquals(Arrays.asList("1", "23"), ids.get("elements"));
+        assertEquals(Arrays.asList("a1", "a2"), ids.get("attributes"));
+        assertEquals(Arrays.asList("x"), ids.get("prefixed"));
+        assertEquals(new ArrayList<String>(), ids.get("nothing"));
+        // The ids were read from a copy of the envelope, the message in the context is still unbuilt and usable.
+        SOAPEnvelope replaced = ctx.getEnvelope();
+        assertTrue(replaced != envelope);
+        assertFalse(replaced.getBody().isComplete());
+        assertEquals("orders", replaced.getBody().getFirstElement().getLocalName());
+        // The envelope bytes are released after the mediator, the ids stay cached for the next mediators.
+        assertNull(XPathResultCache.get(ctx, UnbuiltEnvelope.CACHE_KEY));
+        m.mediate(ctx);
+        verify(m.ainoAgent, times(2)).addTransaction(argument.capture());
+        assertEquals(Arrays.asList("1", "23"), argument.getValue().getIds().get("elements"));
+        assertSame(replaced, ctx.getEnvelope());
+        assertTrue(replaced.toString().contains("<id>2<!--comment-->3</id><p:id>x</p:id>"));
+    }
+
+    @Test
+    public void streamingIdExtractorAppliesLimitsWhileReadingTest() throws Exception {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        StreamingPath[] paths = { StreamingPath.compile(new SynapseXPath("//a")) };
+        IdCollector[] collectors = { new IdCollector(new Id("a", new SynapseXPath("//a"), 0, 0, false), 4) };
+        StreamingIdExtractor.extract(inputFactory.createXMLStreamReader(
+                new StringReader("<r><a>out<a>in</a></a><a/><a>last</a></r>")), paths, collectors);
+        assertEquals(Arrays.asList("out", "in", "last"), collectors[0].getIds());
+        assertFalse(collectors[0].isTruncated());
+
+        // The document is cut after the third b: reading must stop once the limit is reached.
+        paths = new StreamingPath[] { StreamingPath.compile(new SynapseXPath("//b/@x")) };
+        collectors = new IdCollector[] { new IdCollector(new Id("b", new SynapseXPath("//b/@x"), 1, 0, true), 4) };
+        StreamingIdExtractor.extract(inputFactory.createXMLStreamReader(
+                new StringReader("<r><b x=\"1\"/><b x=\"1\"/><b x=\"2\"/><b")), paths, collectors);
+        assertEquals(Arrays.asList("1"), collectors[0].getIds());
+        assertTrue(collectors[0].isTruncated());
+    }
+
+    @Test
+    public void mediatorStopsReadingAtFirstMatchOfScalarFieldsTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        StringBuilder payload = new StringBuilder("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                + "<order><status/><status>fail<![CDATA[ure]]></status>"
+                + "<line note=\"\"><note><note>inner</note>outer</note></line>");
+        for (int i = 0; i < 1000; i++) {
+            payload.append("<line note=\"n").append(i).append("\"><note>").append(i).append("</note></line>");
+        }
+        payload.append("</order></soapenv:Body></soapenv:Envelope>");
+        SOAPEnvelope envelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(payload.toString().getBytes("UTF-8")), "UTF-8").getSOAPEnvelope();
+        when(ctx.getEnvelope()).thenReturn(envelope);
+
+        m.setDynamicStatus(new SynapseXPath("//order/status"));
+        m.setDynamicMessage(new SynapseXPath("//line/note"));
+        m.setDynamicPayloadType(new SynapseXPath("//line/@note"));
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        m.mediate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent).addTransaction(argument.capture());
+        assertEquals("failure", argument.getValue().getStatus());
+        // Jaxen returns the outer note first, its own text is "outer".
+        assertEquals("outer", argument.getValue().getMessage());
+        // The payload type is not in the configuration, but the first non-empty attribute was read.
+        assertEquals(AinoMediator.UNKNOWN_DYNAMIC_PAYLOADTYPE, argument.getValue().getPayloadTypeKey());
+        assertFalse(envelope.getBody().getFirstElement().isComplete());
+
+        assertEquals("n0", StreamingFirstMatch.find(envelope.getXMLStreamReader(),
+                StreamingPath.compile(new SynapseXPath("//line/@note"))));
+        assertEquals("outer", ((OMElement) ((List<?>) new SynapseXPath("//line/note").evaluate(envelope)).get(0)).getText());
+    }
+
+    @Test
+    public void esbLogLineFormatsTest() throws Exception {
+        Map<String, List<String>> ids = new LinkedHashMap<String, List<String>>();
+        ids.put("dataType01", Arrays.asList("1", "2"));
+
+        String plain = EsbLogLine.start(EsbLogFormat.PLAIN, ";").field("message", "a \"b\"").ids(ids).finish();
+        String keyValue = EsbLogLine.start(EsbLogFormat.KEY_VALUE, ";").field("message", "a \"b\"").ids(ids).finish();
+        String json = EsbLogLine.start(EsbLogFormat.JSON, ";").field("message", "a \"b\"").field("to", null).ids(ids).finish();
+
+        assertEquals("message = a \"b\";ids = [dataType01: [1,2],]", plain);
+        assertEquals("message=\"a \\\"b\\\"\" ids.dataType01=\"1,2\"", keyValue);
+        assertEquals("{\"message\":\"a \\\"b\\\"\",\"to\":null,\"ids\":{\"dataType01\":[\"1\",\"2\"]}}", json);
+    }
+
+    @Test
+    public void droppedFlowSkipsExpressionEvaluationTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_SAMPLE_RATE);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+
+        SynapseXPath idXPath = mock(SynapseXPath.class);
+        m.addId("typeKey", idXPath);
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        assertTrue(m.mediate(ctx));
+
+        verify(idXPath, never()).evaluate(any());
+        verify(m.ainoAgent, never()).newTransaction();
+        verify(m.ainoAgent, never()).addTransaction((Transaction) any());
+    }
+
+    @Test
+    public void flowSamplerKeepsOrDropsWholeFlowsTest() throws Exception {
+        FlowSampler first = FlowSampler.forRate(0.3);
+        FlowSampler second = FlowSampler.forRate(0.3);
+        FlowSampler lower = FlowSampler.forRate(0.1);
+
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            String flowId = "urn:uuid:" + i;
+            assertEquals(first.isSampled(flowId), second.isSampled(flowId));
+            if (lower.isSampled(flowId)) {
+                assertTrue(first.isSampled(flowId));
+            }
+            if (first.isSampled(flowId)) {
+                kept++;
+            }
+        }
+        assertTrue("kept " + kept, kept > 2700 && kept < 3300);
+    }
+
+    @Test
+    public void mediatorResolvesDynamicOperationsFromKeyRegistryTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+
+        SynapseXPath operationXPath = mock(SynapseXPath.class);
+        when(operationXPath.evaluate(ctx)).thenReturn("delete", "notConfiguredOperation");
+        m.setDynamicOperation(operationXPath);
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null), new Transaction(null));
+
+        m.mediate(ctx);
+        m.mediate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent, times(2)).addTransaction(argument.capture());
+        assertEquals("delete", argument.getAllValues().get(0).getOperationKey());
+        assertEquals(AinoMediator.UNKNOWN_DYNAMIC_OPERATION, argument.getAllValues().get(1).getOperationKey());
+
+        KeyRegistry keys = m.getExecutionPlan().getKeyRegistry();
+        assertEquals("Delete", keys.getName(KeyRegistry.KeyType.OPERATION, "delete"));
+        assertTrue(keys.exists(KeyRegistry.KeyType.OPERATION, AinoMediator.UNKNOWN_DYNAMIC_OPERATION));
+        verify(m.ainoAgent, never()).operationExists(anyString());
+
+        // Unknown values do not take the room of configured keys: after many misses a new configured key is still remembered.
+        for (int i = 0; i < 5000; i++) {
+            assertNull(keys.getName(KeyRegistry.KeyType.OPERATION, "junk" + i));
+        }
+        assertEquals("Create", keys.getName(KeyRegistry.KeyType.OPERATION, "create"));
+    }
+
+    @Test
+    public void mediatorParsesStaticAndDynamicMultiidsAlikeTest() throws Exception {
+        String multiids = "dataType01=1,2,||notConfiguredType=3||broken||dataType02=a=b";
+
+        AinoMediator staticMediator = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        staticMediator.setMultiids(multiids);
+        AinoMediator dynamicMediator = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        SynapseXPath multiidsXPath = mock(SynapseXPath.class);
+        when(multiidsXPath.evaluate(ctx)).thenReturn(multiids);
+        dynamicMediator.setDynamicMultiids(multiidsXPath);
+
+        Map<String, List<String>> expected = new HashMap<String, List<String>>();
+        expected.put("dataType01", Arrays.asList("1", "2"));
+        expected.put(AinoMediator.UNKNOWN_DYNAMIC_IDTYPE, Arrays.asList("3"));
+
+        for (AinoMediator m : new AinoMediator[] { staticMediator, dynamicMediator }) {
+            when(m.ainoAgent.isEnabled()).thenReturn(true);
+            when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+            m.mediate(ctx);
+
+            ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+            verify(m.ainoAgent).addTransaction(argument.capture());
+            assertEquals(expected, argument.getValue().getIds());
+        }
+    }
+
+    @Test
+    public void mediatorAppliesStaticFieldsFromTemplateTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        m.setMessage("static message");
+        m.setPayloadType("subInterface02");
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null), new Transaction(null));
+
+        m.mediate(ctx);
+        m.mediate(ctx);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(m.ainoAgent, times(2)).addTransaction(argument.capture());
+        for (Transaction transaction : argument.getAllValues()) {
+            assertEquals("static message", transaction.getMessage());
+            assertEquals("subInterface02", transaction.getPayloadTypeKey());
+            assertEquals(m.getStatus(), transaction.getStatus());
+        }
+    }
+
+    @Test
+    public void mediatorLooksUpAndWritesTransportHeadersOncePerCallTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(AinoMediatorConfigConstants.AINO_FLOW_ID_PROPERTY_NAME, "flow-from-header");
+        when(ctx.getAxis2MessageContext().getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS)).thenReturn(headers);
+
+        when(m.ainoAgent.isEnabled()).thenReturn(false);
+
+        m.mediate(ctx);
+
+        verify(ctx.getAxis2MessageContext(), times(1)).getProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+        assertEquals("flow-from-header", headers.get(AinoMediatorConfigConstants.AINO_FLOW_ID_PROPERTY_NAME));
+        assertEquals(m.getOperation(), headers.get(AinoMediatorConfigConstants.AINO_OPERATION_KEY_PROPERTY_NAME));
+    }
+
+    @Test
+    public void warningAggregatorLogsFirstOccurrenceAndSummariesTest() throws Exception {
+        WarningAggregator suppressing = new WarningAggregator(60000L, 2);
+        assertEquals(1, suppressing.record(null, "operation", "missing"));
+        assertEquals(0, suppressing.record(null, "operation", "missing"));
+        assertEquals(1, suppressing.record(null, "status", "missing"));
 
+        // The map is full, so new values of the field share the overflow key.
+        assertEquals(1, suppressing.record(null, "operation", "other1"));
+        assertEquals(0, suppressing.record(null, "operation", "other2"));
+        assertEquals(3, suppressing.size());
 
+        WarningAggregator summarizing = new WarningAggregator(0L, 10);
+        assertEquals(1, summarizing.record(null, "operation", "missing"));
+        assertEquals(1, summarizing.record(null, "operation", "missing"));
+    }
+
+    @Test
+    public void warningAggregatorFlushesPendingSummariesTest() throws Exception {
+        Log warningLog = mock(Log.class);
+        WarningAggregator aggregator = new WarningAggregator(50L, 10);
+        assertEquals(1, aggregator.record(null, "operation", "missing"));
+        aggregator.log(warningLog, null, "operation", "missing", "Missing operation", 1);
+        assertEquals(0, aggregator.record(null, "operation", "missing"));
+        assertEquals(0, aggregator.record(null, "operation", "missing"));
 
+        aggregator.flushPending();
+        verify(warningLog, times(1)).warn(anyString());
 
+        Thread.sleep(60L);
+        aggregator.flushPending();
+        verify(warningLog).warn("Missing operation (2 occurrences since the last report)");
+
+        aggregator.flushPending();
+        verify(warningLog, times(2)).warn(anyString());
+    }
 
+    @Test
+    public void warningAggregatorEvictsAtMostOncePerIntervalTest() throws Exception {
+        WarningAggregator aggregator = new WarningAggregator(50L, 1);
+        assertEquals(1, aggregator.record(null, "operation", "first"));
+        Thread.sleep(60L);
 
+        // The idle key is evicted, so the new value gets its own key.
+        assertEquals(1, aggregator.record(null, "operation", "second"));
+        assertEquals(1, aggregator.size());
 
+        // Within the interval nothing is evicted and new values share the overflow key.
+        assertEquals(1, aggregator.record(null, "status", "third"));
+        assertEquals(2, aggregator.size());
+    }
 
+    @Test
+    public void asyncEsbLogAppenderWritesEveryLineAcrossShutdownTest() throws Exception {
+        Log esbLog = mock(Log.class);
+        AsyncEsbLogAppender appender = new AsyncEsbLogAppender(1000);
+        for (int i = 0; i < 100; i++) {
+            appender.append(esbLog, "line" + i);
+        }
+        appender.shutdown(5000L);
+        appender.append(esbLog, "after shutdown");
 
+        verify(esbLog, times(101)).info(anyString());
+        verify(esbLog).info("line99");
+        verify(esbLog).info("after shutdown");
+        assertEquals(0, appender.getQueueSize());
+    }
 
+    @Test
+    public void latencyHistogramReportsPercentilesWithinBucketErrorTest() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.99));
+
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertWithin(500000, histogram.getPercentile(0.5), 0.125);
+        assertWithin(990000, histogram.getPercentile(0.99), 0.125);
+        assertWithin(999000, histogram.getPercentile(0.999), 0.125);
+    }
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue(actual + " not within " + relativeError + " of " + expected,
+                Math.abs(actual - expected) <= expected * relativeError);
+    }
+
+    @Test
+    public void mediatorMetricsAreExposedOverJmxTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        SynapseXPath operationXPath = mock(SynapseXPath.class);
+        when(operationXPath.evaluate(ctx)).thenReturn("notConfiguredOperation");
+        m.setDynamicOperation(operationXPath);
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        MediatorMetrics metrics = m.getExecutionPlan().getMetrics();
+        long invocations = metrics.getInvocationCount();
+        long fallbacks = metrics.getUnknownFallbackCount();
+
+        m.mediate(ctx);
+
+        ObjectName name = new ObjectName(MediatorMetricsRegistry.getObjectName(m.getMediatorLocation()));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(invocations + 1, server.getAttribute(name, "InvocationCount"));
+        assertEquals(fallbacks + 1, server.getAttribute(name, "UnknownFallbackCount"));
+        assertTrue((Long) server.getAttribute(name, "AddTransactionCount") > 0);
+        assertTrue((Long) server.getAttribute(name, "MediateP99Nanos") > 0);
+
+        // Histograms of phases never recorded are not allocated, and metrics are unregistered with their last mediator.
+        MBeanServer own = MBeanServerFactory.newMBeanServer();
+        MediatorMetricsRegistry registry = new MediatorMetricsRegistry(own);
+        Object first = new Object();
+        Object second = new Object();
+        MediatorMetrics shared = registry.forLocation(m.getMediatorLocation(), first);
+        assertSame(shared, registry.forLocation(m.getMediatorLocation(), second));
+        assertEquals(0L, own.getAttribute(name, "MultiidsCount"));
+        registry.release(m.getMediatorLocation(), first);
+        assertTrue(own.isRegistered(name));
+        registry.release(m.getMediatorLocation(), second);
+        assertFalse(own.isRegistered(name));
+    }
+
+    private static Transaction transactionWithFlowId(String flowId) {
+        Transaction transaction = new Transaction(null);
+        transaction.setFlowId(flowId);
+        return transaction;
+    }
+
+    @Test
+    public void transactionBufferDropsNewestOrOldestWhenFullTest() throws Exception {
+        // Each of these transactions is estimated to 256 + 2 * 2 bytes.
+        TransactionBuffer dropNewest = new TransactionBuffer(600, OverflowPolicy.DROP_NEWEST, 0);
+        assertTrue(dropNewest.add(transactionWithFlowId("f1")));
+        assertTrue(dropNewest.add(transactionWithFlowId("f2")));
+        assertFalse(dropNewest.add(transactionWithFlowId("f3")));
+        assertEquals(2, dropNewest.getSize());
+        assertEquals(1, dropNewest.getDroppedNewestCount());
+
+        TransactionBuffer dropOldest = new TransactionBuffer(600, OverflowPolicy.DROP_OLDEST, 0);
+        assertTrue(dropOldest.add(transactionWithFlowId("f1")));
+        assertTrue(dropOldest.add(transactionWithFlowId("f2")));
+        assertTrue(dropOldest.add(transactionWithFlowId("f3")));
+        assertEquals(2, dropOldest.getSize());
+        assertEquals(1, dropOldest.getDroppedOldestCount());
+        assertEquals(3, dropOldest.getAcceptedCount());
+    }
+
+    @Test
+    public void transactionBufferBlocksUntilTimeoutOrRoomTest() throws Exception {
+        TransactionBuffer buffer = new TransactionBuffer(600, OverflowPolicy.BLOCK, 20);
+        assertTrue(buffer.add(transactionWithFlowId("f1")));
+        assertTrue(buffer.add(transactionWithFlowId("f2")));
+        assertFalse(buffer.add(transactionWithFlowId("f3")));
+        assertEquals(1, buffer.getTimedOutCount());
+
+        Agent agent = mock(Agent.class);
+        buffer.start(agent);
+        buffer.shutdown(1000);
+        verify(agent, times(2)).addTransaction((Transaction) any());
+        assertEquals(2, buffer.getDeliveredCount());
+        assertEquals(0, buffer.getUsedBytes());
+    }
+
+    @Test
+    public void transactionBufferHandsAtMostMaxInFlightPerSendIntervalTest() throws Exception {
+        TransactionBuffer buffer = new TransactionBuffer(100000, OverflowPolicy.DROP_NEWEST, 0);
+        buffer.setSendWindow(2, 60000);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.add(transactionWithFlowId("f" + i)));
+        }
+
+        Agent agent = mock(Agent.class);
+        buffer.start(agent);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.getDeliveredCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(2, buffer.getDeliveredCount());
+        assertEquals(3, buffer.getSize());
+
+        // The rest is handed over on shutdown.
+        buffer.shutdown(1000);
+        verify(agent, times(5)).addTransaction((Transaction) any());
+    }
+
+    @Test
+    public void transactionBufferHandsTransactionsToTheAgentThatCreatedThemTest() throws Exception {
+        TransactionBuffer buffer = new TransactionBuffer(100000, OverflowPolicy.DROP_NEWEST, 0);
+        Agent previous = mock(Agent.class);
+        Agent reloaded = mock(Agent.class);
+        Transaction before = transactionWithFlowId("before");
+        Transaction after = transactionWithFlowId("after");
+        List<String> none = Collections.emptyList();
+
+        buffer.add(before, previous, none, none);
+        buffer.setAgent(reloaded);
+        buffer.add(after, reloaded, none, none);
+        buffer.start(reloaded);
+        buffer.shutdown(1000);
+
+        verify(previous).addTransaction(before);
+        verify(reloaded).addTransaction(after);
+        verify(reloaded, never()).addTransaction(before);
+    }
+
+    @Test
+    public void transactionBufferSamplesWholeFlowsUnderPressureTest() throws Exception {
+        TransactionBuffer buffer = new TransactionBuffer(100000, OverflowPolicy.SAMPLE, 0);
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(transactionWithFlowId("flow" + i));
+        }
+
+        assertTrue(buffer.getSampledOutCount() > 0);
+        assertEquals(1000, buffer.getAcceptedCount() + buffer.getSampledOutCount() + buffer.getDroppedNewestCount());
+        assertTrue(buffer.getUsedBytes() <= buffer.getMaxBytes());
+    }
+
+    @Test
+    public void spillQueueContinuesFromCheckpointAfterRestartTest() throws Exception {
+        File directory = temporaryFolder.newFolder("spill");
+        // Segments of 64 bytes hold two 20 byte records, so the records span several segments.
+        SpillQueue queue = new SpillQueue(directory, 64, 1024);
+        for (int i = 0; i < 7; i++) {
+            assertTrue(queue.offer(String.format("record-%012d", i).getBytes("UTF-8")));
+        }
+        assertEquals("record-000000000000", new String(queue.poll(), "UTF-8"));
+        assertEquals("record-000000000001", new String(queue.poll(), "UTF-8"));
+        assertEquals("record-000000000002", new String(queue.poll(), "UTF-8"));
+        queue.close();
+
+        SpillQueue reopened = new SpillQueue(directory, 64, 1024);
+        assertEquals(4, reopened.size());
+        for (int i = 3; i < 7; i++) {
+            assertEquals(String.format("record-%012d", i), new String(reopened.poll(), "UTF-8"));
+        }
+        assertEquals(null, reopened.poll());
+        assertTrue(reopened.isEmpty());
+        // Only the segment being written, the checkpoint and the lock file are left.
+        assertEquals(3, directory.list().length);
+        reopened.close();
+    }
+
+    @Test
+    public void spillQueueIsOpenedOncePerDirectoryTest() throws Exception {
+        File directory = temporaryFolder.newFolder("sharedSpill");
+        SpillQueue queue = SpillQueue.open(directory, 64, 1024);
+        assertSame(queue, SpillQueue.open(new File(directory, "."), 64, 1024));
+        try {
+            new SpillQueue(directory, 64, 1024);
+            fail("A second queue must not open a directory in use");
+        } catch (IOException expected) {
+            // the directory is locked by the first queue
+        }
+        queue.close();
+
+        SpillQueue reopened = SpillQueue.open(directory, 64, 1024);
+        assertNotSame(queue, reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void transactionBufferSpillsToDiskAndRestoresTest() throws Exception {
+        // Each of these transactions is estimated to 256 + 2 * 53 bytes, so two fit in memory.
+        TransactionBuffer buffer = new TransactionBuffer(800, OverflowPolicy.DROP_NEWEST, 0);
+        buffer.setSpillQueue(new SpillQueue(temporaryFolder.newFolder("bufferSpill"), 4096, 65536));
+        for (int i = 0; i < 5; i++) {
+            Transaction transaction = transactionWithFlowId("f" + i);
+            transaction.addIdsByTypeKey("dataType01", Arrays.asList("id" + i));
+            transaction.addMetadata("index", String.valueOf(i));
+            assertTrue(buffer.add(transaction, null, Arrays.asList("index"), Arrays.asList(String.valueOf(i))));
+        }
+        assertEquals(2, buffer.getSize());
+        assertEquals(3, buffer.getSpilledCount());
+        assertEquals(3, buffer.getSpillSize());
+
+        Agent agent = mock(Agent.class);
+        when(agent.newTransaction()).thenAnswer(new Answer<Transaction>() {
+            @Override
+            public Transaction answer(InvocationOnMock invocation) {
+                return spy(new Transaction(null));
+            }
+        });
+        buffer.start(agent);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.getDeliveredCount() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        buffer.shutdown(1000);
+
+        ArgumentCaptor<Transaction> argument = ArgumentCaptor.forClass(Transaction.class);
+        verify(agent, times(5)).addTransaction(argument.capture());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("f" + i, argument.getAllValues().get(i).getFlowId());
+        }
+        Transaction restored = argument.getAllValues().get(4);
+        assertEquals(Arrays.asList("id4"), restored.getIds().get("dataType01"));
+        verify(restored).addMetadata("index", "4");
+        assertEquals(3, buffer.getRestoredCount());
+        assertEquals(0, buffer.getSpillBytes());
+    }
+
+    @Test
+    public void transactionBufferSpillsBufferedTransactionsOnShutdownTest() throws Exception {
+        File directory = temporaryFolder.newFolder("shutdownSpill");
+        TransactionBuffer buffer = new TransactionBuffer(65536, OverflowPolicy.DROP_NEWEST, 0);
+        buffer.setSendWindow(1, 60000);
+        SpillQueue queue = new SpillQueue(directory, 4096, 65536);
+        buffer.setSpillQueue(queue);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buffer.add(transactionWithFlowId("f" + i), null, Arrays.asList("index"), Arrays.asList(String.valueOf(i))));
+        }
+
+        Agent agent = mock(Agent.class);
+        buffer.start(agent);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.getDeliveredCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        buffer.shutdown(1000);
+
+        // The first one was handed to the agent, the two waiting for the next send interval were spilled.
+        verify(agent, times(1)).addTransaction(any(Transaction.class));
+        assertEquals(2, buffer.getSpilledCount());
+        assertEquals(0, buffer.getSize());
+        when(agent.newTransaction()).thenReturn(spy(new Transaction(null)));
+        Transaction spilled = TransactionCodec.decode(queue.poll(), agent);
+        assertEquals("f1", spilled.getFlowId());
+        verify(spilled).addMetadata("index", "1");
+        queue.close();
+    }
+
+    @Test
+    public void mediatorSendsTransactionsToConfiguredSinkTest() throws Exception {
+        AinoMediator m = (AinoMediator) TestUtils.createMockedAinoLogMediator(factory, TestUtils.AINO_PROXY_CONFIG_REQUIRED_ELEMENTS);
+        Axis2MessageContext ctx = TestUtils.getMockedContext();
+        InMemorySink sink = new InMemorySink();
+        sink.init(new HashMap<String, String>(), m.ainoAgent);
+        m.setTransactionSink(sink);
+
+        when(m.ainoAgent.isEnabled()).thenReturn(true);
+        when(m.ainoAgent.newTransaction()).thenReturn(new Transaction(null));
+
+        m.mediate(ctx);
+
+        verify(m.ainoAgent, never()).addTransaction((Transaction) any());
+        assertEquals(1, sink.getCount());
+        assertEquals(1, sink.getTransactions().size());
+    }
+
+    @Test
+    public void rollingFileSinkWritesJsonLinesAndRollsTest() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "sink/transactions.json");
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(RollingFileSink.FILE_PROPERTY, file.getPath());
+        properties.put(RollingFileSink.MAX_FILE_BYTES_PROPERTY, "300");
+        properties.put(RollingFileSink.MAX_FILES_PROPERTY, "2");
+        properties.put(RollingFileSink.FLUSH_INTERVAL_PROPERTY, "20");
+        RollingFileSink sink = new RollingFileSink();
+        sink.init(properties, null);
+
+        // Each line is about 170 bytes, so every line after the first rolls the file.
+        for (int i = 0; i < 4; i++) {
+            Transaction transaction = transactionWithFlowId("flow\"" + i);
+            transaction.addIdsByTypeKey("dataType01", Arrays.asList("id" + i));
+            sink.send(transaction);
+        }
+        // The buffered line reaches the file on the flush timer, before the sink is closed.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(file.length() > 0);
+        sink.close();
+
+        String current = new String(java.nio.file.Files.readAllBytes(file.toPath()), "UTF-8");
+        assertTrue(current.startsWith("{\"from\":null,"));
+        assertTrue(current.contains("\"flowId\":\"flow\\\"3\""));
+        assertTrue(current.contains("\"ids\":[{\"idType\":\"dataType01\",\"values\":[\"id3\"]}]"));
+        assertTrue(new File(file.getPath() + ".1").exists());
+        assertTrue(new File(file.getPath() + ".2").exists());
+        assertFalse(new File(file.getPath() + ".3").exists());
+    }
+
+    @Test
+    public void httpSinkPostsTransactionBatchesTest() throws Exception {
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/1.0/saveLogArray", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                bodies.add(exchange.getRequestHeaders().getFirst("Authorization") + " "
+                        + new String(IOUtils.getStreamAsByteArray(exchange.getRequestBody()), "UTF-8"));
+                exchange.sendResponseHeaders(202, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            Map<String, String> properties = new HashMap<String, String>();
+            properties.put(HttpSink.URI_PROPERTY,
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/api/1.0/saveLogArray");
+            properties.put(HttpSink.API_KEY_PROPERTY, "secret");
+            properties.put(HttpSink.INTERVAL_PROPERTY, "60000");
+            properties.put(HttpSink.SIZE_THRESHOLD_PROPERTY, "2");
+            HttpSink sink = new HttpSink();
+            sink.init(properties, null);
+
+            sink.send(transactionWithFlowId("f1"));
+            sink.send(transactionWithFlowId("f2"));
+            sink.send(transactionWithFlowId("f3"));
+            sink.close();
+
+            assertEquals(3, sink.getSentCount());
+            assertEquals(2, bodies.size());
+            assertTrue(bodies.get(0).startsWith("apikey secret {\"transactions\":[{"));
+            assertTrue(bodies.get(0).contains("\"flowId\":\"f2\""));
+            assertTrue(bodies.get(1).contains("\"flowId\":\"f3\""));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -58,6 +58,10 @@ public class TestUtils {
     public static String AINO_PROXY_CONFIG_REQUIRED_ELEMENTS = "/validAinoConfigRequiredElements.xml";
     public static String AINO_PROXY_CONFIG_ALL_ELEMENTS = "/validAinoConfigAllElements.xml";
     public static String AINO_PROXY_CONFIG_ALL_ELEMENTS_AND_PROPERTIES = "/validAinoConfigAllElementsAndProperties.xml";
+    public static String AINO_PROXY_CONFIG_ASYNC = "/validAinoConfigAsync.xml";
+    public static String AINO_PROXY_CONFIG_SAMPLE_RATE = "/validAinoConfigSampleRate.xml";
+    public static String AINO_PROXY_CONFIG_ID_LIMITS = "/validAinoConfigIdLimits.xml";
+    public static String AINO_PROXY_CONFIG_PAYLOAD_DIGEST = "/validAinoConfigPayloadDigest.xml";
     public static String AINO_PROXY_CONFIG_INVALID_APPLICATION_KEY = "/ainoConfigInvalidApplicationKey.xml";
     public static String AINO_PROXY_CONFIG_INVALID_OPERATION_KEY = "/ainoConfigInvalidOperationKey.xml";
     public static String AINO_PROXY_CONFIG_INVALID_ID_KEY = "/ainoConfigInvalidIdKey.xml";